@@ -0,0 +1,9 @@
+#!/bin/bash
+
+# Run the control daemon, which serves the monitor and shutdown
+# operations over HTTP on the loopback interface.  The optional arguments
+# are the port and the address to bind to.
+
+. `dirname $0`/gs-setup.sh
+
+java -jar `dirname $0`/../lib/daemon.jar "$@"
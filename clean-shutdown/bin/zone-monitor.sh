@@ -1,9 +1,9 @@
 #!/bin/bash
 
-# Wait for the GigaSpaces infrastructure associated with a particular
-# zone to be available.
+# Wait for the GigaSpaces infrastructure associated with one or more
+# zones to be available, either <zone> <count> or <zone>:<count> ...
 
 . `dirname $0`/gs-setup.sh
 
-java -jar `dirname $0`/../lib/zone-monitor.jar $1 $2
+java -jar `dirname $0`/../lib/zone-monitor.jar "$@"
 
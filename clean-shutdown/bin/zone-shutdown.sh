@@ -4,5 +4,5 @@
 
 . `dirname $0`/gs-setup.sh
 
-java -jar `dirname $0`/../lib/zone-shutdown.jar $1
+java -jar `dirname $0`/../lib/zone-shutdown.jar "$@"
 
@@ -12,15 +12,16 @@ package com.gigaspaces.utils.admin;
 import org.openspaces.admin.Admin;
 import org.openspaces.admin.AdminEventListener;
 
+import java.util.concurrent.TimeUnit;
+
 import java.util.logging.Logger;
 
 public abstract class AbstractGridComponentMonitor implements Runnable
 {
   private static Logger logger_
     = Logger.getLogger(AbstractGridComponentMonitor.class.getName());
-  private static Object threadMonitor_ = new Object();
 
-  private boolean done_ = false;
+  private Lifecycle lifecycle_ = new Lifecycle();
   private Admin admin_ = null;
 
   /**
@@ -32,31 +33,33 @@ public abstract class AbstractGridComponentMonitor implements Runnable
     }
 
 
-  public boolean isDone() { return done_; }
+  public boolean isDone() { return lifecycle_.isStopped(); }
 
   protected abstract AdminEventListener eventListener();
 
   /**
-   * Run until done.
+   * Listen until done.  The monitor does its work on the Admin API event
+   * thread; the calling thread only waits.
    */
   public void run()
     {
     AdminEventListener eventListener = eventListener();
     
     admin_.addEventListener(eventListener);
+    lifecycle_.awaitUninterruptibly();
+    synchronized(eventListener) { admin_.removeEventListener(eventListener); }
+    }
 
-    while (!isDone())
-      {
-      synchronized(threadMonitor_)
-        {
-        try { threadMonitor_.wait(); }
-        catch(InterruptedException e) { }
-        }
-      }
 
-    synchronized(eventListener) { admin_.removeEventListener(eventListener); }
-    try { Thread.sleep(2000); }
-    catch(InterruptedException ignore) { }
+  /**
+   * Wait for the monitor to finish, for at most the passed timeout.
+   *
+   * @return true if the monitor is done
+   */
+  public boolean awaitDone(long timeout,TimeUnit unit)
+    throws InterruptedException
+    {
+    return lifecycle_.await(timeout,unit);
     }
 
 
@@ -65,7 +68,6 @@ public abstract class AbstractGridComponentMonitor implements Runnable
    */
   public void done()
     {
-    done_ = true;
-    synchronized(threadMonitor_) { threadMonitor_.notifyAll(); }
+    lifecycle_.stop();
     }
 }  // end AbstractGridComponentMonitor
@@ -0,0 +1,228 @@
+/**
+ * AdminSessions shares Admin instances between the tools running in a
+ * JVM.  One Admin is created, lazily, for each combination of lookup
+ * groups and locators, and is warmed up by waiting for a lookup service
+ * to be discovered.  Each acquire() returns a Session that must be
+ * released; the Admin is closed when its last session is released.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.AdminFactory;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import java.util.logging.Logger;
+
+public class AdminSessions
+{
+  public static final long DEFAULT_WARMUP_TIMEOUT = 10000;  // 10 seconds
+
+  private static Logger logger_
+    = Logger.getLogger(AdminSessions.class.getName());
+
+  private static HashMap<String,Entry> entries_
+    = new HashMap<String,Entry>();
+  private static long warmupTimeout_ = DEFAULT_WARMUP_TIMEOUT;
+
+  /**
+   * Entry holds a shared Admin and the number of sessions using it.  The
+   * reference count is guarded by entries_, the Admin by the entry.
+   */
+  private static class Entry
+  {
+    private String key_ = null;
+    private String groups_ = null;
+    private String locators_ = null;
+    private int references_ = 0;
+    private Admin admin_ = null;
+
+    public Entry(String key,String groups,String locators)
+      {
+      key_ = key;
+      groups_ = groups;
+      locators_ = locators;
+      }
+
+
+    /**
+     * Create and warm up the Admin, if that has not yet been done.
+     */
+    public synchronized Admin open()
+      {
+      if (admin_ == null)
+        {
+        long start = System.currentTimeMillis();
+        AdminFactory factory = new AdminFactory();
+        if (groups_ != null)
+          factory.addGroups(groups_);
+        if (locators_ != null)
+          factory.addLocators(locators_);
+        admin_ = factory.createAdmin();
+
+        if (admin_.getLookupServices().waitFor(1,
+                                               warmupTimeout_,
+                                               TimeUnit.MILLISECONDS))
+          logger_.info("Admin session " + key_ + " discovered a lookup "
+                       + "service in "
+                       + (System.currentTimeMillis() - start) + " ms.");
+        else
+          logger_.warning("Admin session " + key_ + " found no lookup "
+                          + "service in " + warmupTimeout_ + " ms.");
+        }
+
+      return admin_;
+      }
+
+
+    /**
+     * Close the Admin, if it was created.
+     */
+    public synchronized void close()
+      {
+      if (admin_ != null)
+        {
+        admin_.close();
+        logger_.info("Admin session " + key_ + " closed.");
+        }
+      }
+  }  // end Entry
+
+
+  /**
+   * Session is one user's reference to a shared Admin.
+   */
+  public static class Session
+  {
+    private Entry entry_ = null;
+    private Admin admin_ = null;
+    private AtomicBoolean released_ = new AtomicBoolean(false);
+
+    private Session(Entry entry,Admin admin)
+      {
+      entry_ = entry;
+      admin_ = admin;
+      }
+
+
+    public Admin admin() { return admin_; }
+
+
+    /**
+     * Release the session.  Releasing a released session has no effect.
+     */
+    public void release()
+      {
+      if (released_.compareAndSet(false,true))
+        AdminSessions.release(entry_);
+      }
+  }  // end Session
+
+
+  private AdminSessions() { }
+
+
+  /**
+   * Set the time, in milliseconds, that new Admin instances wait to
+   * discover a lookup service.
+   */
+  public static void setWarmupTimeout(long warmupTimeout)
+    {
+    warmupTimeout_ = warmupTimeout;
+    }
+
+
+  /**
+   * Normalize a comma separated list, so that equivalent lists share a
+   * session.
+   */
+  private static String normalize(String list)
+    {
+    if ((list == null) || (list.trim().length() == 0))
+      return null;
+
+    String[] items = list.split(",");
+    for (int i = 0;i < items.length;i++)
+      items[i] = items[i].trim();
+    Arrays.sort(items);
+
+    StringBuilder normalized = new StringBuilder();
+    for (String item : items)
+      if (item.length() > 0)
+        normalized.append((normalized.length() > 0) ? "," : "").append(item);
+
+    return normalized.toString();
+    }
+
+
+  /**
+   * Acquire a session on the Admin for the passed lookup groups and
+   * locators, either of which may be null.
+   */
+  public static Session acquire(String groups,String locators)
+    {
+    groups = normalize(groups);
+    locators = normalize(locators);
+    String key = groups + "|" + locators;
+
+    Entry entry = null;
+    synchronized(entries_)
+      {
+      entry = entries_.get(key);
+      if (entry == null)
+        {
+        entry = new Entry(key,groups,locators);
+        entries_.put(key,entry);
+        }
+      ++entry.references_;
+      }
+
+    try
+      {
+      return new Session(entry,entry.open());
+      }
+    catch (RuntimeException e)
+      {
+      release(entry);
+      throw e;
+      }
+    }
+
+
+  /**
+   * Acquire a session on the Admin for the lookup groups and locators in
+   * the LOOKUPGROUPS and LOOKUPLOCATORS environment variables.
+   */
+  public static Session acquire()
+    {
+    return acquire(System.getenv("LOOKUPGROUPS"),
+                   System.getenv("LOOKUPLOCATORS"));
+    }
+
+
+  /**
+   * Drop a reference to an entry, closing its Admin if it was the last.
+   */
+  private static void release(Entry entry)
+    {
+    boolean last = false;
+    synchronized(entries_)
+      {
+      last = (--entry.references_ == 0);
+      if (last)
+        entries_.remove(entry.key_);
+      }
+
+    if (last)
+      entry.close();
+    }
+}  // end AdminSessions
@@ -0,0 +1,77 @@
+/**
+ * AgentsReadyGate opens once the Admin API has discovered the expected
+ * number of grid service agents.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.gsa.GridServiceAgent;
+import org.openspaces.admin.gsa.events.GridServiceAgentAddedEventListener;
+
+public class AgentsReadyGate
+  extends ReadinessGate
+  implements GridServiceAgentAddedEventListener
+{
+  private Admin admin_ = null;
+  private int expected_ = 0;
+
+  /**
+   * The full constructor for the AgentsReadyGate class.
+   *
+   * @param admin The Admin instance to listen to
+   * @param expected The number of agents to wait for
+   */
+  public AgentsReadyGate(Admin admin,int expected)
+    {
+    super(expected + " grid service agents");
+    admin_ = admin;
+    expected_ = expected;
+    }
+
+
+  /**
+   * Start listening, including for agents that have already been
+   * discovered.  The gate opens at once if enough agents are already
+   * known, since no further event may arrive, for example when no
+   * agents are expected.  This method is inherited from ReadinessGate.
+   */
+  protected void start()
+    {
+    admin_.getGridServiceAgents().getGridServiceAgentAdded().add(this,true);
+    check();
+    }
+
+
+  /**
+   * Open the gate if the expected number of agents has been discovered.
+   */
+  private void check()
+    {
+    if (admin_.getGridServiceAgents().getSize() >= expected_)
+      open();
+    }
+
+
+  /**
+   * Stop listening.  This method is inherited from ReadinessGate.
+   */
+  protected void stop()
+    {
+    admin_.getGridServiceAgents().getGridServiceAgentAdded().remove(this);
+    }
+
+
+  /**
+   * Method called when a GSA is added.  This method is inherited from
+   * the GridServiceAgentAddedEventListener interface.
+   */
+  public void gridServiceAgentAdded(GridServiceAgent agent)
+    {
+    check();
+    }
+}  // end AgentsReadyGate
@@ -0,0 +1,993 @@
+/**
+ * ControlDaemon is a long running process that holds one warm Admin and
+ * exposes the monitor and shutdown operations through a small HTTP/JSON
+ * endpoint, so callers do not pay for JVM startup and lookup service
+ * discovery on every operation.  The endpoints are:
+ *
+ *   GET  /status                 daemon and grid summary
+ *   GET  /jobs                   all known jobs
+ *   GET  /jobs/<id>[?wait=s]     one job, optionally waiting for it
+ *   POST /zone-monitor?zone=<zone>:<count>[&zone=...][&timeout=s]
+ *   POST /zone-shutdown?zone=<zone>[&parallelism=n][&timeout=s]
+ *   POST /grid-shutdown?confirm=Y[&properties=<file>]
+ *   GET  /feed[?interval=s][&duration=s]   live space statistics, as CSV
+ *   POST /stop                   stop the daemon
+ *
+ * Concurrent feeds share one statistics interval, set by the first; a
+ * feed asking for another interval while feeds are running is rejected
+ * with 409.  The statistics monitor is leased while any feed is running,
+ * and stopped after the last one ends unless another user needs it.
+ *
+ * Operations run as jobs in the background.  Every POST that starts a
+ * job accepts wait=s, to hold the response until the job finishes or
+ * the wait expires.  The endpoint binds to the loopback interface by
+ * default.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import com.gigaspaces.examples.monitor.SpaceMonitor;
+import com.gigaspaces.examples.monitor.SpaceStatisticsAsyncLogger;
+import com.gigaspaces.examples.monitor.SpaceStatisticsStreamLogger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.openspaces.admin.Admin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import java.util.logging.Logger;
+
+public class ControlDaemon
+{
+  public static final String DEFAULT_HOST = "127.0.0.1";
+  public static final int DEFAULT_PORT = 8095;
+  public static final long DEFAULT_MONITOR_TIMEOUT = 300000;  // 5 minutes
+  public static final long DEFAULT_FEED_INTERVAL = 10;  // seconds
+
+  private static final int MAX_FINISHED_JOBS = 100;
+  private static final int FEED_QUEUE_CAPACITY = 64;  // samples
+
+  private static Logger logger_
+    = Logger.getLogger(ControlDaemon.class.getName());
+
+  private AdminSessions.Session session_ = null;
+  private Admin admin_ = null;
+  private HttpServer server_ = null;
+  private ExecutorService requests_
+    = Executors.newCachedThreadPool(
+      new DaemonThreadFactory("control-daemon-request"));
+  private ExecutorService workers_
+    = Executors.newCachedThreadPool(
+      new DaemonThreadFactory("control-daemon-job"));
+  private ScheduledExecutorService timer_
+    = Executors.newSingleThreadScheduledExecutor(
+      new DaemonThreadFactory("control-daemon-timer"));
+  private Lifecycle lifecycle_ = new Lifecycle();
+  private long created_ = System.currentTimeMillis();
+  private AtomicLong nextJobId_ = new AtomicLong();
+  private LinkedHashMap<Long,Job> jobs_ = new LinkedHashMap<Long,Job>();
+  // the admitted feeds, the monitors of those running and the interval
+  // and lease they share, guarded by feeds_
+  private HashSet<SpaceMonitor> feeds_ = new HashSet<SpaceMonitor>();
+  private int feedCount_ = 0;
+  private long feedInterval_ = 0;  // seconds
+  private StatisticsMonitorLease feedLease_ = null;
+
+  /**
+   * Job runs one operation in the background and records its outcome.
+   */
+  private abstract class Job implements Runnable
+  {
+    private long id_ = nextJobId_.incrementAndGet();
+    private String operation_ = null;
+    private String arguments_ = null;
+    private long started_ = System.currentTimeMillis();
+    private long finished_ = 0;
+    private String state_ = "RUNNING";
+    private String result_ = null;
+    private String error_ = null;
+    private CountDownLatch done_ = new CountDownLatch(1);
+
+    /**
+     * The full constructor for the Job class.
+     *
+     * @param operation The name of the operation
+     * @param arguments A description of the operation's arguments
+     */
+    public Job(String operation,String arguments)
+      {
+      operation_ = operation;
+      arguments_ = arguments;
+      }
+
+
+    public long id() { return id_; }
+    public boolean isDone() { return done_.getCount() == 0; }
+
+
+    /**
+     * Perform the operation.
+     *
+     * @return The result as a JSON value, or null if there is none
+     */
+    protected abstract String execute() throws Exception;
+
+
+    /**
+     * Run the operation.  This method is inherited from Runnable.
+     */
+    public void run()
+      {
+      logger_.info("Job " + id_ + " (" + operation_ + " " + arguments_
+                   + ") started.");
+      String state = "FAILED";
+      String result = null;
+      String error = null;
+      try
+        {
+        result = execute();
+        state = "SUCCEEDED";
+        }
+      catch (Exception e)
+        {
+        error = e.toString();
+        logger_.warning("Job " + id_ + " failed:  " + e);
+        }
+      finally
+        {
+        synchronized(this)
+          {
+          finished_ = System.currentTimeMillis();
+          state_ = state;
+          result_ = result;
+          error_ = error;
+          }
+        done_.countDown();
+        logger_.info("Job " + id_ + " " + state + ".");
+        }
+      }
+
+
+    /**
+     * Wait for the job to finish, for at most the passed timeout.
+     */
+    public boolean await(long timeout,TimeUnit unit)
+      throws InterruptedException
+      {
+      return done_.await(timeout,unit);
+      }
+
+
+    /**
+     * Return the job as a JSON object.
+     */
+    public synchronized String toJson()
+      {
+      StringBuilder json = new StringBuilder();
+      json.append("{\"id\":").append(id_)
+        .append(",\"operation\":").append(PhaseMetrics.quote(operation_))
+        .append(",\"arguments\":").append(PhaseMetrics.quote(arguments_))
+        .append(",\"state\":").append(PhaseMetrics.quote(state_))
+        .append(",\"started\":").append(started_);
+      if (finished_ > 0)
+        json.append(",\"finished\":").append(finished_)
+          .append(",\"elapsedMs\":").append(finished_ - started_);
+      if (result_ != null)
+        json.append(",\"result\":").append(result_);
+      if (error_ != null)
+        json.append(",\"error\":").append(PhaseMetrics.quote(error_));
+
+      return json.append('}').toString();
+      }
+  }  // end Job
+
+
+  /**
+   * Feed streams space statistics to one HTTP client until the client
+   * goes away, the duration expires or the daemon stops.
+   */
+  private class Feed extends SpaceStatisticsStreamLogger
+  {
+    private SpaceStatisticsAsyncLogger queue_ = null;
+    private SpaceMonitor monitor_ = null;
+
+    /**
+     * The full constructor for the Feed class.  The statistics interval
+     * and monitor are managed by the daemon, through addFeed().
+     *
+     * @param out The response body to write to
+     */
+    public Feed(OutputStream out)
+      {
+      super(out);
+      queue_ = new SpaceStatisticsAsyncLogger(
+        this,
+        FEED_QUEUE_CAPACITY,
+        SpaceStatisticsAsyncLogger.OverflowPolicy.DROP_OLDEST,
+        SpaceStatisticsAsyncLogger.DEFAULT_LAG_THRESHOLD);
+      monitor_ = new SpaceMonitor(queue_,0,admin_);
+      }
+
+
+    /**
+     * Stop the feed when the client goes away.  This method is
+     * inherited from SpaceStatisticsStreamLogger.
+     */
+    protected void failed(IOException ioe)
+      {
+      logger_.info("Feed client disconnected:  " + ioe);
+      monitor_.stop();
+      }
+
+
+    /**
+     * Stream statistics until stopped, then close the queue and the
+     * response body.  The monitor is only run if the daemon is not
+     * stopping, and is recorded so that stop() can end it.
+     */
+    public void run(long duration)
+      {
+      ScheduledFuture<?> expiry = null;
+      if (duration > 0)
+        expiry = timer_.schedule(new Runnable()
+          {
+          public void run() { monitor_.stop(); }
+          },duration,TimeUnit.MILLISECONDS);
+
+      boolean running = false;
+      try
+        {
+        synchronized(feeds_)
+          {
+          running = !lifecycle_.isStopped() && feeds_.add(monitor_);
+          }
+        if (running)
+          monitor_.run();
+        }
+      finally
+        {
+        synchronized(feeds_) { feeds_.remove(monitor_); }
+        if (expiry != null)
+          expiry.cancel(false);
+        queue_.close();
+        close();
+        }
+      }
+  }  // end Feed
+
+
+  /**
+   * BadRequestException reports a request that cannot be handled as
+   * sent.
+   */
+  private static class BadRequestException extends Exception
+  {
+    private static final long serialVersionUID = 1L;
+
+    private int status_ = 400;
+
+    public BadRequestException(int status,String message)
+      {
+      super(message);
+      status_ = status;
+      }
+
+
+    public BadRequestException(String message)
+      {
+      this(400,message);
+      }
+
+
+    public int status() { return status_; }
+  }  // end BadRequestException
+
+
+  /**
+   * Handler dispatches one endpoint, turning failures into JSON errors.
+   */
+  private abstract class Handler implements HttpHandler
+  {
+    private String method_ = null;
+
+    /**
+     * The full constructor for the Handler class.
+     *
+     * @param method The HTTP method the endpoint accepts
+     */
+    public Handler(String method)
+      {
+      method_ = method;
+      }
+
+
+    /**
+     * Handle a request, sending the response.
+     */
+    protected abstract void handle(HttpExchange exchange,
+                                   Map<String,List<String>> parameters)
+      throws Exception;
+
+
+    /**
+     * Handle an HTTP exchange.  This method is inherited from
+     * HttpHandler.
+     */
+    public void handle(HttpExchange exchange) throws IOException
+      {
+      try
+        {
+        if (!method_.equals(exchange.getRequestMethod()))
+          throw new BadRequestException(405,"Use " + method_ + ".");
+
+        handle(exchange,parameters(exchange));
+        }
+      catch (BadRequestException e)
+        {
+        sendError(exchange,e.status(),e.getMessage());
+        }
+      catch (NumberFormatException e)
+        {
+        sendError(exchange,400,"Invalid number:  " + e.getMessage());
+        }
+      catch (IllegalArgumentException e)
+        {
+        sendError(exchange,400,e.getMessage());
+        }
+      catch (Exception e)
+        {
+        logger_.warning("Unable to handle " + exchange.getRequestURI()
+                        + ":  " + e);
+        sendError(exchange,500,e.toString());
+        }
+      finally
+        {
+        exchange.close();
+        }
+      }
+  }  // end Handler
+
+
+  /**
+   * The full constructor for the ControlDaemon class.
+   *
+   * @param address The address to listen on
+   * @param admin The Admin instance to use, owned by the caller
+   */
+  public ControlDaemon(InetSocketAddress address,Admin admin)
+    throws IOException
+    {
+    admin_ = admin;
+    server_ = HttpServer.create(address,0);
+    server_.setExecutor(requests_);
+
+    server_.createContext("/status",new Handler("GET")
+      {
+      protected void handle(HttpExchange exchange,
+                            Map<String,List<String>> parameters)
+        throws IOException
+        {
+        sendJson(exchange,200,status());
+        }
+      });
+
+    server_.createContext("/jobs",new Handler("GET")
+      {
+      protected void handle(HttpExchange exchange,
+                            Map<String,List<String>> parameters)
+        throws Exception
+        {
+        String path = exchange.getRequestURI().getPath();
+        if (path.equals("/jobs") || path.equals("/jobs/"))
+          sendJson(exchange,200,jobsJson());
+        else
+          {
+          Job job = job(path.substring("/jobs/".length()));
+          sendJob(exchange,job,seconds(parameters,"wait",0));
+          }
+        }
+      });
+
+    server_.createContext("/zone-monitor",new Handler("POST")
+      {
+      protected void handle(HttpExchange exchange,
+                            Map<String,List<String>> parameters)
+        throws Exception
+        {
+        List<String> zones = required(parameters,"zone");
+        Map<String,Integer> requirements
+          = ZoneMonitor.requirements(zones.toArray(new String[0]));
+        long timeout
+          = seconds(parameters,"timeout",DEFAULT_MONITOR_TIMEOUT);
+        sendJob(exchange,
+                submit(zoneMonitorJob(requirements,timeout)),
+                seconds(parameters,"wait",0));
+        }
+      });
+
+    server_.createContext("/zone-shutdown",new Handler("POST")
+      {
+      protected void handle(HttpExchange exchange,
+                            Map<String,List<String>> parameters)
+        throws Exception
+        {
+        String zoneName = required(parameters,"zone").get(0);
+        int parallelism
+          = Integer.parseInt(
+            parameter(parameters,"parallelism",
+                      String.valueOf(
+                        ProcessingUnitUndeployer.DEFAULT_PARALLELISM)));
+        long undeployTimeout
+          = seconds(parameters,"timeout",
+                    ProcessingUnitUndeployer.DEFAULT_TIMEOUT);
+        sendJob(exchange,
+                submit(zoneShutdownJob(zoneName,parallelism,
+                                       undeployTimeout)),
+                seconds(parameters,"wait",0));
+        }
+      });
+
+    server_.createContext("/grid-shutdown",new Handler("POST")
+      {
+      protected void handle(HttpExchange exchange,
+                            Map<String,List<String>> parameters)
+        throws Exception
+        {
+        if (!"Y".equals(parameter(parameters,"confirm",null)))
+          throw new BadRequestException(
+            "Shutting down the entire service grid requires confirm=Y.");
+
+        String propertiesFile
+          = parameter(parameters,"properties",
+                      GridShutdown.DEFAULT_PROPERTIES_FILE);
+        sendJob(exchange,
+                submit(gridShutdownJob(propertiesFile)),
+                seconds(parameters,"wait",0));
+        }
+      });
+
+    server_.createContext("/feed",new Handler("GET")
+      {
+      protected void handle(HttpExchange exchange,
+                            Map<String,List<String>> parameters)
+        throws Exception
+        {
+        long interval
+          = Long.parseLong(
+            parameter(parameters,"interval",
+                      String.valueOf(DEFAULT_FEED_INTERVAL)));
+        if (interval <= 0)
+          throw new BadRequestException("The interval must be positive.");
+        long duration = seconds(parameters,"duration",0);
+
+        // nothing is started for a feed that is rejected
+        addFeed(interval);
+        try
+          {
+          exchange.getResponseHeaders().set("Content-Type",
+                                            "text/csv; charset=UTF-8");
+          exchange.sendResponseHeaders(200,0);  // chunked
+          new Feed(exchange.getResponseBody()).run(duration);
+          }
+        finally
+          {
+          removeFeed();
+          }
+        }
+      });
+
+    server_.createContext("/stop",new Handler("POST")
+      {
+      protected void handle(HttpExchange exchange,
+                            Map<String,List<String>> parameters)
+        throws IOException
+        {
+        sendJson(exchange,202,"{\"stopping\":true}");
+        // stop from another thread, since stopping waits for exchanges
+        workers_.execute(new Runnable()
+          {
+          public void run() { ControlDaemon.this.stop(); }
+          });
+        }
+      });
+    }
+
+
+  /**
+   * A constructor for the ControlDaemon class that shares an Admin
+   * through AdminSessions.
+   */
+  public ControlDaemon(InetSocketAddress address) throws IOException
+    {
+    this(address,null);
+    session_ = AdminSessions.acquire();
+    admin_ = session_.admin();
+    }
+
+
+  /**
+   * Return the port the daemon is listening on, which is useful when it
+   * was created with port 0.
+   */
+  public int port() { return server_.getAddress().getPort(); }
+
+
+  /**
+   * Start accepting requests.
+   */
+  public void start()
+    {
+    server_.start();
+    logger_.info("Control daemon listening on " + server_.getAddress());
+    }
+
+
+  /**
+   * Stop accepting requests, end any feeds and release the Admin.  Jobs
+   * that are running are left to finish on their daemon threads.
+   */
+  public synchronized void stop()
+    {
+    if (lifecycle_.isStopped())
+      return;
+
+    logger_.info("Control daemon stopping.");
+    lifecycle_.stop();
+    synchronized(feeds_)
+      {
+      for (SpaceMonitor monitor : feeds_)
+        monitor.stop();
+      }
+    server_.stop(1);
+    requests_.shutdown();
+    workers_.shutdown();
+    timer_.shutdownNow();
+    if (session_ != null)
+      session_.release();
+    logger_.info("Control daemon stopped.");
+    }
+
+
+  /**
+   * Wait until the daemon is stopped, deferring any interrupt until it
+   * has.
+   */
+  public void awaitStop()
+    {
+    lifecycle_.awaitUninterruptibly();
+    }
+
+
+  /**
+   * Admit a feed, leasing the statistics monitor for the first one.
+   * Every running feed uses the interval of the first.
+   *
+   * @param interval The statistics interval, in seconds
+   */
+  private void addFeed(long interval) throws BadRequestException
+    {
+    synchronized(feeds_)
+      {
+      if (lifecycle_.isStopped())
+        throw new BadRequestException(503,"The daemon is stopping.");
+
+      if (feedCount_ == 0)
+        {
+        long millis = TimeUnit.SECONDS.toMillis(interval);
+        feedLease_ = StatisticsMonitorLease.acquire(admin_,millis);
+        feedInterval_ = interval;
+        }
+      else if (interval != feedInterval_)
+        throw new BadRequestException(409,
+                                      "Feeds are running with an interval"
+                                      + " of " + feedInterval_
+                                      + " seconds.");
+
+      ++feedCount_;
+      }
+    }
+
+
+  /**
+   * Forget a feed that has finished, releasing the statistics monitor
+   * after the last one.
+   */
+  private void removeFeed()
+    {
+    synchronized(feeds_)
+      {
+      if (--feedCount_ == 0)
+        {
+        feedLease_.release();
+        feedLease_ = null;
+        }
+      }
+    }
+
+
+  /**
+   * Record a job and start it.
+   */
+  private Job submit(Job job) throws BadRequestException
+    {
+    synchronized(jobs_)
+      {
+      if (lifecycle_.isStopped())
+        throw new BadRequestException(503,"The daemon is stopping.");
+
+      jobs_.put(Long.valueOf(job.id()),job);
+      pruneJobs();
+      }
+
+    workers_.execute(job);
+    return job;
+    }
+
+
+  /**
+   * Forget the oldest finished jobs beyond MAX_FINISHED_JOBS.  The caller
+   * must hold the jobs_ lock.
+   */
+  private void pruneJobs()
+    {
+    int finished = 0;
+    for (Job job : jobs_.values())
+      if (job.isDone())
+        ++finished;
+
+    Iterator<Job> jobs = jobs_.values().iterator();
+    while ((finished > MAX_FINISHED_JOBS) && jobs.hasNext())
+      if (jobs.next().isDone())
+        {
+        jobs.remove();
+        --finished;
+        }
+    }
+
+
+  /**
+   * Find a job by the id in a request path.
+   */
+  private Job job(String id) throws BadRequestException
+    {
+    Job job = null;
+    try
+      {
+      synchronized(jobs_) { job = jobs_.get(Long.valueOf(id)); }
+      }
+    catch (NumberFormatException e)
+      {
+      throw new BadRequestException("Invalid job id:  " + id);
+      }
+
+    if (job == null)
+      throw new BadRequestException(404,"No such job:  " + id);
+
+    return job;
+    }
+
+
+  /**
+   * Create a job that waits for GSCs in one or more zones.
+   */
+  private Job zoneMonitorJob(final Map<String,Integer> requirements,
+                             final long timeout)
+    {
+    return new Job("zone-monitor",requirements.toString())
+      {
+      protected String execute() throws Exception
+        {
+        final ZoneMonitor monitor = new ZoneMonitor(requirements,admin_);
+        ScheduledFuture<?> expiry = timer_.schedule(new Runnable()
+          {
+          public void run() { monitor.stop(); }
+          },timeout,TimeUnit.MILLISECONDS);
+
+        monitor.run();
+        expiry.cancel(false);
+
+        if (!monitor.isReady())
+          throw new TimeoutException("Zones not ready after " + timeout
+                                     + " ms, GSCs found:  "
+                                     + monitor.gscCounts());
+
+        return countsJson(monitor.gscCounts());
+        }
+      };
+    }
+
+
+  /**
+   * Create a job that shuts down a zone.
+   */
+  private Job zoneShutdownJob(final String zoneName,
+                              final int parallelism,
+                              final long undeployTimeout)
+    {
+    return new Job("zone-shutdown",zoneName)
+      {
+      protected String execute() throws Exception
+        {
+        ZoneShutdown shutdown
+          = new ZoneShutdown(zoneName,parallelism,undeployTimeout,admin_);
+        shutdown.run();
+        if (shutdown.failure() != null)
+          throw new IllegalStateException(shutdown.failure());
+
+        return null;
+        }
+      };
+    }
+
+
+  /**
+   * Create a job that shuts down the entire service grid.
+   */
+  private Job gridShutdownJob(final String propertiesFile)
+    {
+    return new Job("grid-shutdown",propertiesFile)
+      {
+      protected String execute() throws Exception
+        {
+        GridShutdown shutdown = new GridShutdown(propertiesFile,admin_);
+        if (!shutdown.shutdown())
+          throw new IllegalStateException(shutdown.failure());
+
+        return null;
+        }
+      };
+    }
+
+
+  /**
+   * Return the daemon and grid summary as a JSON object.
+   */
+  private String status()
+    {
+    int running = 0;
+    int total = 0;
+    int feeds = 0;
+    synchronized(feeds_) { feeds = feedCount_; }
+    synchronized(jobs_)
+      {
+      for (Job job : jobs_.values())
+        if (!job.isDone())
+          ++running;
+      total = jobs_.size();
+      }
+
+    return "{\"uptimeMs\":" + (System.currentTimeMillis() - created_)
+      + ",\"lookupServices\":" + admin_.getLookupServices().getSize()
+      + ",\"gridServiceAgents\":" + admin_.getGridServiceAgents().getSize()
+      + ",\"runningJobs\":" + running
+      + ",\"jobs\":" + total
+      + ",\"feeds\":" + feeds
+      + "}";
+    }
+
+
+  /**
+   * Return all known jobs as a JSON array, oldest first.
+   */
+  private String jobsJson()
+    {
+    List<Job> jobs = null;
+    synchronized(jobs_) { jobs = new ArrayList<Job>(jobs_.values()); }
+
+    StringBuilder json = new StringBuilder("[");
+    for (Job job : jobs)
+      json.append((json.length() > 1) ? "," : "").append(job.toJson());
+
+    return json.append(']').toString();
+    }
+
+
+  /**
+   * Return GSC counts, keyed by zone, as a JSON object.
+   */
+  private static String countsJson(Map<String,Integer> counts)
+    {
+    StringBuilder json = new StringBuilder("{");
+    for (Map.Entry<String,Integer> entry : counts.entrySet())
+      json.append((json.length() > 1) ? "," : "")
+        .append(PhaseMetrics.quote(entry.getKey())).append(':')
+        .append(entry.getValue());
+
+    return json.append('}').toString();
+    }
+
+
+  /**
+   * Parse the query string of a request.  Repeated parameters and comma
+   * separated values are collected into one list.
+   */
+  private static Map<String,List<String>> parameters(HttpExchange exchange)
+    throws UnsupportedEncodingException
+    {
+    Map<String,List<String>> parameters
+      = new HashMap<String,List<String>>();
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query == null)
+      return parameters;
+
+    for (String pair : query.split("&"))
+      {
+      int separator = pair.indexOf('=');
+      if (separator <= 0)
+        continue;
+
+      String name = URLDecoder.decode(pair.substring(0,separator),"UTF-8");
+      List<String> values = parameters.get(name);
+      if (values == null)
+        {
+        values = new ArrayList<String>();
+        parameters.put(name,values);
+        }
+      for (String value : pair.substring(separator + 1).split(","))
+        if (value.length() > 0)
+          values.add(URLDecoder.decode(value,"UTF-8"));
+      }
+
+    return parameters;
+    }
+
+
+  /**
+   * Return the first value of a parameter, or the default if it is
+   * missing.
+   */
+  private static String parameter(Map<String,List<String>> parameters,
+                                  String name,
+                                  String defaultValue)
+    {
+    List<String> values = parameters.get(name);
+    return ((values == null) || values.isEmpty())
+      ? defaultValue
+      : values.get(0);
+    }
+
+
+  /**
+   * Return the values of a parameter that must be present.
+   */
+  private static List<String> required(Map<String,List<String>> parameters,
+                                       String name)
+    throws BadRequestException
+    {
+    List<String> values = parameters.get(name);
+    if ((values == null) || values.isEmpty())
+      throw new BadRequestException("Missing parameter:  " + name);
+
+    return values;
+    }
+
+
+  /**
+   * Return a parameter given in seconds as milliseconds, or the default,
+   * already in milliseconds, if it is missing.
+   */
+  private static long seconds(Map<String,List<String>> parameters,
+                              String name,
+                              long defaultValue)
+    {
+    String value = parameter(parameters,name,null);
+    return (value == null)
+      ? defaultValue
+      : TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+    }
+
+
+  /**
+   * Send a job, after waiting up to the passed time, in milliseconds,
+   * for it to finish.  A job that is still running is sent with 202.
+   */
+  private static void sendJob(HttpExchange exchange,Job job,long wait)
+    throws IOException, InterruptedException
+    {
+    if (wait > 0)
+      job.await(wait,TimeUnit.MILLISECONDS);
+
+    sendJson(exchange,job.isDone() ? 200 : 202,job.toJson());
+    }
+
+
+  /**
+   * Send an error as a JSON object.
+   */
+  private static void sendError(HttpExchange exchange,
+                                int status,
+                                String message)
+    {
+    try
+      {
+      sendJson(exchange,status,
+               "{\"error\":" + PhaseMetrics.quote(String.valueOf(message))
+               + "}");
+      }
+    catch (IOException e)
+      {
+      logger_.warning("Unable to send error response:  " + e);
+      }
+    }
+
+
+  /**
+   * Send a complete JSON response.
+   */
+  private static void sendJson(HttpExchange exchange,
+                               int status,
+                               String json)
+    throws IOException
+    {
+    byte[] body = (json + "\n").getBytes("UTF-8");
+    exchange.getResponseHeaders().set("Content-Type",
+                                      "application/json; charset=UTF-8");
+    exchange.sendResponseHeaders(status,body.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(body);
+    out.close();
+    }
+
+
+  /**
+   * Run the ControlDaemon from the command line.  The Admin is created
+   * from the LOOKUPGROUPS and LOOKUPLOCATORS environment variables.
+   *
+   * @param args The command line arguments passed in.
+   */
+  public static void main(String args[]) throws IOException
+    {
+    if (args.length <= 2)
+      {
+      int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+      String host = (args.length > 1) ? args[1] : DEFAULT_HOST;
+
+      final ControlDaemon daemon
+        = new ControlDaemon(
+          new InetSocketAddress(InetAddress.getByName(host),port));
+      Runtime.getRuntime().addShutdownHook(new Thread()
+        {
+        public void run() { daemon.stop(); }
+        });
+
+      daemon.start();
+      daemon.awaitStop();
+      }
+    else
+      logger_.info("Usage:  java "
+                   + ControlDaemon.class.getName()
+                   + " [<port> [<bind-address>]]");
+
+    System.exit(0);
+    }
+}  // end ControlDaemon
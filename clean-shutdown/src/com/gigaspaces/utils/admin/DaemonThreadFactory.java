@@ -0,0 +1,41 @@
+/**
+ * DaemonThreadFactory creates named daemon threads, so that worker pools
+ * never keep a command line tool from exiting.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class DaemonThreadFactory implements ThreadFactory
+{
+  private String name_ = null;
+  private AtomicInteger count_ = new AtomicInteger();
+
+  /**
+   * The full constructor for the DaemonThreadFactory class.
+   *
+   * @param name The prefix of the thread names
+   */
+  public DaemonThreadFactory(String name)
+    {
+    name_ = name;
+    }
+
+
+  /**
+   * Create a daemon thread.  This method is inherited from ThreadFactory.
+   */
+  public Thread newThread(Runnable runnable)
+    {
+    Thread thread
+      = new Thread(runnable,name_ + "-" + count_.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+    }
+}  // end DaemonThreadFactory
@@ -0,0 +1,244 @@
+/**
+ * DrainMonitor waits for backlogs on a set of space instances, such as
+ * mirror operations in progress or redo log packets, to drain.  Each
+ * instance's drain rate is tracked as an exponentially weighted moving
+ * average, and the time to the next poll is the estimated time for the
+ * slowest instance to empty plus a margin.  Polling backs off while no
+ * estimate is available.  The drain is abandoned only when no instance
+ * has made progress for the stall timeout.  Each poll fetches the
+ * statistics of all instances in parallel, as a GridStatisticsSnapshot.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.logging.Logger;
+
+public class DrainMonitor
+{
+  public static final long DEFAULT_MIN_INTERVAL = 250;  // milliseconds
+  public static final long DEFAULT_MAX_INTERVAL = 10000;  // 10 seconds
+  public static final long DEFAULT_STALL_TIMEOUT = 60000;  // 1 minute
+  public static final double DEFAULT_MARGIN = 0.2;
+
+  private static final double RATE_WEIGHT = 0.3;
+
+  private static Logger logger_
+    = Logger.getLogger(DrainMonitor.class.getName());
+
+  private long minInterval_ = DEFAULT_MIN_INTERVAL;
+  private long maxInterval_ = DEFAULT_MAX_INTERVAL;
+  private long stallTimeout_ = DEFAULT_STALL_TIMEOUT;
+  private double margin_ = DEFAULT_MARGIN;
+  private int parallelism_ = GridStatisticsSnapshot.DEFAULT_PARALLELISM;
+
+  /**
+   * Backlog extracts the backlog to be drained from the statistics of a
+   * space instance.
+   */
+  public interface Backlog
+  {
+    /**
+     * Return the backlog, or a negative number if the statistics do not
+     * include it.
+     */
+    public long backlog(SpaceInstanceStatistics statistics);
+  }  // end Backlog
+
+
+  /**
+   * Drain tracks the backlog of one space instance.
+   */
+  private static class Drain
+  {
+    private SpaceInstance instance_ = null;
+    private long backlog_ = -1;
+    private long sampled_ = 0;
+    private long lastProgress_ = 0;
+    private double rate_ = 0.0;  // per second
+    private boolean rated_ = false;
+
+    public Drain(SpaceInstance instance,long now)
+      {
+      instance_ = instance;
+      lastProgress_ = now;
+      }
+
+
+    /**
+     * Record a new backlog sample, updating the drain rate.
+     */
+    public void sample(long backlog,long now)
+      {
+      if ((backlog_ >= 0) && (now > sampled_))
+        {
+        double rate = (backlog_ - backlog) * 1000.0 / (now - sampled_);
+        rate_ = rated_
+          ? RATE_WEIGHT * rate + (1.0 - RATE_WEIGHT) * rate_
+          : rate;
+        rated_ = true;
+        }
+
+      if ((backlog_ < 0) || (backlog < backlog_))
+        lastProgress_ = now;
+
+      backlog_ = backlog;
+      sampled_ = now;
+      }
+
+
+    /**
+     * Return the estimated time, in milliseconds, to drain the backlog,
+     * or a negative number if the backlog is not draining.
+     */
+    public long eta()
+      {
+      return (rate_ > 0.0) ? (long)(backlog_ * 1000.0 / rate_) : -1;
+      }
+
+
+    public String toString()
+      {
+      return instance_.getSpace().getName()
+        + "." + instance_.getInstanceId()
+        + " [" + instance_.getBackupId() + "]"
+        + " backlog " + backlog_
+        + ", draining " + String.format("%.1f",rate_) + "/s";
+      }
+  }  // end Drain
+
+
+  /**
+   * The full constructor for the DrainMonitor class.
+   *
+   * @param minInterval The shortest time, in milliseconds, between polls
+   * @param maxInterval The longest time, in milliseconds, between polls
+   * @param stallTimeout The time, in milliseconds, without progress
+   *                     after which the drain is abandoned
+   * @param margin The fraction added to the estimated time to drain
+   * @param parallelism The maximum number of concurrent statistics
+   *                    fetches
+   */
+  public DrainMonitor(long minInterval,
+                      long maxInterval,
+                      long stallTimeout,
+                      double margin,
+                      int parallelism)
+    {
+    minInterval_ = minInterval;
+    maxInterval_ = Math.max(minInterval,maxInterval);
+    stallTimeout_ = stallTimeout;
+    margin_ = margin;
+    parallelism_ = parallelism;
+    }
+
+
+  /**
+   * The default constructor for the DrainMonitor class.
+   */
+  public DrainMonitor()
+    {
+    this(DEFAULT_MIN_INTERVAL,
+         DEFAULT_MAX_INTERVAL,
+         DEFAULT_STALL_TIMEOUT,
+         DEFAULT_MARGIN,
+         GridStatisticsSnapshot.DEFAULT_PARALLELISM);
+    }
+
+
+  /**
+   * Wait for the backlog of every instance to drain.
+   *
+   * @param name What is being drained, used in log messages
+   * @param instances The space instances to monitor
+   * @param backlog Extracts the backlog from instance statistics
+   * @return true if every backlog drained, false if the drain stalled
+   */
+  public boolean drain(String name,
+                       List<SpaceInstance> instances,
+                       Backlog backlog)
+    throws InterruptedException
+    {
+    long start = System.currentTimeMillis();
+    List<Drain> drains = new ArrayList<Drain>();
+    for (SpaceInstance instance : instances)
+      drains.add(new Drain(instance,start));
+
+    long interval = minInterval_;
+    while (true)
+      {
+      GridStatisticsSnapshot snapshot
+        = GridStatisticsSnapshot.take(instances,
+                                      parallelism_,
+                                      GridStatisticsSnapshot.DEFAULT_TIMEOUT);
+      long now = snapshot.timestamp();
+      List<Drain> pending = new ArrayList<Drain>();
+      long lastProgress = 0;
+      long eta = 0;
+
+      for (Drain drain : drains)
+        {
+        // an instance that could not be sampled is still pending
+        SpaceInstanceStatistics statistics
+          = snapshot.statistics(drain.instance_);
+        long current = (statistics == null)
+          ? Long.MAX_VALUE
+          : backlog.backlog(statistics);
+        if (current < 0)
+          continue;
+
+        if (statistics != null)
+          drain.sample(current,now);
+        if (current > 0)
+          {
+          pending.add(drain);
+          lastProgress = Math.max(lastProgress,drain.lastProgress_);
+          eta = ((eta < 0) || (statistics == null) || (drain.eta() < 0))
+            ? -1
+            : Math.max(eta,drain.eta());
+          }
+        }
+
+      if (pending.isEmpty())
+        {
+        logger_.info("All " + name + " backlogs drained in "
+                     + (now - start) + " ms.");
+        return true;
+        }
+
+      if (now - lastProgress > stallTimeout_)
+        {
+        logger_.warning(name + " drain stalled for "
+                        + (now - lastProgress) + " ms:  " + pending);
+        return false;
+        }
+
+      // wait for the slowest estimate, or back off until there is one
+      if (eta >= 0)
+        interval = Math.min(maxInterval_,
+                            Math.max(minInterval_,
+                                     (long)(eta * (1.0 + margin_))));
+      else
+        interval = Math.min(maxInterval_,interval * 2);
+
+      // don't sleep past the point where the drain would be stalled
+      interval = Math.max(minInterval_,
+                          Math.min(interval,
+                                   stallTimeout_ - (now - lastProgress) + 1));
+
+      logger_.info(pending.size() + " " + name + " backlogs pending, "
+                   + ((eta >= 0) ? "estimated " + eta + " ms" : "no estimate")
+                   + ", polling again in " + interval + " ms:  " + pending);
+      Thread.sleep(interval);
+      }
+    }
+}  // end DrainMonitor
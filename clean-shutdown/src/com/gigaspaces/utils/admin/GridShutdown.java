@@ -7,14 +7,13 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
 
 import org.openspaces.admin.Admin;
-import org.openspaces.admin.AdminFactory;
 import org.openspaces.admin.gsa.GridServiceAgent;
-import org.openspaces.admin.space.Space;
 import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
 import org.openspaces.admin.pu.ProcessingUnits;
-import org.openspaces.admin.pu.ProcessingUnit;
 
 import com.gigaspaces.cluster.replication.async.mirror.MirrorStatistics;
 import com.j_spaces.core.filters.ReplicationStatistics;
@@ -22,13 +21,47 @@ import com.j_spaces.core.filters.ReplicationStatistics.OutgoingReplication;
 
 public class GridShutdown
 {
-  private static final String DEFAULT_PROPERTIES_FILE = "shutdown.properties";
+  public static final String DEFAULT_PROPERTIES_FILE = "shutdown.properties";
+  private static final long DEFAULT_AGENT_TIMEOUT = 60000;  // 1 minute
+
+  private static final DrainMonitor.Backlog MIRROR_BACKLOG
+    = new DrainMonitor.Backlog()
+      {
+      public long backlog(SpaceInstanceStatistics statistics)
+        {
+        MirrorStatistics mirrorStatistics = statistics.getMirrorStatistics();
+        return (mirrorStatistics == null)
+          ? -1
+          : mirrorStatistics.getInProgressOperationCount();
+        }
+      };
+
+  private static final DrainMonitor.Backlog REDO_LOG_BACKLOG
+    = new DrainMonitor.Backlog()
+      {
+      public long backlog(SpaceInstanceStatistics statistics)
+        {
+        ReplicationStatistics replicationStatistics
+          = statistics.getReplicationStatistics();
+        return (replicationStatistics == null)
+          ? -1
+          : replicationStatistics.getOutgoingReplication().getRedoLogSize();
+        }
+      };
 
   private Properties properties_ = new Properties();
   private String lookupGroups_ = null;
   private int numberOfAgentsToShutdown_ = 0;
   private int transactionTimeout_ = 0;
+  private int statisticsParallelism_
+    = GridStatisticsSnapshot.DEFAULT_PARALLELISM;
+  private long agentTimeout_ = DEFAULT_AGENT_TIMEOUT;
+  private ProcessingUnitUndeployer undeployer_ = null;
+  private DrainMonitor drainMonitor_ = null;
+  private PhaseMetrics metrics_ = new PhaseMetrics("grid-shutdown");
+  private AdminSessions.Session session_ = null;
   private Admin admin_ = null;
+  private String failure_ = null;
   
   private void loadProperties(String propertiesFile) throws Exception
     {
@@ -44,8 +77,15 @@ public class GridShutdown
       }
     }
 
+
+  private long longProperty(String name,long defaultValue)
+    {
+    String value = properties_.getProperty(name);
+    return (value == null) ? defaultValue : Long.parseLong(value.trim());
+    }
+
   
-  public GridShutdown(String propertiesFile) throws Exception
+  public GridShutdown(String propertiesFile,Admin admin) throws Exception
     {
     loadProperties(propertiesFile);
     lookupGroups_ = properties_.getProperty("lookupgroups");
@@ -57,7 +97,33 @@ public class GridShutdown
     if ((lookupGroups_ == null || lookupGroups_.length() == 0))
       throw new Exception("Invalid Input parameters ");
 
-    admin_ = new AdminFactory().addGroup(lookupGroups_).createAdmin();
+    agentTimeout_ = longProperty("agentTimeout",DEFAULT_AGENT_TIMEOUT);
+    statisticsParallelism_
+      = (int)longProperty("statisticsParallelism",
+                          GridStatisticsSnapshot.DEFAULT_PARALLELISM);
+
+    undeployer_ = new ProcessingUnitUndeployer(
+      (int)longProperty("undeployParallelism",
+                        ProcessingUnitUndeployer.DEFAULT_PARALLELISM),
+      longProperty("undeployTimeout",
+                   ProcessingUnitUndeployer.DEFAULT_TIMEOUT));
+
+    drainMonitor_ = new DrainMonitor(
+      DrainMonitor.DEFAULT_MIN_INTERVAL,
+      longProperty("drainMaxInterval",DrainMonitor.DEFAULT_MAX_INTERVAL),
+      longProperty("drainStallTimeout",DrainMonitor.DEFAULT_STALL_TIMEOUT),
+      DrainMonitor.DEFAULT_MARGIN,
+      statisticsParallelism_);
+
+    admin_ = admin;
+    }
+
+
+  public GridShutdown(String propertiesFile) throws Exception
+    {
+    this(propertiesFile,null);
+    session_ = AdminSessions.acquire(lookupGroups_,null);
+    admin_ = session_.admin();
     }
 
   
@@ -67,24 +133,6 @@ public class GridShutdown
     }
 
 
-  private ArrayList<SpaceInstance> findAllMirrors()
-    {
-    ArrayList<SpaceInstance> mirrors = new ArrayList<SpaceInstance>();
-
-    for (Space space : admin_.getSpaces())
-      for (SpaceInstance spaceInstance : space)
-        {
-        MirrorStatistics mirrorStat
-          = spaceInstance.getStatistics().getMirrorStatistics();
-
-        if (mirrorStat != null)
-          mirrors.add(spaceInstance);
-        }
-
-    return mirrors;
-    }
-
-  
   private void logMirrorStatistics(SpaceInstance spaceInstance,
                                    MirrorStatistics statistics)
     {
@@ -101,18 +149,19 @@ public class GridShutdown
     }
 
 
-  private boolean mirrorsReadyForShutdown()
+  private boolean mirrorsReadyForShutdown(GridStatisticsSnapshot snapshot)
+    throws InterruptedException
     {
     System.out.println("Testing mirrors");
 
-    List<SpaceInstance> mirrors = findAllMirrors();
+    List<SpaceInstance> mirrors = snapshot.mirrors();
 
     List<String> pending = new ArrayList<String>();
 
     for (SpaceInstance spaceInstance : mirrors)
       {
       MirrorStatistics mirrorStatistics
-        = spaceInstance.getStatistics().getMirrorStatistics();
+        = snapshot.statistics(spaceInstance).getMirrorStatistics();
       logMirrorStatistics(spaceInstance,mirrorStatistics);
 
       if (mirrorStatistics.getInProgressOperationCount() > 0)
@@ -122,25 +171,8 @@ public class GridShutdown
     for (String name : pending)
       System.out.println("Mirror :" + name + " needs to flush entries.");
 
-    return pending.isEmpty();
-    }
-
-
-  private List<SpaceInstance> findRedoLogs()
-    {
-    List<SpaceInstance> list = new ArrayList<SpaceInstance>();
-
-    for (Space space : admin_.getSpaces())
-      for (SpaceInstance spaceInstance : space)
-        {
-        ReplicationStatistics statistics
-          = spaceInstance.getStatistics().getReplicationStatistics();
-
-        if (statistics != null)
-          list.add(spaceInstance);
-        }
-
-    return list;
+    return pending.isEmpty()
+      || drainMonitor_.drain("mirror",mirrors,MIRROR_BACKLOG);
     }
 
 
@@ -160,45 +192,74 @@ public class GridShutdown
     }
 
 
-  private boolean redoLogsReadyForShutdown()
+  private boolean redoLogsReadyForShutdown(GridStatisticsSnapshot snapshot)
+    throws InterruptedException
     {
     System.out.println("Testing Redo logs");
 
-    List<SpaceInstance> redos = findRedoLogs();
+    List<SpaceInstance> redos = snapshot.replicating();
 
     List<String> pending = new ArrayList<String>();
 
     for (SpaceInstance spaceInstance : redos)
       {
-      ReplicationStatistics statistics
-        = spaceInstance.getStatistics().getReplicationStatistics();
-
-      if (statistics != null)
-        {
-        OutgoingReplication redoLogStatistics
-          = spaceInstance
-            .getStatistics()
-            .getReplicationStatistics()
-            .getOutgoingReplication();
-        logRedoLogStatistics(spaceInstance,redoLogStatistics);
-
-        if (redoLogStatistics.getRedoLogSize() > 0)
-          pending.add(spaceInstance.getSpace().getName());
-          }
+      OutgoingReplication redoLogStatistics
+        = snapshot
+          .statistics(spaceInstance)
+          .getReplicationStatistics()
+          .getOutgoingReplication();
+      logRedoLogStatistics(spaceInstance,redoLogStatistics);
+
+      if (redoLogStatistics.getRedoLogSize() > 0)
+        pending.add(spaceInstance.getSpace().getName());
       }
 
     for (String name : pending)
       System.out.println("Space :" + name + " needs to replicate entries");
 
-    return pending.isEmpty();
+    return pending.isEmpty()
+      || drainMonitor_.drain("redo log",redos,REDO_LOG_BACKLOG);
+    }
+
+
+  /**
+   * Return why the last shutdown was abandoned, or null if it was not.
+   */
+  public String failure() { return failure_; }
+
+
+  /**
+   * Abandon the shutdown, reporting why.
+   */
+  private void abort(String reason)
+    {
+    System.out.println(reason + ", not shutting down");
+    failure_ = reason;
     }
 
 
-  private void undeployProcessingUnits()
+  private boolean undeployProcessingUnits()
     {
+    long start = metrics_.start();
     ProcessingUnits units = admin_.getProcessingUnits();
-    for (ProcessingUnit unit : units)
-      unit.undeployAndWait();
+    UndeploySchedule schedule = new UndeploySchedule(units,properties_);
+    List<ProcessingUnitUndeployer.Result> results
+      = undeployer_.undeploy(schedule,new ProcessingUnitUndeployer.Listener()
+        {
+        public void undeployed(ProcessingUnitUndeployer.Result result)
+          {
+          metrics_.record("pu-undeploy",result.elapsed());
+          }
+        });
+    metrics_.stop("undeploy",start);
+
+    List<String> deployed = ProcessingUnitUndeployer.stillDeployed(results);
+    for (String pu : deployed)
+      System.out.println("ProcessingUnit " + pu + " still deployed");
+    if (!deployed.isEmpty())
+      abort("Processing units still deployed:  " + deployed);
+
+    return deployed.isEmpty();
     }
 
 
@@ -212,36 +273,112 @@ public class GridShutdown
                          + agent
                          + " on "
                          + agent.getMachine().getHostName());
+      long start = metrics_.start();
       agent.shutdown();
+      metrics_.stop("gsa-shutdown",start);
       }
     }
   
 
-  public void shutdown() throws Exception
+  /**
+   * Shut down the grid once it is ready.
+   *
+   * @return true if the agents were shut down, false if the shutdown was
+   *         abandoned, with the reason available from failure()
+   */
+  private boolean shutdownGrid() throws Exception
     {
+    failure_ = null;
     System.out.println("Starting Shutdown of "
                        + numberOfAgentsToShutdown_
                        + " agents");
 
-    // wait to find all agents
-    Thread.sleep(3000);
-    admin_.getGridServiceAgents().waitFor(numberOfAgentsToShutdown_);
+    long start = metrics_.start();
+    ReadinessGate agents
+      = new AgentsReadyGate(admin_,numberOfAgentsToShutdown_);
+    boolean agentsFound = agents.await(agentTimeout_,TimeUnit.MILLISECONDS);
+    metrics_.stop("agent-discovery",start);
+    if (!agentsFound)
+      {
+      abort("Found only "
+            + admin_.getGridServiceAgents().getSize()
+            + " of "
+            + numberOfAgentsToShutdown_
+            + " agents");
+      return false;
+      }
 
     System.out.println("Waiting for transactions to complete...");
-    Thread.sleep(transactionTimeout_);
+    start = metrics_.start();
+    ReadinessGate transactions
+      = new TransactionsCompletedGate(
+        admin_,TransactionsCompletedGate.forTimeout(transactionTimeout_));
+    if (!transactions.await(transactionTimeout_,TimeUnit.MILLISECONDS))
+      System.out.println("Transactions still active after "
+                         + transactionTimeout_
+                         + " ms, continuing");
+    metrics_.stop("transaction-wait",start);
+
+    // one pass over the grid serves all of the readiness checks
+    start = metrics_.start();
+    GridStatisticsSnapshot snapshot
+      = GridStatisticsSnapshot.take(admin_,
+                                    statisticsParallelism_,
+                                    GridStatisticsSnapshot.DEFAULT_TIMEOUT);
+    metrics_.stop("statistics-snapshot",start);
+    // an instance without statistics may be a mirror or primary with a
+    // backlog, so it can't be treated as drained
+    if (!snapshot.isComplete())
+      {
+      abort("Unable to fetch the statistics of "
+            + GridStatisticsSnapshot.names(snapshot.missing()));
+      return false;
+      }
 
-    if (mirrorsReadyForShutdown())
-      if (redoLogsReadyForShutdown())
-        {
-        undeployProcessingUnits();
-        shutdownAgents();
-        }
-      else
-        System.out.println(
-          "Some of the spaces have not finished replicating the content");
-    else
-      System.out.println(
-        "Some of the mirrors are not finished flushing the content");
+    start = metrics_.start();
+    boolean mirrorsReady = mirrorsReadyForShutdown(snapshot);
+    metrics_.stop("mirror-drain",start);
+    if (!mirrorsReady)
+      {
+      abort("Some of the mirrors are not finished flushing the content");
+      return false;
+      }
+
+    start = metrics_.start();
+    boolean redoLogsReady = redoLogsReadyForShutdown(snapshot);
+    metrics_.stop("redo-drain",start);
+    if (!redoLogsReady)
+      {
+      abort("Some of the spaces have not finished replicating the content");
+      return false;
+      }
+
+    if (!undeployProcessingUnits())
+      return false;
+
+    shutdownAgents();
+    return true;
+    }
+
+
+  /**
+   * Shut down the grid.
+   *
+   * @return true if the grid was shut down, false if the shutdown was
+   *         abandoned, with the reason available from failure()
+   */
+  public boolean shutdown() throws Exception
+    {
+    try
+      {
+      return shutdownGrid();
+      }
+    finally
+      {
+      metrics_.report(properties_.getProperty("metricsFile"));
+      if (session_ != null)
+        session_.release();
+      }
     }
 
   
@@ -265,12 +402,13 @@ public class GridShutdown
       if (! next.equals("Y"))
         System.exit(0);
 
-      gridShutdown.shutdown();
+      boolean shutDown = gridShutdown.shutdown();
 
-      System.out.println("Shutdown completed in : "
+      System.out.println((shutDown ? "Shutdown completed in : "
+                                   : "Shutdown abandoned after : ")
                          + (System.currentTimeMillis() - startTime) / 1000
                          + " seconds");
-      System.exit(0);
+      System.exit(shutDown ? 0 : 1);
       }
     else
       System.out.println("Usage:  ");
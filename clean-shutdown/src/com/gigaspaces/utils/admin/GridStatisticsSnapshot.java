@@ -0,0 +1,245 @@
+/**
+ * GridStatisticsSnapshot is an immutable set of space instance
+ * statistics, fetched in a single pass.  Fetching statistics can require
+ * a remote call per instance, so the fetches are made in parallel on a
+ * bounded pool of threads, with an overall timeout.  Instances whose
+ * statistics could not be fetched in time are reported as missing, and
+ * a snapshot with missing instances is not complete.  Since a missing
+ * instance may be a mirror or a primary with a backlog, callers must not
+ * treat it as drained.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import java.util.logging.Logger;
+
+public final class GridStatisticsSnapshot
+{
+  public static final int DEFAULT_PARALLELISM = 16;
+  public static final long DEFAULT_TIMEOUT = 30000;  // 30 seconds
+
+  private static Logger logger_
+    = Logger.getLogger(GridStatisticsSnapshot.class.getName());
+
+  private final long timestamp_;
+  private final Map<SpaceInstance,SpaceInstanceStatistics> statistics_;
+  private final List<SpaceInstance> missing_;
+
+  /**
+   * The full constructor for the GridStatisticsSnapshot class.
+   */
+  private GridStatisticsSnapshot(
+    long timestamp,
+    Map<SpaceInstance,SpaceInstanceStatistics> statistics,
+    List<SpaceInstance> missing)
+    {
+    timestamp_ = timestamp;
+    statistics_ = Collections.unmodifiableMap(statistics);
+    missing_ = Collections.unmodifiableList(missing);
+    }
+
+
+  /**
+   * Fetch the statistics of the passed space instances.
+   *
+   * @param instances The space instances to include
+   * @param parallelism The maximum number of concurrent fetches
+   * @param timeout The time, in milliseconds, allowed for all fetches
+   */
+  public static GridStatisticsSnapshot take(
+    Collection<SpaceInstance> instances,
+    int parallelism,
+    long timeout)
+    throws InterruptedException
+    {
+    long start = System.currentTimeMillis();
+    LinkedHashMap<SpaceInstance,SpaceInstanceStatistics> statistics
+      = new LinkedHashMap<SpaceInstance,SpaceInstanceStatistics>();
+    List<SpaceInstance> missing = new ArrayList<SpaceInstance>();
+    if (instances.isEmpty())
+      return new GridStatisticsSnapshot(start,statistics,missing);
+
+    List<Callable<SpaceInstanceStatistics>> fetches
+      = new ArrayList<Callable<SpaceInstanceStatistics>>();
+    for (final SpaceInstance instance : instances)
+      fetches.add(new Callable<SpaceInstanceStatistics>()
+        {
+        public SpaceInstanceStatistics call()
+          {
+          return instance.getStatistics();
+          }
+        });
+
+    ExecutorService executor
+      = Executors.newFixedThreadPool(
+        Math.max(1,Math.min(parallelism,instances.size())),
+        new DaemonThreadFactory("statistics"));
+
+    try
+      {
+      List<Future<SpaceInstanceStatistics>> results
+        = executor.invokeAll(fetches,timeout,TimeUnit.MILLISECONDS);
+
+      int i = 0;
+      for (SpaceInstance instance : instances)
+        {
+        Future<SpaceInstanceStatistics> result = results.get(i++);
+        try
+          {
+          if (!result.isCancelled() && (result.get() != null))
+            statistics.put(instance,result.get());
+          else
+            missing.add(instance);
+          }
+        catch (ExecutionException e)
+          {
+          logger_.warning("Unable to fetch statistics of "
+                          + name(instance) + ":  " + e.getCause());
+          missing.add(instance);
+          }
+        }
+      }
+    finally
+      {
+      executor.shutdownNow();
+      }
+
+    String summary = "Fetched statistics of " + statistics.size() + " of "
+      + instances.size() + " space instances in "
+      + (System.currentTimeMillis() - start) + " ms.";
+    if (!missing.isEmpty())
+      logger_.warning(summary + "  Missing:  " + names(missing));
+    else
+      logger_.fine(summary);
+
+    return new GridStatisticsSnapshot(start,statistics,missing);
+    }
+
+
+  /**
+   * Return the name of a space instance, for messages.
+   */
+  private static String name(SpaceInstance instance)
+    {
+    return instance.getSpace().getName() + "." + instance.getInstanceId()
+      + " [" + instance.getBackupId() + "]";
+    }
+
+
+  /**
+   * Return the names of the passed space instances, for messages.
+   */
+  public static List<String> names(Collection<SpaceInstance> instances)
+    {
+    List<String> names = new ArrayList<String>();
+    for (SpaceInstance instance : instances)
+      names.add(name(instance));
+
+    return names;
+    }
+
+
+  /**
+   * Fetch the statistics of every space instance known to the Admin.
+   */
+  public static GridStatisticsSnapshot take(Admin admin,
+                                            int parallelism,
+                                            long timeout)
+    throws InterruptedException
+    {
+    List<SpaceInstance> instances = new ArrayList<SpaceInstance>();
+    for (Space space : admin.getSpaces())
+      for (SpaceInstance instance : space)
+        instances.add(instance);
+
+    return take(instances,parallelism,timeout);
+    }
+
+
+  /**
+   * Return the time at which the snapshot was started.
+   */
+  public long timestamp() { return timestamp_; }
+
+
+  /**
+   * Return the space instances whose statistics were fetched.
+   */
+  public Set<SpaceInstance> instances() { return statistics_.keySet(); }
+
+
+  /**
+   * Return the space instances whose statistics could not be fetched.
+   */
+  public List<SpaceInstance> missing() { return missing_; }
+
+
+  /**
+   * Return true if the statistics of every instance were fetched.
+   */
+  public boolean isComplete() { return missing_.isEmpty(); }
+
+
+  /**
+   * Return the statistics of a space instance, or null if they were not
+   * fetched.
+   */
+  public SpaceInstanceStatistics statistics(SpaceInstance instance)
+    {
+    return statistics_.get(instance);
+    }
+
+
+  /**
+   * Return the space instances that are mirrors.
+   */
+  public List<SpaceInstance> mirrors()
+    {
+    List<SpaceInstance> mirrors = new ArrayList<SpaceInstance>();
+    for (Map.Entry<SpaceInstance,SpaceInstanceStatistics> entry
+           : statistics_.entrySet())
+      if (entry.getValue().getMirrorStatistics() != null)
+        mirrors.add(entry.getKey());
+
+    return mirrors;
+    }
+
+
+  /**
+   * Return the space instances that have replication statistics.
+   */
+  public List<SpaceInstance> replicating()
+    {
+    List<SpaceInstance> replicating = new ArrayList<SpaceInstance>();
+    for (Map.Entry<SpaceInstance,SpaceInstanceStatistics> entry
+           : statistics_.entrySet())
+      if (entry.getValue().getReplicationStatistics() != null)
+        replicating.add(entry.getKey());
+
+    return replicating;
+    }
+}  // end GridStatisticsSnapshot
@@ -9,7 +9,6 @@
 package com.gigaspaces.utils.admin;
 
 import org.openspaces.admin.Admin;
-import org.openspaces.admin.AdminFactory;
 import org.openspaces.admin.gsa.GridServiceAgent;
 import org.openspaces.admin.gsa.events.GridServiceAgentLifecycleEventListener;
 
@@ -20,26 +19,30 @@ public class InfrastructureMonitor
 {
   private static Logger logger_
     = Logger.getLogger(InfrastructureMonitor.class.getName());
-  private static Object threadMonitor_ = new Object();
 
-  private boolean done_ = false;
+  private Lifecycle lifecycle_ = new Lifecycle();
+  private AdminSessions.Session session_ = null;
   private Admin admin_ = null;
 
   /**
-   * The default constructor for the InfrastructureMonitor class.
+   * The full constructor for the InfrastructureMonitor class.
+   *
+   * @param admin The Admin instance to monitor, owned by the caller
    */
-  public InfrastructureMonitor()
+  public InfrastructureMonitor(Admin admin)
     {
-    String lookupGroups = System.getenv("LOOKUPGROUPS");
-    String lookupLocators = System.getenv("LOOKUPLOCATORS");
+    admin_ = admin;
+    }
 
-    AdminFactory factory = new AdminFactory();
-    if (lookupGroups != null)
-      factory.addGroups(lookupGroups);
-    if (lookupLocators != null)
-      factory.addLocators(lookupLocators);
 
-    admin_ = factory.createAdmin();
+  /**
+   * The default constructor for the InfrastructureMonitor class.  The
+   * Admin is shared through AdminSessions.
+   */
+  public InfrastructureMonitor()
+    {
+    session_ = AdminSessions.acquire();
+    admin_ = session_.admin();
     }
 
 
@@ -63,7 +66,7 @@ public class InfrastructureMonitor
     }
 
 
-  public boolean isDone() { return done_; }
+  public boolean isDone() { return lifecycle_.isStopped(); }
 
 
   /**
@@ -71,15 +74,16 @@ public class InfrastructureMonitor
    */
   public void run()
     {
-    admin_.addEventListener(this);
-
-    while (!isDone())
+    try
+      {
+      admin_.addEventListener(this);
+      lifecycle_.awaitUninterruptibly();
+      admin_.removeEventListener(this);
+      }
+    finally
       {
-      synchronized(threadMonitor_)
-        {
-        try { threadMonitor_.wait(); }
-        catch(InterruptedException e) { }
-        }
+      if (session_ != null)
+        session_.release();
       }
     }
 
@@ -89,8 +93,7 @@ public class InfrastructureMonitor
    */
   public void done()
     {
-    done_ = true;
-    threadMonitor_.notifyAll();
+    lifecycle_.stop();
     }
 
 
@@ -0,0 +1,105 @@
+/**
+ * LatencyHistogram records durations in a fixed amount of memory, using
+ * log-linear buckets in the manner of an HDR histogram.  Values below 128
+ * are recorded exactly; larger values are recorded to within 1/64 of
+ * their magnitude, so percentiles are accurate to better than 2%.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+public class LatencyHistogram
+{
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int EXACT_LIMIT = 2 * SUB_BUCKETS;
+  private static final int BUCKETS
+    = EXACT_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private long[] counts_ = new long[BUCKETS];
+  private long count_ = 0;
+  private long total_ = 0;
+  private long min_ = Long.MAX_VALUE;
+  private long max_ = 0;
+
+  /**
+   * Return the bucket index of a non-negative value.
+   */
+  private static int index(long value)
+    {
+    if (value < EXACT_LIMIT)
+      return (int)value;
+
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int top = (int)(value >>> shift);  // between SUB_BUCKETS and 2x
+    return EXACT_LIMIT + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+
+  /**
+   * Return the highest value recorded in a bucket.
+   */
+  private static long highestValue(int index)
+    {
+    if (index < EXACT_LIMIT)
+      return index;
+
+    int shift = (index - EXACT_LIMIT) / SUB_BUCKETS + 1;
+    long top = (index - EXACT_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    return (top << shift) + (1L << shift) - 1;
+    }
+
+
+  /**
+   * Record a value.  Negative values are recorded as zero.
+   */
+  public synchronized void record(long value)
+    {
+    value = Math.max(0,value);
+    ++counts_[index(value)];
+    ++count_;
+    total_ += value;
+    min_ = Math.min(min_,value);
+    max_ = Math.max(max_,value);
+    }
+
+
+  public synchronized long count() { return count_; }
+  public synchronized long total() { return total_; }
+  public synchronized long min() { return (count_ == 0) ? 0 : min_; }
+  public synchronized long max() { return max_; }
+
+
+  /**
+   * Return the mean of the recorded values.
+   */
+  public synchronized double mean()
+    {
+    return (count_ == 0) ? 0.0 : (double)total_ / count_;
+    }
+
+
+  /**
+   * Return the value at or below which the passed percentage of recorded
+   * values fall.
+   */
+  public synchronized long percentile(double percent)
+    {
+    if (count_ == 0)
+      return 0;
+
+    long rank = Math.max(1,(long)Math.ceil(count_ * percent / 100.0));
+    long seen = 0;
+    for (int i = 0;i < BUCKETS;i++)
+      {
+      seen += counts_[i];
+      if (seen >= rank)
+        return Math.min(max_,highestValue(i));
+      }
+
+    return max_;
+    }
+}  // end LatencyHistogram
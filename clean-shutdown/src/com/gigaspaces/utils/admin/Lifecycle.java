@@ -0,0 +1,72 @@
+/**
+ * Lifecycle tracks whether a component has been stopped and lets any
+ * number of threads wait for it to stop.  It is built on a
+ * CountDownLatch, so a stop is never missed, whether it happens before
+ * or after a thread starts waiting, and waiting threads are released as
+ * soon as it happens.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class Lifecycle
+{
+  private CountDownLatch stopped_ = new CountDownLatch(1);
+
+  public boolean isStopped() { return stopped_.getCount() == 0; }
+
+
+  /**
+   * Stop the component, releasing all waiting threads.  Stopping a
+   * stopped component has no effect.
+   */
+  public void stop()
+    {
+    stopped_.countDown();
+    }
+
+
+  /**
+   * Wait for the component to stop.
+   */
+  public void await() throws InterruptedException
+    {
+    stopped_.await();
+    }
+
+
+  /**
+   * Wait for the component to stop, for at most the passed timeout.
+   *
+   * @return true if the component stopped, false if the timeout expired
+   */
+  public boolean await(long timeout,TimeUnit unit)
+    throws InterruptedException
+    {
+    return stopped_.await(timeout,unit);
+    }
+
+
+  /**
+   * Wait for the component to stop, deferring any interrupt until it
+   * has.
+   */
+  public void awaitUninterruptibly()
+    {
+    boolean interrupted = false;
+    while (!isStopped())
+      {
+      try { stopped_.await(); }
+      catch (InterruptedException e) { interrupted = true; }
+      }
+
+    if (interrupted)
+      Thread.currentThread().interrupt();
+    }
+}  // end Lifecycle
@@ -0,0 +1,183 @@
+/**
+ * PhaseMetrics records how long each phase of a shutdown takes.  The
+ * durations of each phase are kept, in milliseconds, in a
+ * LatencyHistogram, so phases that repeat, such as undeploying a
+ * processing unit or killing a GSC, are summarized by their
+ * distribution.  The summary can be written as JSON at the end of a run.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
+
+import java.util.logging.Logger;
+
+public class PhaseMetrics
+{
+  private static Logger logger_
+    = Logger.getLogger(PhaseMetrics.class.getName());
+
+  private String name_ = null;
+  private long started_ = System.currentTimeMillis();
+  private long startNanos_ = System.nanoTime();
+  private LinkedHashMap<String,LatencyHistogram> phases_
+    = new LinkedHashMap<String,LatencyHistogram>();
+
+  /**
+   * The full constructor for the PhaseMetrics class.
+   *
+   * @param name The name of the run, included in the summary
+   */
+  public PhaseMetrics(String name)
+    {
+    name_ = name;
+    }
+
+
+  /**
+   * Return the start time of a phase, to be passed to stop().
+   */
+  public long start()
+    {
+    return System.nanoTime();
+    }
+
+
+  /**
+   * Record the duration of a phase that started at the passed time.
+   *
+   * @return The duration, in milliseconds
+   */
+  public long stop(String phase,long start)
+    {
+    long elapsed
+      = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    record(phase,elapsed);
+    return elapsed;
+    }
+
+
+  /**
+   * Record a duration, in milliseconds, measured elsewhere.
+   */
+  public void record(String phase,long elapsed)
+    {
+    LatencyHistogram histogram = null;
+    synchronized(phases_)
+      {
+      histogram = phases_.get(phase);
+      if (histogram == null)
+        {
+        histogram = new LatencyHistogram();
+        phases_.put(phase,histogram);
+        }
+      }
+
+    histogram.record(elapsed);
+    }
+
+
+  /**
+   * Return the summary as a JSON object.  Phases appear in the order
+   * they were first recorded.
+   */
+  public String toJson()
+    {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"name\":").append(quote(name_))
+      .append(",\"started\":").append(started_)
+      .append(",\"elapsedMs\":")
+      .append(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos_))
+      .append(",\"phases\":{");
+
+    synchronized(phases_)
+      {
+      boolean first = true;
+      for (Map.Entry<String,LatencyHistogram> entry : phases_.entrySet())
+        {
+        LatencyHistogram histogram = entry.getValue();
+        if (!first)
+          json.append(',');
+        first = false;
+
+        json.append(quote(entry.getKey())).append(":{")
+          .append("\"count\":").append(histogram.count())
+          .append(",\"totalMs\":").append(histogram.total())
+          .append(",\"minMs\":").append(histogram.min())
+          .append(",\"meanMs\":")
+          .append(String.format(Locale.ROOT,"%.1f",histogram.mean()))
+          .append(",\"p50Ms\":").append(histogram.percentile(50.0))
+          .append(",\"p90Ms\":").append(histogram.percentile(90.0))
+          .append(",\"p99Ms\":").append(histogram.percentile(99.0))
+          .append(",\"maxMs\":").append(histogram.max())
+          .append('}');
+        }
+      }
+
+    return json.append("}}").toString();
+    }
+
+
+  /**
+   * Quote a string as a JSON string literal.
+   */
+  static String quote(String value)
+    {
+    StringBuilder quoted = new StringBuilder("\"");
+    for (int i = 0;i < value.length();i++)
+      {
+      char c = value.charAt(i);
+      if ((c == '"') || (c == '\\'))
+        quoted.append('\\').append(c);
+      else if (c < 0x20)
+        quoted.append(String.format("\\u%04x",(int)c));
+      else
+        quoted.append(c);
+      }
+
+    return quoted.append('"').toString();
+    }
+
+
+  /**
+   * Write the JSON summary to the named file or, if fileName is null,
+   * to the log.
+   */
+  public void report(String fileName)
+    {
+    String json = toJson();
+    if (fileName == null)
+      {
+      logger_.info("Phase metrics:  " + json);
+      return;
+      }
+
+    try
+      {
+      Writer out
+        = new OutputStreamWriter(new FileOutputStream(fileName),"UTF-8");
+      try { out.write(json); out.write('\n'); }
+      finally { out.close(); }
+      logger_.info("Phase metrics written to " + fileName);
+      }
+    catch (IOException e)
+      {
+      logger_.warning("Unable to write phase metrics to " + fileName
+                      + ":  " + e);
+      logger_.info("Phase metrics:  " + json);
+      }
+    }
+}  // end PhaseMetrics
@@ -0,0 +1,346 @@
+/**
+ * ProcessingUnitUndeployer undeploys a set of processing units in
+ * parallel, using a bounded pool of threads and a timeout for each
+ * processing unit.  Results are reported to an optional listener as each
+ * processing unit finishes and are returned together once all have
+ * finished.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.openspaces.admin.pu.ProcessingUnit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import java.util.logging.Logger;
+
+public class ProcessingUnitUndeployer
+{
+  public static final int DEFAULT_PARALLELISM = 4;
+  public static final long DEFAULT_TIMEOUT = 300000;  // 5 minutes
+
+  private static Logger logger_
+    = Logger.getLogger(ProcessingUnitUndeployer.class.getName());
+
+  private int parallelism_ = DEFAULT_PARALLELISM;
+  private long timeout_ = DEFAULT_TIMEOUT;
+
+  /**
+   * Result describes the outcome of undeploying one processing unit.
+   */
+  public static class Result
+  {
+    private ProcessingUnit pu_ = null;
+    private boolean undeployed_ = false;
+    private long elapsed_ = 0;
+    private Throwable error_ = null;
+    private boolean skipped_ = false;
+
+    public Result(ProcessingUnit pu,
+                  boolean undeployed,
+                  long elapsed,
+                  Throwable error)
+      {
+      pu_ = pu;
+      undeployed_ = undeployed;
+      elapsed_ = elapsed;
+      error_ = error;
+      }
+
+
+    /**
+     * A constructor for the Result class for a processing unit that was
+     * not undeployed because an earlier wave failed.
+     */
+    public Result(ProcessingUnit pu)
+      {
+      this(pu,false,0,null);
+      skipped_ = true;
+      }
+
+
+    public ProcessingUnit processingUnit() { return pu_; }
+    public boolean isUndeployed() { return undeployed_; }
+    public boolean isSkipped() { return skipped_; }
+    public boolean isTimedOut()
+      {
+      return !undeployed_ && !skipped_ && (error_ == null);
+      }
+    public long elapsed() { return elapsed_; }
+    public Throwable error() { return error_; }
+
+
+    /**
+     * Return a short description of the outcome, such as "timed out".
+     */
+    public String outcome()
+      {
+      if (undeployed_)
+        return "undeployed";
+      if (skipped_)
+        return "skipped";
+      if (error_ == null)
+        return "timed out";
+
+      return "failed:  " + error_;
+      }
+  }  // end Result
+
+
+  /**
+   * Listener is notified as each processing unit finishes.  Listeners are
+   * called from the thread that called undeploy(), one at a time.
+   */
+  public interface Listener
+  {
+    public void undeployed(Result result);
+  }  // end Listener
+
+
+  /**
+   * Undeployment undeploys one processing unit and reports the result.
+   */
+  private class Undeployment implements Callable<Result>
+  {
+    private ProcessingUnit pu_ = null;
+
+    public Undeployment(ProcessingUnit pu)
+      {
+      pu_ = pu;
+      }
+
+
+    /**
+     * Undeploy the processing unit.  This method is inherited from
+     * Callable.
+     */
+    public Result call()
+      {
+      long start = System.currentTimeMillis();
+      logger_.info("Undeploying ProcessingUnit " + pu_.getName());
+      try
+        {
+        boolean undeployed
+          = pu_.undeployAndWait(timeout_,TimeUnit.MILLISECONDS);
+        long elapsed = System.currentTimeMillis() - start;
+
+        if (undeployed)
+          logger_.info("ProcessingUnit " + pu_.getName() + " undeployed in "
+                       + elapsed + " ms.");
+        else
+          logger_.warning("ProcessingUnit " + pu_.getName()
+                          + " not undeployed after " + elapsed + " ms.");
+
+        return new Result(pu_,undeployed,elapsed,null);
+        }
+      catch (RuntimeException e)
+        {
+        logger_.severe("Unable to undeploy ProcessingUnit " + pu_.getName()
+                       + ":  " + e);
+        return new Result(pu_,false,System.currentTimeMillis() - start,e);
+        }
+      }
+  }  // end Undeployment
+
+
+  /**
+   * The full constructor for the ProcessingUnitUndeployer class.
+   *
+   * @param parallelism The maximum number of concurrent undeployments
+   * @param timeout The time, in milliseconds, to wait for each processing
+   *                unit to undeploy
+   */
+  public ProcessingUnitUndeployer(int parallelism,long timeout)
+    {
+    parallelism_ = Math.max(1,parallelism);
+    timeout_ = timeout;
+    }
+
+
+  /**
+   * The default constructor for the ProcessingUnitUndeployer class.
+   */
+  public ProcessingUnitUndeployer()
+    {
+    this(DEFAULT_PARALLELISM,DEFAULT_TIMEOUT);
+    }
+
+
+  /**
+   * Undeploy the processing units, notifying the listener, if any, as
+   * each one finishes.
+   *
+   * @return The results, in the order the processing units finished
+   */
+  public List<Result> undeploy(Collection<ProcessingUnit> pus,
+                               Listener listener)
+    {
+    List<Result> results = new ArrayList<Result>();
+    if (pus.isEmpty())
+      return results;
+
+    ExecutorService executor
+      = Executors.newFixedThreadPool(Math.min(parallelism_,pus.size()),
+                                     new DaemonThreadFactory("undeployer"));
+
+    try
+      {
+      CompletionService<Result> completions
+        = new ExecutorCompletionService<Result>(executor);
+      for (ProcessingUnit pu : pus)
+        completions.submit(new Undeployment(pu));
+
+      for (int i = 0;i < pus.size();i++)
+        {
+        Result result = null;
+        try
+          {
+          result = completions.take().get();
+          }
+        catch (InterruptedException e)
+          {
+          Thread.currentThread().interrupt();
+          logger_.warning("Interrupted waiting for undeployments.");
+          break;
+          }
+        catch (ExecutionException e)
+          {
+          // Undeployment catches its own exceptions
+          logger_.severe("Undeployment failed:  " + e.getCause());
+          continue;
+          }
+
+        results.add(result);
+        if (listener != null)
+          listener.undeployed(result);
+        }
+      }
+    finally
+      {
+      executor.shutdownNow();
+      }
+
+    logSummary(results);
+    return results;
+    }
+
+
+  /**
+   * Undeploy the processing units of a schedule one wave at a time, with
+   * the processing units in each wave undeployed in parallel.  A wave
+   * starts only when every processing unit of the previous wave has been
+   * undeployed.  If any is still deployed, the processing units of the
+   * later waves, which it may depend on, are left deployed and reported
+   * as skipped.  The listener is not notified of skipped processing
+   * units.
+   *
+   * @return The results of every wave, in the order the processing units
+   *         finished, followed by the skipped processing units
+   */
+  public List<Result> undeploy(UndeploySchedule schedule,Listener listener)
+    {
+    List<Result> results = new ArrayList<Result>();
+    List<List<ProcessingUnit>> waves = schedule.waves();
+    int wave = 0;
+
+    for (;wave < waves.size();wave++)
+      {
+      if (Thread.currentThread().isInterrupted())
+        {
+        logger_.warning("Interrupted before undeploy wave " + (wave + 1));
+        break;
+        }
+
+      logger_.info("Starting undeploy wave " + (wave + 1) + " of "
+                   + waves.size() + ".");
+      boolean failed = false;
+      for (Result result : undeploy(waves.get(wave),listener))
+        {
+        if (!result.isUndeployed())
+          {
+          logger_.warning("ProcessingUnit "
+                          + result.processingUnit().getName()
+                          + " is still deployed.");
+          failed = true;
+          }
+        results.add(result);
+        }
+
+      if (failed)
+        {
+        ++wave;
+        break;
+        }
+      }
+
+    List<String> skipped = new ArrayList<String>();
+    for (;wave < waves.size();wave++)
+      for (ProcessingUnit pu : waves.get(wave))
+        {
+        results.add(new Result(pu));
+        skipped.add(pu.getName());
+        }
+
+    if (!skipped.isEmpty())
+      logger_.warning("Not undeploying the processing units of the"
+                      + " remaining waves:  " + skipped);
+
+    return results;
+    }
+
+
+  /**
+   * Describe each processing unit that is still deployed, with its
+   * outcome, such as "orders (timed out)".
+   */
+  public static List<String> stillDeployed(List<Result> results)
+    {
+    List<String> deployed = new ArrayList<String>();
+    for (Result result : results)
+      if (!result.isUndeployed())
+        deployed.add(result.processingUnit().getName()
+                     + " (" + result.outcome() + ")");
+
+    return deployed;
+    }
+
+
+  /**
+   * Log the aggregate results of an undeploy() call.
+   */
+  private void logSummary(List<Result> results)
+    {
+    int undeployed = 0;
+    int timedOut = 0;
+    long slowest = 0;
+
+    for (Result result : results)
+      {
+      if (result.isUndeployed())
+        ++undeployed;
+      else if (result.isTimedOut())
+        ++timedOut;
+      slowest = Math.max(slowest,result.elapsed());
+      }
+
+    logger_.info(results.size() + " ProcessingUnits processed:  "
+                 + undeployed + " undeployed, "
+                 + timedOut + " timed out, "
+                 + (results.size() - undeployed - timedOut) + " failed.  "
+                 + "Slowest took " + slowest + " ms.");
+    }
+}  // end ProcessingUnitUndeployer
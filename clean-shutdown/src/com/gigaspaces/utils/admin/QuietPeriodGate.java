@@ -0,0 +1,91 @@
+/**
+ * QuietPeriodGate opens once no changes have been reported for a quiet
+ * period and the state being watched is acceptable.  Callers report each
+ * change with changed(); every change restarts the quiet period.
+ * Subclasses override isSatisfied() to add conditions on the state.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+public class QuietPeriodGate extends ReadinessGate
+{
+  private long quietPeriod_ = 0;
+  private ScheduledExecutorService timer_
+    = Executors.newSingleThreadScheduledExecutor(
+      new DaemonThreadFactory("quiet-period"));
+  private ScheduledFuture<?> pending_ = null;
+  private boolean stopped_ = false;
+
+  /**
+   * The full constructor for the QuietPeriodGate class.
+   *
+   * @param name The name of the gate, used in log messages
+   * @param quietPeriod The time, in milliseconds, without changes after
+   *                    which the gate opens
+   */
+  public QuietPeriodGate(String name,long quietPeriod)
+    {
+    super(name);
+    quietPeriod_ = quietPeriod;
+    }
+
+
+  /**
+   * Return true if the watched state allows the gate to open.  The
+   * default implementation has no conditions.
+   */
+  protected boolean isSatisfied()
+    {
+    return true;
+    }
+
+
+  /**
+   * Report a change, restarting the quiet period.
+   */
+  public synchronized void changed()
+    {
+    if (stopped_ || isOpen())
+      return;
+
+    if (pending_ != null)
+      pending_.cancel(false);
+
+    pending_ = timer_.schedule(new Runnable()
+      {
+      public void run()
+        {
+        if (isSatisfied())
+          open();
+        }
+      },quietPeriod_,TimeUnit.MILLISECONDS);
+    }
+
+
+  /**
+   * Start the quiet period.  This method is inherited from ReadinessGate.
+   */
+  protected void start()
+    {
+    changed();
+    }
+
+
+  /**
+   * Stop the timer.  This method is inherited from ReadinessGate.
+   */
+  protected synchronized void stop()
+    {
+    stopped_ = true;
+    timer_.shutdownNow();
+    }
+}  // end QuietPeriodGate
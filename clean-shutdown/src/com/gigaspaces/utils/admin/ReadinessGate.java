@@ -0,0 +1,111 @@
+/**
+ * ReadinessGate is a one-shot gate that opens when some condition on the
+ * grid becomes true.  Concrete gates listen for Admin API events and
+ * open as soon as the event that satisfies them arrives, so callers wait
+ * only as long as necessary rather than for a fixed worst case delay.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import java.util.logging.Logger;
+
+public abstract class ReadinessGate
+{
+  private static Logger logger_
+    = Logger.getLogger(ReadinessGate.class.getName());
+
+  private String name_ = null;
+  private CountDownLatch open_ = new CountDownLatch(1);
+
+  /**
+   * The full constructor for the ReadinessGate class.
+   *
+   * @param name The name of the gate, used in log messages
+   */
+  protected ReadinessGate(String name)
+    {
+    name_ = name;
+    }
+
+
+  public String name() { return name_; }
+  public boolean isOpen() { return open_.getCount() == 0; }
+
+
+  /**
+   * Start listening for the events that open the gate.
+   */
+  protected abstract void start();
+
+
+  /**
+   * Stop listening for events.
+   */
+  protected abstract void stop();
+
+
+  /**
+   * Open the gate, releasing all waiting threads.  Opening an open gate
+   * has no effect.
+   */
+  protected void open()
+    {
+    if (!isOpen())
+      {
+      logger_.info(name_ + " is ready.");
+      open_.countDown();
+      }
+    }
+
+
+  /**
+   * Wait for the gate to open.
+   *
+   * @param timeout The maximum time to wait
+   * @param unit The unit of the timeout
+   * @return true if the gate opened, false if the timeout expired first
+   */
+  public boolean await(long timeout,TimeUnit unit)
+    throws InterruptedException
+    {
+    long start = System.currentTimeMillis();
+    logger_.info("Waiting up to " + unit.toMillis(timeout) + " ms for "
+                 + name_ + ".");
+
+    start();
+    try
+      {
+      boolean opened = open_.await(timeout,unit);
+      long elapsed = System.currentTimeMillis() - start;
+
+      if (opened)
+        logger_.info(name_ + " opened after " + elapsed + " ms.");
+      else
+        logger_.warning(name_ + " timed out after " + elapsed + " ms.");
+
+      return opened;
+      }
+    finally
+      {
+      stop();
+      }
+    }
+
+
+  /**
+   * Wait, without a timeout, for the gate to open.
+   */
+  public void await() throws InterruptedException
+    {
+    start();
+    try { open_.await(); }
+    finally { stop(); }
+    }
+}  // end ReadinessGate
@@ -0,0 +1,147 @@
+/**
+ * StatisticsMonitorLease shares the statistics monitor of an Admin
+ * between the tools running in a JVM.  The monitor is started by the
+ * first lease, if it is not already running, and stopped when the last
+ * lease is released, but only if a lease started it.  While leases are
+ * held, the statistics interval is the shortest interval any of them
+ * asked for, so a short lived user needing frequent samples, such as a
+ * shutdown waiting for transactions, neither loses them to nor leaves
+ * its interval behind for a long running feed.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.space.Spaces;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import java.util.logging.Logger;
+
+public class StatisticsMonitorLease
+{
+  private static Logger logger_
+    = Logger.getLogger(StatisticsMonitorLease.class.getName());
+
+  // the intervals of the leases held on each Admin, guarded by itself
+  private static IdentityHashMap<Admin,Holders> holders_
+    = new IdentityHashMap<Admin,Holders>();
+
+  private Admin admin_ = null;
+  private long interval_ = 0;
+  private AtomicBoolean released_ = new AtomicBoolean(false);
+
+  /**
+   * Holders records the leases held on one Admin.
+   */
+  private static class Holders
+  {
+    private List<Long> intervals_ = new ArrayList<Long>();
+    private long interval_ = 0;
+    private boolean started_ = false;
+
+    /**
+     * Return the shortest interval asked for by the leases.
+     */
+    public long shortest()
+      {
+      long shortest = Long.MAX_VALUE;
+      for (Long interval : intervals_)
+        shortest = Math.min(shortest,interval.longValue());
+
+      return shortest;
+      }
+  }  // end Holders
+
+
+  /**
+   * The full constructor for the StatisticsMonitorLease class.
+   */
+  private StatisticsMonitorLease(Admin admin,long interval)
+    {
+    admin_ = admin;
+    interval_ = interval;
+    }
+
+
+  /**
+   * Lease the statistics monitor of an Admin, starting it if necessary.
+   *
+   * @param admin The Admin whose statistics are monitored
+   * @param interval The longest acceptable time, in milliseconds, between
+   *                 statistics samples
+   */
+  public static StatisticsMonitorLease acquire(Admin admin,long interval)
+    {
+    synchronized(holders_)
+      {
+      Holders holders = holders_.get(admin);
+      if (holders == null)
+        {
+        holders = new Holders();
+        holders_.put(admin,holders);
+        }
+
+      holders.intervals_.add(Long.valueOf(interval));
+      Spaces spaces = admin.getSpaces();
+      if (holders.shortest() != holders.interval_)
+        {
+        holders.interval_ = holders.shortest();
+        spaces.setStatisticsInterval(holders.interval_,TimeUnit.MILLISECONDS);
+        }
+      if (!spaces.isMonitoring())
+        {
+        spaces.startStatisticsMonitor();
+        holders.started_ = true;
+        logger_.info("Statistics monitor started, sampling every "
+                     + holders.interval_ + " ms.");
+        }
+      }
+
+    return new StatisticsMonitorLease(admin,interval);
+    }
+
+
+  public long interval() { return interval_; }
+
+
+  /**
+   * Release the lease, stopping the monitor if this was the last lease
+   * and a lease started it.  Releasing a released lease has no effect.
+   */
+  public void release()
+    {
+    if (!released_.compareAndSet(false,true))
+      return;
+
+    synchronized(holders_)
+      {
+      Holders holders = holders_.get(admin_);
+      holders.intervals_.remove(Long.valueOf(interval_));
+      Spaces spaces = admin_.getSpaces();
+      if (holders.intervals_.isEmpty())
+        {
+        holders_.remove(admin_);
+        if (holders.started_)
+          {
+          spaces.stopStatisticsMonitor();
+          logger_.info("Statistics monitor stopped.");
+          }
+        }
+      else if (holders.shortest() != holders.interval_)
+        {
+        holders.interval_ = holders.shortest();
+        spaces.setStatisticsInterval(holders.interval_,TimeUnit.MILLISECONDS);
+        }
+      }
+    }
+}  // end StatisticsMonitorLease
@@ -0,0 +1,138 @@
+/**
+ * TransactionsCompletedGate opens once every space instance in the grid
+ * has reported statistics showing no active transactions.  A gate
+ * waiting with a timeout should sample at forTimeout() intervals, so it
+ * sees several samples before giving up.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.openspaces.admin.Admin;
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+import org.openspaces.admin.space.events.SpaceInstanceStatisticsChangedEvent;
+import org.openspaces.admin.space.events.SpaceInstanceStatisticsChangedEventListener;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public class TransactionsCompletedGate
+  extends ReadinessGate
+  implements SpaceInstanceStatisticsChangedEventListener
+{
+  public static final long DEFAULT_STATISTICS_INTERVAL = 1000;  // 1 second
+  public static final long MIN_STATISTICS_INTERVAL = 100;  // milliseconds
+  public static final int SAMPLES_PER_TIMEOUT = 5;
+
+  private Admin admin_ = null;
+  private long statisticsInterval_ = DEFAULT_STATISTICS_INTERVAL;
+  private StatisticsMonitorLease lease_ = null;
+  private ConcurrentHashMap<String,Integer> activeTransactions_
+    = new ConcurrentHashMap<String,Integer>();
+
+  /**
+   * The full constructor for the TransactionsCompletedGate class.
+   *
+   * @param admin The Admin instance to listen to
+   * @param statisticsInterval The statistics sampling interval, in
+   *                           milliseconds
+   */
+  public TransactionsCompletedGate(Admin admin,long statisticsInterval)
+    {
+    super("transaction completion");
+    admin_ = admin;
+    statisticsInterval_ = statisticsInterval;
+    }
+
+
+  /**
+   * A constructor for the TransactionsCompletedGate class that uses the
+   * default statistics interval.
+   */
+  public TransactionsCompletedGate(Admin admin)
+    {
+    this(admin,DEFAULT_STATISTICS_INTERVAL);
+    }
+
+
+  /**
+   * Return the statistics interval that gives SAMPLES_PER_TIMEOUT
+   * samples within the passed timeout, between MIN_STATISTICS_INTERVAL
+   * and DEFAULT_STATISTICS_INTERVAL.
+   *
+   * @param timeout The time, in milliseconds, the gate will be awaited
+   */
+  public static long forTimeout(long timeout)
+    {
+    return Math.max(MIN_STATISTICS_INTERVAL,
+                    Math.min(DEFAULT_STATISTICS_INTERVAL,
+                             timeout / SAMPLES_PER_TIMEOUT));
+    }
+
+
+  /**
+   * Open the gate if every known space instance has reported no active
+   * transactions.
+   */
+  private void check()
+    {
+    for (Space space : admin_.getSpaces())
+      for (SpaceInstance instance : space)
+        {
+        Integer active = activeTransactions_.get(instance.getUid());
+        if ((active == null) || (active.intValue() > 0))
+          return;
+        }
+
+    open();
+    }
+
+
+  /**
+   * Start sampling space instance statistics.  The statistics monitor is
+   * leased, since it may be shared with other tools using the Admin.
+   * This method is inherited from ReadinessGate.
+   */
+  protected void start()
+    {
+    admin_.getSpaces().getSpaceInstanceStatisticsChanged().add(this);
+    lease_ = StatisticsMonitorLease.acquire(admin_,statisticsInterval_);
+
+    // a grid without spaces has no transactions to wait for
+    check();
+    }
+
+
+  /**
+   * Stop sampling.  This method is inherited from ReadinessGate.
+   */
+  protected void stop()
+    {
+    admin_.getSpaces().getSpaceInstanceStatisticsChanged().remove(this);
+    if (lease_ != null)
+      lease_.release();
+    }
+
+
+  /**
+   * Method called when space instance statistics are sampled.  This
+   * method is inherited from the
+   * SpaceInstanceStatisticsChangedEventListener interface.
+   */
+  public void spaceInstanceStatisticsChanged(
+    SpaceInstanceStatisticsChangedEvent event)
+    {
+    SpaceInstanceStatistics statistics = event.getStatistics();
+    if (statistics.isNA())
+      return;
+
+    activeTransactions_.put(
+      event.getSpaceInstance().getUid(),
+      Integer.valueOf(statistics.getActiveTransactionCount()));
+    check();
+    }
+}  // end TransactionsCompletedGate
@@ -0,0 +1,216 @@
+/**
+ * UndeploySchedule orders a set of processing units into waves that can
+ * be undeployed safely.  Every processing unit is undeployed before the
+ * processing units it depends on, and the processing units within a wave
+ * have no dependencies on each other, so each wave can be undeployed in
+ * parallel.
+ *
+ * Dependencies are taken from the deployment dependencies of each
+ * processing unit and from properties of the form:
+ *
+ *   dependencies.<pu-name> = <pu-name>,<pu-name>,...
+ *
+ * In addition, processing units that use a space remotely are undeployed
+ * before processing units that embed a space, and mirrors are undeployed
+ * last, unless a declared dependency says otherwise.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import java.util.logging.Logger;
+
+public class UndeploySchedule
+{
+  public static final String DEPENDENCIES_PREFIX = "dependencies.";
+
+  private static final int CLIENT_TIER = 0;
+  private static final int SPACE_TIER = 1;
+  private static final int MIRROR_TIER = 2;
+
+  private static Logger logger_
+    = Logger.getLogger(UndeploySchedule.class.getName());
+
+  private TreeMap<String,ProcessingUnit> pus_
+    = new TreeMap<String,ProcessingUnit>();
+  // the names of the processing units to undeploy after each one
+  private TreeMap<String,TreeSet<String>> before_
+    = new TreeMap<String,TreeSet<String>>();
+  private HashMap<String,Integer> tiers_ = new HashMap<String,Integer>();
+  private List<List<ProcessingUnit>> waves_ = null;
+
+  /**
+   * The full constructor for the UndeploySchedule class.
+   *
+   * @param pus The processing units to undeploy
+   * @param dependencies Declared dependencies, keyed by DEPENDENCIES_PREFIX
+   *                     followed by the dependent processing unit name
+   */
+  public UndeploySchedule(Iterable<ProcessingUnit> pus,
+                          Properties dependencies)
+    {
+    for (ProcessingUnit pu : pus)
+      {
+      pus_.put(pu.getName(),pu);
+      before_.put(pu.getName(),new TreeSet<String>());
+      tiers_.put(pu.getName(),Integer.valueOf(tier(pu)));
+      }
+
+    declareDependencies(dependencies);
+    inferDependencies();
+    waves_ = schedule();
+    }
+
+
+  /**
+   * A constructor for the UndeploySchedule class that uses only
+   * deployment and inferred dependencies.
+   */
+  public UndeploySchedule(Iterable<ProcessingUnit> pus)
+    {
+    this(pus,new Properties());
+    }
+
+
+  /**
+   * Return the waves of processing units, in the order they should be
+   * undeployed.
+   */
+  public List<List<ProcessingUnit>> waves() { return waves_; }
+
+
+  /**
+   * Record that the dependent processing unit must be undeployed before
+   * the dependency.  Dependencies outside the schedule are ignored.
+   */
+  private void declare(String dependent,String dependency)
+    {
+    if (pus_.containsKey(dependency) && !dependent.equals(dependency))
+      before_.get(dependent).add(dependency);
+    else
+      logger_.fine("Ignoring dependency of " + dependent
+                   + " on " + dependency + ".");
+    }
+
+
+  /**
+   * Add the deployment dependencies and declared dependencies of each
+   * processing unit.
+   */
+  private void declareDependencies(Properties dependencies)
+    {
+    for (ProcessingUnit pu : pus_.values())
+      {
+      if (pu.getDependencies() != null)
+        for (String name
+               : pu.getDependencies().getRequiredProcessingUnitsNames())
+          declare(pu.getName(),name);
+
+      String declared
+        = dependencies.getProperty(DEPENDENCIES_PREFIX + pu.getName());
+      if (declared != null)
+        for (String name : declared.split(","))
+          if (name.trim().length() > 0)
+            declare(pu.getName(),name.trim());
+      }
+    }
+
+
+  /**
+   * Return the tier of a processing unit.  Lower tiers are undeployed
+   * first.
+   */
+  private static int tier(ProcessingUnit pu)
+    {
+    if (pu.getType() == ProcessingUnitType.MIRROR)
+      return MIRROR_TIER;
+    else if ((pu.getType() == ProcessingUnitType.STATEFUL)
+             || (pu.getSpaces().length > 0))
+      return SPACE_TIER;
+    else
+      return CLIENT_TIER;
+    }
+
+
+  /**
+   * Add dependencies between tiers, except where they would contradict a
+   * declared dependency.
+   */
+  private void inferDependencies()
+    {
+    for (String first : pus_.keySet())
+      for (String second : pus_.keySet())
+        if ((tiers_.get(first).intValue() < tiers_.get(second).intValue())
+            && !before_.get(second).contains(first))
+          before_.get(first).add(second);
+    }
+
+
+  /**
+   * Group the processing units into waves by repeatedly taking every
+   * processing unit that no remaining processing unit must precede.  If
+   * the dependencies contain a cycle, the remaining processing units in
+   * the lowest tier are undeployed together to break it.
+   */
+  private List<List<ProcessingUnit>> schedule()
+    {
+    HashMap<String,Integer> predecessors = new HashMap<String,Integer>();
+    for (String name : pus_.keySet())
+      predecessors.put(name,Integer.valueOf(0));
+    for (TreeSet<String> successors : before_.values())
+      for (String successor : successors)
+        predecessors.put(successor,
+                         Integer.valueOf(predecessors.get(successor) + 1));
+
+    List<List<ProcessingUnit>> waves = new ArrayList<List<ProcessingUnit>>();
+    TreeSet<String> remaining = new TreeSet<String>(pus_.keySet());
+    while (!remaining.isEmpty())
+      {
+      List<String> ready = new ArrayList<String>();
+      for (String name : remaining)
+        if (predecessors.get(name).intValue() == 0)
+          ready.add(name);
+
+      if (ready.isEmpty())
+        {
+        int lowest = Integer.MAX_VALUE;
+        for (String name : remaining)
+          lowest = Math.min(lowest,tiers_.get(name).intValue());
+        for (String name : remaining)
+          if (tiers_.get(name).intValue() == lowest)
+            ready.add(name);
+
+        logger_.warning("Dependency cycle among " + remaining
+                        + ", undeploying " + ready + " together.");
+        }
+
+      List<ProcessingUnit> wave = new ArrayList<ProcessingUnit>();
+      for (String name : ready)
+        {
+        remaining.remove(name);
+        wave.add(pus_.get(name));
+        for (String successor : before_.get(name))
+          predecessors.put(successor,
+                           Integer.valueOf(predecessors.get(successor) - 1));
+        }
+
+      logger_.info("Undeploy wave " + (waves.size() + 1) + ":  " + ready);
+      waves.add(wave);
+      }
+
+    return waves;
+    }
+}  // end UndeploySchedule
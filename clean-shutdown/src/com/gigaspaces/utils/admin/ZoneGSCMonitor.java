@@ -1,6 +1,9 @@
 /**
  * ZoneGSCMonitor monitors the Admin API for changes to
- * GSCs in the GigaSpaces XAP infrastructure.
+ * GSCs in the GigaSpaces XAP infrastructure.  It waits for a required
+ * number of GSCs in each of any number of zones, using a single
+ * listener, and reports each zone as soon as it is ready.  A zone that
+ * loses GSCs before every zone is ready is no longer ready.
  *
  * @author Patrick May (patrick.may@gigaspaces.com)
  * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
@@ -12,26 +15,33 @@ package com.gigaspaces.utils.admin;
 import org.openspaces.admin.Admin;
 import org.openspaces.admin.AdminEventListener;
 import org.openspaces.admin.gsc.GridServiceContainer;
-import org.openspaces.admin.gsc.events.GridServiceContainerAddedEventListener;
+import org.openspaces.admin.gsc.events.GridServiceContainerLifecycleEventListener;
 import org.openspaces.admin.zone.Zone;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import java.util.concurrent.ConcurrentHashMap;
 
 import java.util.logging.Logger;
 
 public class ZoneGSCMonitor
   extends AbstractGridComponentMonitor
-  implements GridServiceContainerAddedEventListener
+  implements GridServiceContainerLifecycleEventListener
 {
-  private static final long MONITOR_INTERVAL = 2000;  // 2 seconds
-
   private static Logger logger_
     = Logger.getLogger(ZoneGSCMonitor.class.getName());
 
-  private String zoneName_ = null;
-  private int gscCount_ = 0;
-  private ArrayList<GridServiceContainer> gscs_
-    = new ArrayList<GridServiceContainer>();
+  private Map<String,Integer> requirements_ = null;
+  // the GSCs found in each required zone, keyed by GSC uid
+  private ConcurrentHashMap<String,ConcurrentHashMap<String,Boolean>>
+    gscsByZone_
+    = new ConcurrentHashMap<String,ConcurrentHashMap<String,Boolean>>();
+  private Set<String> readyZones_
+    = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
 
   /**
    * Inherited from AbstractGridComponentMonitor.
@@ -40,12 +50,95 @@ public class ZoneGSCMonitor
 
   /**
    * The full constructor for the ZoneGSCMonitor class.
+   *
+   * @param admin The Admin instance to listen to
+   * @param requirements The number of GSCs required, keyed by zone name
    */
-  public ZoneGSCMonitor(Admin admin,String zoneName,int gscCount)
+  public ZoneGSCMonitor(Admin admin,Map<String,Integer> requirements)
     {
     super(admin);
-    zoneName_ = zoneName;
-    gscCount_ = gscCount;
+    requirements_
+      = Collections.unmodifiableMap(
+        new LinkedHashMap<String,Integer>(requirements));
+    for (String zoneName : requirements_.keySet())
+      gscsByZone_.put(zoneName,new ConcurrentHashMap<String,Boolean>());
+
+    // zones that require no GSCs are ready before any are found
+    for (String zoneName : requirements_.keySet())
+      checkZone(zoneName);
+
+    if (requirements_.isEmpty())
+      done();
+    }
+
+
+  /**
+   * A constructor for the ZoneGSCMonitor class that waits for a single
+   * zone.
+   */
+  public ZoneGSCMonitor(Admin admin,String zoneName,int gscCount)
+    {
+    this(admin,Collections.singletonMap(zoneName,Integer.valueOf(gscCount)));
+    }
+
+
+  /**
+   * Return true if every required zone has had its GSCs.
+   */
+  public boolean isReady()
+    {
+    return readyZones_.size() == requirements_.size();
+    }
+
+
+  /**
+   * Return true if the named zone has had its required GSCs.
+   */
+  public boolean isReady(String zoneName)
+    {
+    return readyZones_.contains(zoneName);
+    }
+
+
+  /**
+   * Return the number of GSCs currently found in each required zone.
+   */
+  public Map<String,Integer> gscCounts()
+    {
+    Map<String,Integer> counts = new HashMap<String,Integer>();
+    for (Map.Entry<String,ConcurrentHashMap<String,Boolean>> entry
+           : gscsByZone_.entrySet())
+      counts.put(entry.getKey(),Integer.valueOf(entry.getValue().size()));
+
+    return counts;
+    }
+
+
+  /**
+   * Report a zone when it has its required GSCs, and finish once every
+   * zone has.  Until then, a zone that drops below its requirement is
+   * reported as no longer ready.
+   */
+  private synchronized void checkZone(String zoneName)
+    {
+    if (isDone())
+      return;
+
+    int found = gscsByZone_.get(zoneName).size();
+    if (found >= requirements_.get(zoneName).intValue())
+      {
+      if (readyZones_.add(zoneName))
+        {
+        logger_.info("Zone " + zoneName + " is ready with " + found
+                     + " GSCs (" + readyZones_.size() + " of "
+                     + requirements_.size() + " zones ready).");
+        if (readyZones_.size() == requirements_.size())
+          done();
+        }
+      }
+    else if (readyZones_.remove(zoneName))
+      logger_.info("Zone " + zoneName + " is no longer ready with "
+                   + found + " GSCs.");
     }
 
 
@@ -59,14 +152,29 @@ public class ZoneGSCMonitor
     for (Zone zone : gsc.getZones().values())
       {
       logger_.info("  " + zone.getName());
-      if (zoneName_.equals(zone.getName()))
+      ConcurrentHashMap<String,Boolean> gscs = gscsByZone_.get(zone.getName());
+      if (gscs != null)
         {
-        synchronized(gscs_) { gscs_.add(gsc); }
+        gscs.put(gsc.getUid(),Boolean.TRUE);
         logger_.info("GridServiceContainer added.");
+        checkZone(zone.getName());
         }
       }
+    }
 
-    if (gscs_.size() >= gscCount_)
-      done();
+
+  /**
+   * Method called when a GSC is removed.  This method is inherited from
+   * the GridServiceContainerRemovedEventListener interface.
+   */
+  public void gridServiceContainerRemoved(GridServiceContainer gsc)
+    {
+    for (Map.Entry<String,ConcurrentHashMap<String,Boolean>> entry
+           : gscsByZone_.entrySet())
+      if (entry.getValue().remove(gsc.getUid()) != null)
+        {
+        logger_.info("GridServiceContainer removed.");
+        checkZone(entry.getKey());
+        }
     }
 }  // end ZoneGSCMonitor
@@ -1,6 +1,7 @@
 /**
  * ZoneMonitor monitors the Admin API for changes to the GigaSpaces XAP
- * infrastructure related to a particular zone.
+ * infrastructure related to one or more zones, waiting until each zone
+ * has a required number of GSCs.  All zones share one Admin instance.
  *
  * @author Patrick May (patrick.may@gigaspaces.com)
  * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
@@ -10,9 +11,10 @@
 package com.gigaspaces.utils.admin;
 
 import org.openspaces.admin.Admin;
-import org.openspaces.admin.AdminFactory;
 
-import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import java.util.logging.Logger;
 
@@ -20,53 +22,100 @@ public class ZoneMonitor implements Runnable
 {
   private static Logger logger_ = Logger.getLogger(ZoneMonitor.class.getName());
 
-  private Admin admin_ = null;
+  private AdminSessions.Session session_ = null;
   private ZoneGSCMonitor zoneGSCMonitor_ = null;
 
-  private Admin admin()
+  /**
+   * The full constructor for the ZoneMonitor class.
+   *
+   * @param requirements The number of GSCs required, keyed by zone name
+   * @param admin The Admin instance to monitor, owned by the caller
+   */
+  public ZoneMonitor(Map<String,Integer> requirements,Admin admin)
     {
-    if (admin_ == null)
-      {
-      String lookupGroups = System.getenv("LOOKUPGROUPS");
-      String lookupLocators = System.getenv("LOOKUPLOCATORS");
+    zoneGSCMonitor_ = new ZoneGSCMonitor(admin,requirements);
+    }
 
-      AdminFactory factory = new AdminFactory();
-      if (lookupGroups != null)
-        factory.addGroups(lookupGroups);
-      if (lookupLocators != null)
-        factory.addLocators(lookupLocators);
 
-      admin_ = factory.createAdmin();
+  /**
+   * A constructor for the ZoneMonitor class that shares an Admin through
+   * AdminSessions.
+   *
+   * @param requirements The number of GSCs required, keyed by zone name
+   */
+  public ZoneMonitor(Map<String,Integer> requirements)
+    {
+    session_ = AdminSessions.acquire();
+    zoneGSCMonitor_ = new ZoneGSCMonitor(session_.admin(),requirements);
+    }
+
+
+  /**
+   * A constructor for the ZoneMonitor class that waits for a single
+   * zone.
+   */
+  public ZoneMonitor(String zoneName,int gscCount)
+    {
+    this(Collections.singletonMap(zoneName,Integer.valueOf(gscCount)));
+    }
+
+
+  /**
+   * Parse zone requirements of the form zone:count.
+   */
+  static Map<String,Integer> requirements(String args[])
+    {
+    LinkedHashMap<String,Integer> requirements
+      = new LinkedHashMap<String,Integer>();
+    for (String arg : args)
+      {
+      int separator = arg.lastIndexOf(':');
+      if (separator <= 0)
+        throw new IllegalArgumentException("Expected zone:count, not "
+                                           + arg);
+      requirements.put(arg.substring(0,separator),
+                       Integer.valueOf(arg.substring(separator + 1)));
       }
 
-    return admin_;
+    return requirements;
     }
 
 
+  public boolean isReady() { return zoneGSCMonitor_.isReady(); }
+
+
   /**
-   * The full constructor for the ZoneMonitor class.
+   * Return the number of GSCs currently found in each required zone.
    */
-  public ZoneMonitor(String zoneName,int gscCount)
+  public Map<String,Integer> gscCounts()
     {
-    zoneGSCMonitor_ = new ZoneGSCMonitor(admin(),zoneName,gscCount);
+    return zoneGSCMonitor_.gscCounts();
     }
 
 
   /**
-   * Run until done.
+   * Stop monitoring, whether or not the zones are ready.
    */
-  public void run()
+  public void stop()
     {
-    Thread zoneGSCThread = new Thread(zoneGSCMonitor_);
-    zoneGSCThread.start();
+    zoneGSCMonitor_.done();
+    }
+
 
-    while (!zoneGSCMonitor_.isDone())
+  /**
+   * Run until done.  The GSC monitor runs in this thread.
+   */
+  public void run()
+    {
+    try
       {
-      try { zoneGSCThread.join(); }
-      catch(InterruptedException ignore) { }
+      zoneGSCMonitor_.run();
+      }
+    finally
+      {
+      if (session_ != null)
+        session_.release();
       }
-
-    admin_.close();
     }
 
   
@@ -77,7 +126,7 @@ public class ZoneMonitor implements Runnable
    */
   public static void main(String args[])
     {
-    if (args.length == 2)
+    if ((args.length == 2) && (args[0].indexOf(':') < 0))
       {
       ZoneMonitor monitor = new ZoneMonitor(args[0],Integer.parseInt(args[1]));
       monitor.run();
@@ -86,10 +135,16 @@ public class ZoneMonitor implements Runnable
                    + " GSCs are available in zone "
                    + args[0]);
       }
+    else if (args.length > 0)
+      {
+      ZoneMonitor monitor = new ZoneMonitor(requirements(args));
+      monitor.run();
+      logger_.info("All " + args.length + " zones are available.");
+      }
     else
       logger_.info("Usage:  java "
                    + ZoneMonitor.class.getName()
-                   + " <zone-name> <gsc-count>");
+                   + " <zone-name> <gsc-count> | <zone-name>:<gsc-count> ...");
 
     System.exit(0);
     }
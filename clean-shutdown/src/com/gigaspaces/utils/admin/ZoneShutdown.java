@@ -1,6 +1,12 @@
 /**
  * ZoneShutdown shuts down all GigaSpaces infrastructure components and
- * processing units associated with a zone.
+ * processing units associated with a zone.  Processing units are
+ * undeployed in dependency order, as described by UndeploySchedule;
+ * declared dependencies are read from system properties.  The time spent
+ * in each phase is reported as JSON at the end of the run, to the file
+ * named by the metricsFile system property if it is set.  Discovery of
+ * the zone waits no longer than the undeploy timeout, and any part of
+ * the zone left running is reported by failure().
  *
  * @author Patrick May (patrick.may@gigaspaces.com)
  * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
@@ -10,7 +16,6 @@
 package com.gigaspaces.utils.admin;
 
 import org.openspaces.admin.Admin;
-import org.openspaces.admin.AdminFactory;
 import org.openspaces.admin.gsa.GridServiceAgent;
 import org.openspaces.admin.gsc.GridServiceContainer;
 import org.openspaces.admin.gsc.events.GridServiceContainerAddedEventListener;
@@ -19,9 +24,14 @@ import org.openspaces.admin.pu.ProcessingUnitInstance;
 import org.openspaces.admin.pu.events.ProcessingUnitAddedEventListener;
 import org.openspaces.admin.zone.Zone;
 
-import java.util.Collections;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import java.util.concurrent.TimeUnit;
 
 import java.util.logging.Logger;
 
@@ -30,136 +40,260 @@ public class ZoneShutdown
              GridServiceContainerAddedEventListener,
              ProcessingUnitAddedEventListener
 {
-  private static final long SHUTDOWN_ATTEMPT_INTERVAL = 2000;  // 2 seconds
   private static final long UPDATE_SETTLE_INTERVAL = 3000;  // 3 seconds
   
   private static Logger logger_
     = Logger.getLogger(ZoneShutdown.class.getName());
 
   private String zoneName_ = null;
-  private boolean done_ = false;
+  private Lifecycle lifecycle_ = new Lifecycle();
+  private AdminSessions.Session session_ = null;
   private Admin admin_ = null;
-  private long lastUpdate_ = 0;
+  private QuietPeriodGate settled_ = null;
   private HashSet<GridServiceAgent> gsas_ = new HashSet<GridServiceAgent>();
   private ArrayList<GridServiceContainer> gscs_
     = new ArrayList<GridServiceContainer>();
   private ArrayList<ProcessingUnit> pus_ = new ArrayList<ProcessingUnit>();
+  private ProcessingUnitUndeployer undeployer_ = null;
+  private long undeployTimeout_ = ProcessingUnitUndeployer.DEFAULT_TIMEOUT;
+  private PhaseMetrics metrics_ = null;
+  private volatile String failure_ = null;
 
   /**
    * The full constructor for the ZoneShutdown class.
+   *
+   * @param zoneName The zone to shut down
+   * @param parallelism The maximum number of concurrent undeployments
+   * @param undeployTimeout The time, in milliseconds, to wait for the
+   *                        zone to be discovered and for each processing
+   *                        unit to undeploy
+   * @param admin The Admin instance to use, owned by the caller
    */
-  public ZoneShutdown(String zoneName)
+  public ZoneShutdown(String zoneName,
+                      int parallelism,
+                      long undeployTimeout,
+                      Admin admin)
     {
     zoneName_ = zoneName;
+    undeployer_ = new ProcessingUnitUndeployer(parallelism,undeployTimeout);
+    undeployTimeout_ = undeployTimeout;
+    metrics_ = new PhaseMetrics("zone-shutdown " + zoneName);
+    settled_ = new QuietPeriodGate("Zone " + zoneName + " discovery",
+                                   UPDATE_SETTLE_INTERVAL)
+      {
+      protected boolean isSatisfied() { return readyToShutdown(); }
+      };
+    admin_ = admin;
+    }
 
-    String lookupGroups = System.getenv("LOOKUPGROUPS");
-    String lookupLocators = System.getenv("LOOKUPLOCATORS");
 
-    AdminFactory factory = new AdminFactory();
-    if (lookupGroups != null)
-      factory.addGroups(lookupGroups);
-    if (lookupLocators != null)
-      factory.addLocators(lookupLocators);
+  /**
+   * A constructor for the ZoneShutdown class that shares an Admin
+   * through AdminSessions.
+   */
+  public ZoneShutdown(String zoneName,int parallelism,long undeployTimeout)
+    {
+    this(zoneName,parallelism,undeployTimeout,null);
+    session_ = AdminSessions.acquire();
+    admin_ = session_.admin();
+    }
 
-    admin_ = factory.createAdmin();
+
+  /**
+   * A constructor for the ZoneShutdown class that uses the default
+   * parallelism and undeploy timeout.
+   */
+  public ZoneShutdown(String zoneName)
+    {
+    this(zoneName,
+         ProcessingUnitUndeployer.DEFAULT_PARALLELISM,
+         ProcessingUnitUndeployer.DEFAULT_TIMEOUT);
     }
 
 
-  public boolean isDone() { return done_; }
-  public void done() { done_ = true; }
+  public boolean isDone() { return lifecycle_.isStopped(); }
+  public void done() { lifecycle_.stop(); }
 
 
   /**
-   * Update the last update timestamp.
+   * Return why the zone was not completely shut down, or null if it was.
+   * This is only meaningful once run() has returned.
+   */
+  public String failure() { return failure_; }
+
+
+  /**
+   * Record why the zone was not completely shut down.
+   */
+  private void fail(String reason)
+    {
+    logger_.warning("ZoneShutdown:  " + reason);
+    failure_ = reason;
+    }
+
+
+  /**
+   * Note that the zone has changed, restarting the settle interval.
    */
   private void updated()
     {
-    lastUpdate_ = System.currentTimeMillis();
+    settled_.changed();
     }
 
 
   /**
-   * Determine if there is enough information to shutdown the zone.
+   * Determine if there is enough information to shutdown the zone.  This
+   * is only checked once no updates have arrived for the settle interval.
    */
   private boolean readyToShutdown()
     {
-    return ((lastUpdate_ != 0)
-            && ((System.currentTimeMillis() - lastUpdate_)
-                > UPDATE_SETTLE_INTERVAL)
-            && (gscs_.size() > 0)
-            && (pus_.size() > 0));
+    synchronized(gscs_)
+      {
+      synchronized(pus_)
+        {
+        return ((gscs_.size() > 0) && (pus_.size() > 0));
+        }
+      }
     }
 
 
   /**
-   * Get the set of unique processing units associated with the GSCs in
-   * the zone.
+   * Get the unique processing units hosted by each GSC in the zone.
    */
-  private HashSet<ProcessingUnit> uniqueProcessingUnits()
+  private HashMap<GridServiceContainer,HashSet<ProcessingUnit>>
+    processingUnitsByGSC()
     {
+    HashMap<GridServiceContainer,HashSet<ProcessingUnit>> pusByGSC
+      = new HashMap<GridServiceContainer,HashSet<ProcessingUnit>>();
     HashSet<ProcessingUnit> pus = new HashSet<ProcessingUnit>();
     int totalInstances = 0;
-    
+
     synchronized(gscs_)
       {
       for (GridServiceContainer gsc : gscs_)
-        for (ProcessingUnitInstance instance : gsc.getProcessingUnitInstances())
+        {
+        HashSet<ProcessingUnit> gscPUs = new HashSet<ProcessingUnit>();
+        for (ProcessingUnitInstance instance
+               : gsc.getProcessingUnitInstances())
           {
-          pus.add(instance.getProcessingUnit());
+          gscPUs.add(instance.getProcessingUnit());
           ++totalInstances;
           }
+
+        pusByGSC.put(gsc,gscPUs);
+        pus.addAll(gscPUs);
+        }
       }
 
-    logger_.info("ZoneShutdown.uniqueProcessingUnits() found "
+    logger_.info("ZoneShutdown.processingUnitsByGSC() found "
                  + pus.size()
                  + " unique PUs from "
                  + totalInstances
                  + " instances.");
 
-    return pus;
+    return pusByGSC;
     }
-  
+
 
   /**
-   * Undeploy all processing units running in GSCs in the specified zone.
+   * Kill a GSC if it has no remaining processing units.
+   *
+   * @return true if the GSC was killed
    */
-  private void undeployProcessingUnits()
+  private boolean killGSC(GridServiceContainer gsc)
     {
-    logger_.info("ZoneShutdown.undeployProcessingUnits() called.");
-
-    for (ProcessingUnit pu : uniqueProcessingUnits())
+    gsas_.add(gsc.getGridServiceAgent());
+    if (gsc.getProcessingUnitInstances().length == 0)
       {
-      logger_.info("Undeploying ProcessingUnit " + pu.getName());
-      pu.undeployAndWait();
-      logger_.info("ProcessingUnit " + pu.getName() + " undeployed.");
+      logger_.info("ZoneShutdown.killGSC(): killing GSC.");
+      long start = metrics_.start();
+      gsc.kill();
+      metrics_.stop("gsc-kill",start);
+      logger_.info("ZoneShutdown.killGSC(): killed GSC.");
+      return true;
       }
 
-    logger_.info("ZoneShutdown.undeployProcessingUnits() returning.");
+    logger_.warning("ZoneShutdown.killGSC(): GSC still has PUs.");
+    return false;
     }
 
 
   /**
-   * Kill any GSCs that have no remaining processing units.
+   * Undeploy all processing units running in GSCs in the specified zone,
+   * in parallel waves, killing each GSC as soon as all of the processing
+   * units it hosts have been undeployed.
+   *
+   * @return A description of what was left running, or null if nothing
+   *         was
    */
-  private void killGSCs()
+  private String undeployAndKillGSCs()
     {
-    logger_.info("ZoneShutdown.killGSCs() called.");
-    synchronized(gscs_)
+    logger_.info("ZoneShutdown.undeployAndKillGSCs() called.");
+    long start = metrics_.start();
+
+    final HashMap<GridServiceContainer,HashSet<ProcessingUnit>> remaining
+      = processingUnitsByGSC();
+    HashSet<ProcessingUnit> pus = new HashSet<ProcessingUnit>();
+    for (HashSet<ProcessingUnit> gscPUs : remaining.values())
+      pus.addAll(gscPUs);
+
+    // kill any GSCs that have nothing deployed right away
+    for (Iterator<Map.Entry<GridServiceContainer,HashSet<ProcessingUnit>>>
+           entries = remaining.entrySet().iterator();
+         entries.hasNext();)
       {
-      for (GridServiceContainer gsc : gscs_)
+      Map.Entry<GridServiceContainer,HashSet<ProcessingUnit>> entry
+        = entries.next();
+      if (entry.getValue().isEmpty())
         {
-        gsas_.add(gsc.getGridServiceAgent());
-        if (gsc.getProcessingUnitInstances().length == 0)
-          {
-          logger_.info("ZoneShutdown.killGSCs(): killing GSC.");
-          gsc.kill();
-          logger_.info("ZoneShutdown.killGSCs(): killed GSC.");
-          }
-        else
-          logger_.warning("ZoneShutdown.killGSCs(): GSC still has PUs.");
+        killGSC(entry.getKey());
+        entries.remove();
         }
       }
-    logger_.info("ZoneShutdown.killGSCs() returning.");
+
+    UndeploySchedule schedule
+      = new UndeploySchedule(pus,System.getProperties());
+    List<ProcessingUnitUndeployer.Result> results
+      = undeployer_.undeploy(schedule,new ProcessingUnitUndeployer.Listener()
+        {
+        public void undeployed(ProcessingUnitUndeployer.Result result)
+          {
+          metrics_.record("pu-undeploy",result.elapsed());
+          if (!result.isUndeployed())
+            return;
+
+          for (Iterator<Map.Entry<GridServiceContainer,
+                                  HashSet<ProcessingUnit>>> entries
+                 = remaining.entrySet().iterator();
+               entries.hasNext();)
+            {
+            Map.Entry<GridServiceContainer,HashSet<ProcessingUnit>> entry
+              = entries.next();
+            entry.getValue().remove(result.processingUnit());
+            if (entry.getValue().isEmpty())
+              {
+              killGSC(entry.getKey());
+              entries.remove();
+              }
+            }
+          }
+        });
+
+    // GSCs hosting PUs that failed to undeploy may have emptied since
+    int running = 0;
+    for (GridServiceContainer gsc : remaining.keySet())
+      if (!killGSC(gsc))
+        ++running;
+
+    metrics_.stop("undeploy",start);
+    logger_.info("ZoneShutdown.undeployAndKillGSCs() returning.");
+
+    List<String> deployed = ProcessingUnitUndeployer.stillDeployed(results);
+    if (deployed.isEmpty() && (running == 0))
+      return null;
+
+    return "Processing units still deployed:  " + deployed + ", "
+      + running + " GSCs still running";
     }
 
 
@@ -174,7 +308,9 @@ public class ZoneShutdown
       for (GridServiceAgent gsa : gsas_)
         {
         logger_.info("ZoneShutdown.shutdownGSAs(): shutting down GSA.");
+        long start = metrics_.start();
         gsa.shutdown();
+        metrics_.stop("gsa-shutdown",start);
         logger_.info("ZoneShutdown.shutdownGSAs(): GSA shut down.");
         }
       }
@@ -183,21 +319,17 @@ public class ZoneShutdown
 
 
   /**
-   * If ready, shutdown all components associated with the zone.
+   * Shutdown all components associated with the zone.
    */
-  private boolean attemptShutdown()
+  private void shutdown()
     {
-    logger_.info("ZoneShutdown.attemptShutdown() called.");
-    if (readyToShutdown())
-      {
-      undeployProcessingUnits();
-      killGSCs();
-      // shutdownGSAs();
-      done();
-      }
-
-    logger_.info("ZoneShutdown.attemptShutdown() returning.");
-    return isDone();
+    logger_.info("ZoneShutdown.shutdown() called.");
+    String failure = undeployAndKillGSCs();
+    if (failure != null)
+      fail(failure);
+    // shutdownGSAs();
+    done();
+    logger_.info("ZoneShutdown.shutdown() returning.");
     }
 
 
@@ -236,28 +368,48 @@ public class ZoneShutdown
 
 
   /**
-   * Run until done.
+   * Wait until the zone's components have been discovered, for at most
+   * the undeploy timeout, then shut them down.
    */
   public void run()
     {
+    failure_ = null;
     admin_.addEventListener(this);
 
-    while (!isDone())
+    try
       {
-      try
+      long start = metrics_.start();
+      boolean settled
+        = settled_.await(undeployTimeout_,TimeUnit.MILLISECONDS);
+      metrics_.stop("discovery",start);
+      if (settled)
+        shutdown();
+      else
         {
-        Thread.sleep(SHUTDOWN_ATTEMPT_INTERVAL);
-        if (attemptShutdown())
-          {
-          logger_.info("ZoneShutdown.run():  removing event listener.");
-          admin_.removeEventListener(this);
-          logger_.info("ZoneShutdown.run():  closing admin.");
-          admin_.close();
-          logger_.info("ZoneShutdown.run():  done.");
-          break;
-          }
+        int gscs = 0;
+        int pus = 0;
+        synchronized(gscs_) { gscs = gscs_.size(); }
+        synchronized(pus_) { pus = pus_.size(); }
+        fail("Zone " + zoneName_ + " not discovered after "
+             + undeployTimeout_ + " ms, found " + gscs + " GSCs and "
+             + pus + " processing units, not shut down.");
+        }
+      }
+    catch(InterruptedException e)
+      {
+      fail("Interrupted, not shut down.");
+      }
+    finally
+      {
+      logger_.info("ZoneShutdown.run():  removing event listener.");
+      admin_.removeEventListener(this);
+      if (session_ != null)
+        {
+        logger_.info("ZoneShutdown.run():  releasing admin.");
+        session_.release();
         }
-      catch(InterruptedException e) { }
+      metrics_.report(System.getProperty("metricsFile"));
+      logger_.info("ZoneShutdown.run():  done.");
       }
 
     logger_.info("ZoneShutdown.run() returning.");
@@ -271,14 +423,24 @@ public class ZoneShutdown
    */
   public static void main(String args[])
     {
-    if (args.length == 1)
+    if ((args.length >= 1) && (args.length <= 3))
       {
-      ZoneShutdown shutdown = new ZoneShutdown(args[0]);
+      int parallelism = (args.length > 1)
+        ? Integer.parseInt(args[1])
+        : ProcessingUnitUndeployer.DEFAULT_PARALLELISM;
+      long undeployTimeout = (args.length > 2)
+        ? TimeUnit.SECONDS.toMillis(Long.parseLong(args[2]))
+        : ProcessingUnitUndeployer.DEFAULT_TIMEOUT;
+
+      ZoneShutdown shutdown
+        = new ZoneShutdown(args[0],parallelism,undeployTimeout);
       shutdown.run();
+      if (shutdown.failure() != null)
+        System.exit(1);
       }
     else
       logger_.info("Usage:  java "
                    + ZoneShutdown.class.getName()
-                   + " <zone-name>");
+                   + " <zone-name> [<parallelism> [<undeploy-timeout>]]");
     }
 }  // end ZoneShutdown
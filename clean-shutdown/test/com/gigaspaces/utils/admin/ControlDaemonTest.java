@@ -0,0 +1,346 @@
+/**
+ * ControlDaemonTest exercises the ControlDaemon endpoints on an ephemeral
+ * port against a stubbed Admin.  The stub answers every call with an
+ * empty value, or with another stub for interface types, and records the
+ * calls made on the statistics monitor.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.openspaces.admin.Admin;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import java.util.concurrent.TimeUnit;
+
+public class ControlDaemonTest
+{
+  private static final int AGENT_COUNT = 3;
+
+  private List<String> monitorCalls_
+    = Collections.synchronizedList(new ArrayList<String>());
+  private volatile boolean monitoring_ = false;
+  private ControlDaemon daemon_ = null;
+
+  /**
+   * Response holds the status and body of an HTTP response.
+   */
+  private static class Response
+  {
+    private int status_ = 0;
+    private String body_ = null;
+
+    public Response(int status,String body)
+      {
+      status_ = status;
+      body_ = body;
+      }
+  }  // end Response
+
+
+  /**
+   * Stub answers calls on any Admin API interface.
+   */
+  private class Stub implements InvocationHandler
+  {
+    private String name_ = null;
+
+    public Stub(String name)
+      {
+      name_ = name;
+      }
+
+
+    /**
+     * Answer a call.  This method is inherited from InvocationHandler.
+     */
+    public Object invoke(Object proxy,Method method,Object[] args)
+      {
+      String name = method.getName();
+      Class<?> type = method.getReturnType();
+
+      if (name.equals("equals"))
+        return Boolean.valueOf(proxy == args[0]);
+      if (name.equals("hashCode"))
+        return Integer.valueOf(System.identityHashCode(proxy));
+      if (name.equals("toString"))
+        return name_;
+
+      if (name.endsWith("StatisticsMonitor")
+          || name.equals("setStatisticsInterval"))
+        {
+        monitorCalls_.add(name);
+        if (name.startsWith("start"))
+          monitoring_ = true;
+        else if (name.startsWith("stop"))
+          monitoring_ = false;
+        }
+      if (name.equals("isMonitoring"))
+        return Boolean.valueOf(monitoring_);
+      if (name.equals("getSize") && name_.endsWith("getGridServiceAgents"))
+        return Integer.valueOf(AGENT_COUNT);
+
+      if (type == boolean.class)
+        return Boolean.FALSE;
+      if (type == int.class)
+        return Integer.valueOf(0);
+      if (type == long.class)
+        return Long.valueOf(0);
+      if (type == double.class)
+        return Double.valueOf(0.0);
+      if (type.isArray())
+        return Array.newInstance(type.getComponentType(),0);
+      if (type.isInterface())
+        return stub(type,name_ + "." + name);
+
+      return null;
+      }
+  }  // end Stub
+
+
+  private Object stub(Class<?> type,String name)
+    {
+    return Proxy.newProxyInstance(type.getClassLoader(),
+                                  new Class<?>[] { type },
+                                  new Stub(name));
+    }
+
+
+  @Before
+  public void startDaemon() throws IOException
+    {
+    daemon_ = new ControlDaemon(
+      new InetSocketAddress(InetAddress.getByName("127.0.0.1"),0),
+      (Admin)stub(Admin.class,"admin"));
+    daemon_.start();
+    }
+
+
+  @After
+  public void stopDaemon()
+    {
+    daemon_.stop();
+    }
+
+
+  /**
+   * Send a request to the daemon.
+   */
+  private Response request(String method,String path) throws IOException
+    {
+    URL url = new URL("http://127.0.0.1:" + daemon_.port() + path);
+    HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+    connection.setRequestMethod(method);
+    connection.setReadTimeout(30000);
+    try
+      {
+      int status = connection.getResponseCode();
+      InputStream in = (status >= 400)
+        ? connection.getErrorStream()
+        : connection.getInputStream();
+
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      if (in != null)
+        {
+        byte[] buffer = new byte[4096];
+        for (int count = in.read(buffer);count >= 0;count = in.read(buffer))
+          body.write(buffer,0,count);
+        in.close();
+        }
+
+      return new Response(status,body.toString("UTF-8"));
+      }
+    finally
+      {
+      connection.disconnect();
+      }
+    }
+
+
+  @Test
+  public void statusReportsTheGrid() throws IOException
+    {
+    Response response = request("GET","/status");
+    assertEquals(200,response.status_);
+    assertTrue(response.body_,
+               response.body_.contains("\"gridServiceAgents\":"
+                                       + AGENT_COUNT));
+    assertTrue(response.body_,response.body_.contains("\"feeds\":0"));
+    }
+
+
+  @Test
+  public void jobsStartsEmpty() throws IOException
+    {
+    Response response = request("GET","/jobs");
+    assertEquals(200,response.status_);
+    assertEquals("[]",response.body_.trim());
+    }
+
+
+  @Test
+  public void unknownJobsAreRejected() throws IOException
+    {
+    assertEquals(400,request("GET","/jobs/abc").status_);
+    assertEquals(404,request("GET","/jobs/42").status_);
+    }
+
+
+  @Test
+  public void wrongMethodsAreRejected() throws IOException
+    {
+    assertEquals(405,request("POST","/status").status_);
+    assertEquals(405,request("GET","/grid-shutdown").status_);
+    }
+
+
+  @Test
+  public void invalidOperationsAreRejected() throws IOException
+    {
+    Response response = request("POST","/grid-shutdown");
+    assertEquals(400,response.status_);
+    assertTrue(response.body_,response.body_.contains("confirm=Y"));
+
+    assertEquals(400,request("POST","/zone-monitor").status_);
+    assertEquals(400,request("POST","/zone-shutdown").status_);
+    assertEquals(400,request("GET","/feed?interval=0").status_);
+    assertEquals(400,request("GET","/feed?interval=x").status_);
+    assertEquals("[]",request("GET","/jobs").body_.trim());
+    }
+
+
+  @Test
+  public void jobsAreRecorded() throws Exception
+    {
+    Response response
+      = request("POST","/zone-monitor?zone=z:1&timeout=1&wait=10");
+    assertEquals(200,response.status_);
+    assertTrue(response.body_,response.body_.contains("\"FAILED\""));
+    assertTrue(request("GET","/jobs/1").body_.contains("\"zone-monitor\""));
+    }
+
+
+  @Test
+  public void undiscoveredZoneFailsTheShutdown() throws IOException
+    {
+    Response response
+      = request("POST","/zone-shutdown?zone=empty&timeout=1&wait=30");
+    assertEquals(200,response.status_);
+    assertTrue(response.body_,response.body_.contains("\"FAILED\""));
+    assertTrue(response.body_,response.body_.contains("not discovered"));
+    }
+
+
+  @Test
+  public void abandonedGridShutdownFails() throws IOException
+    {
+    File properties = File.createTempFile("shutdown",".properties");
+    properties.deleteOnExit();
+    FileWriter out = new FileWriter(properties);
+    out.write("lookupgroups = test\n"
+              + "numberOfGSAgents = " + (AGENT_COUNT + 1) + "\n"
+              + "transactionTimeout = 100\n"
+              + "agentTimeout = 100\n");
+    out.close();
+
+    Response response
+      = request("POST","/grid-shutdown?confirm=Y&wait=30&properties="
+                + properties.getAbsolutePath());
+    assertEquals(200,response.status_);
+    assertTrue(response.body_,response.body_.contains("\"FAILED\""));
+    assertTrue(response.body_,
+               response.body_.contains("Found only " + AGENT_COUNT));
+    }
+
+
+  /**
+   * Count the live threads with the passed name.
+   */
+  private static int threads(String name)
+    {
+    int count = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet())
+      if (thread.isAlive() && thread.getName().equals(name))
+        ++count;
+
+    return count;
+    }
+
+
+  @Test
+  public void feedsShareTheStatisticsMonitor() throws Exception
+    {
+    final Response[] first = new Response[1];
+    Thread feed = new Thread()
+      {
+      public void run()
+        {
+        try { first[0] = request("GET","/feed?interval=5&duration=2"); }
+        catch (IOException e) { first[0] = new Response(0,e.toString()); }
+        }
+      };
+    feed.start();
+
+    int queues = threads("space-statistics-logger");
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!request("GET","/status").body_.contains("\"feeds\":1")
+           || (threads("space-statistics-logger") == queues))
+      {
+      assertTrue("Feed did not start",
+                 System.currentTimeMillis() < deadline);
+      Thread.sleep(50);
+      }
+
+    queues = threads("space-statistics-logger");
+    Response conflict = request("GET","/feed?interval=7&duration=1");
+    assertEquals(409,conflict.status_);
+    assertEquals(queues,threads("space-statistics-logger"));
+
+    feed.join(TimeUnit.SECONDS.toMillis(10));
+    assertEquals(200,first[0].status_);
+    assertTrue(request("GET","/status").body_.contains("\"feeds\":0"));
+
+    List<String> expected = new ArrayList<String>();
+    expected.add("setStatisticsInterval");
+    expected.add("startStatisticsMonitor");
+    expected.add("stopStatisticsMonitor");
+    assertEquals(expected,monitorCalls_);
+    }
+
+
+  @Test
+  public void stopEndsTheDaemon() throws IOException
+    {
+    assertEquals(202,request("POST","/stop").status_);
+    daemon_.awaitStop();
+    }
+}  // end ControlDaemonTest
@@ -0,0 +1,83 @@
+/**
+ * LatencyHistogramTest checks the statistics of a LatencyHistogram
+ * against the exact statistics of the recorded values.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class LatencyHistogramTest
+{
+  @Test
+  public void emptyHistogramsReportZero()
+    {
+    LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(0,histogram.count());
+    assertEquals(0,histogram.min());
+    assertEquals(0,histogram.max());
+    assertEquals(0.0,histogram.mean(),0.0);
+    assertEquals(0,histogram.percentile(99.0));
+    }
+
+
+  @Test
+  public void smallValuesAreExact()
+    {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long value = 100;value > 0;value--)
+      histogram.record(value);
+    histogram.record(-5);  // recorded as zero
+
+    assertEquals(101,histogram.count());
+    assertEquals(0,histogram.min());
+    assertEquals(100,histogram.max());
+    assertEquals(5050,histogram.total());
+    assertEquals(50,histogram.percentile(50.0));
+    assertEquals(90,histogram.percentile(90.0));
+    assertEquals(100,histogram.percentile(100.0));
+    }
+
+
+  @Test
+  public void percentilesAreWithinTwoPercent()
+    {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Random random = new Random(42);
+    long[] values = new long[10000];
+    long total = 0;
+    for (int i = 0;i < values.length;i++)
+      {
+      // latencies from microseconds to minutes, in nanoseconds
+      values[i] = (long)Math.pow(10.0,3.0 + 8.0 * random.nextDouble());
+      total += values[i];
+      histogram.record(values[i]);
+      }
+    Arrays.sort(values);
+
+    assertEquals(values[0],histogram.min());
+    assertEquals(values[values.length - 1],histogram.max());
+    assertEquals((double)total / values.length,histogram.mean(),1e-6);
+
+    for (double percent : new double[] { 1.0, 50.0, 90.0, 99.0, 99.9 })
+      {
+      int rank = (int)Math.ceil(values.length * percent / 100.0);
+      long exact = values[rank - 1];
+      long approximate = histogram.percentile(percent);
+      // the highest value of the bucket is reported, never less
+      assertTrue(percent + ":  " + approximate + " for " + exact,
+                 (approximate >= exact)
+                 && (approximate - exact <= exact / 50.0));
+      }
+    }
+}  // end LatencyHistogramTest
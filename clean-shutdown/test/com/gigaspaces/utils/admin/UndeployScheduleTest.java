@@ -0,0 +1,152 @@
+/**
+ * UndeployScheduleTest checks the waves an UndeploySchedule orders stubbed
+ * processing units into, from their tiers, their deployment dependencies
+ * and declared dependencies.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import org.openspaces.admin.pu.ProcessingUnit;
+import org.openspaces.admin.pu.ProcessingUnitType;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+public class UndeployScheduleTest
+{
+  /**
+   * Return a stub processing unit with no spaces.
+   *
+   * @param required The names of the processing units it was deployed
+   *                 to depend on
+   */
+  private static ProcessingUnit pu(final String name,
+                                   final ProcessingUnitType type,
+                                   final String... required)
+    {
+    return (ProcessingUnit)Proxy.newProxyInstance(
+      ProcessingUnit.class.getClassLoader(),
+      new Class<?>[] { ProcessingUnit.class },
+      new InvocationHandler()
+        {
+        public Object invoke(Object proxy,Method method,Object[] args)
+          {
+          String called = method.getName();
+          Class<?> returned = method.getReturnType();
+          if (called.equals("getName") || called.equals("toString"))
+            return name;
+          if (called.equals("getType"))
+            return type;
+          if (called.equals("getRequiredProcessingUnitsNames"))
+            return required;
+          if (called.equals("getDependencies"))
+            return Proxy.newProxyInstance(returned.getClassLoader(),
+                                          new Class<?>[] { returned },
+                                          this);
+          if (returned.isArray())
+            return Array.newInstance(returned.getComponentType(),0);
+          return null;
+          }
+        });
+    }
+
+
+  /**
+   * Return the names of the processing units in each wave of a
+   * schedule.
+   */
+  private static String waves(List<ProcessingUnit> pus,
+                              Properties dependencies)
+    {
+    List<List<String>> waves = new ArrayList<List<String>>();
+    for (List<ProcessingUnit> wave
+           : new UndeploySchedule(pus,dependencies).waves())
+      {
+      List<String> names = new ArrayList<String>();
+      for (ProcessingUnit pu : wave)
+        names.add(pu.getName());
+      waves.add(names);
+      }
+
+    return waves.toString();
+    }
+
+
+  private static String waves(ProcessingUnit... pus)
+    {
+    return waves(Arrays.asList(pus),new Properties());
+    }
+
+
+  @Test
+  public void tiersAreUndeployedClientsFirstAndMirrorsLast()
+    {
+    assertEquals("[[feeder, web], [processor], [mirror]]",
+                 waves(pu("mirror",ProcessingUnitType.MIRROR),
+                       pu("processor",ProcessingUnitType.STATEFUL),
+                       pu("web",ProcessingUnitType.WEB),
+                       pu("feeder",ProcessingUnitType.STATELESS)));
+    }
+
+
+  @Test
+  public void dependentsAreUndeployedBeforeTheirDependencies()
+    {
+    assertEquals("[[processor], [space]]",
+                 waves(pu("space",ProcessingUnitType.STATEFUL),
+                       pu("processor",
+                          ProcessingUnitType.STATEFUL,
+                          "space",
+                          "unknown")));
+
+    Properties dependencies = new Properties();
+    dependencies.setProperty(UndeploySchedule.DEPENDENCIES_PREFIX + "feeder",
+                             "reporter, ,processor");
+    assertEquals("[[feeder], [reporter], [processor]]",
+                 waves(Arrays.asList(
+                         pu("feeder",ProcessingUnitType.STATELESS),
+                         pu("processor",ProcessingUnitType.STATEFUL),
+                         pu("reporter",ProcessingUnitType.STATELESS)),
+                       dependencies));
+    }
+
+
+  @Test
+  public void declaredDependenciesOverrideTiers()
+    {
+    Properties dependencies = new Properties();
+    dependencies.setProperty(UndeploySchedule.DEPENDENCIES_PREFIX + "mirror",
+                             "processor");
+    assertEquals("[[feeder], [mirror], [processor]]",
+                 waves(Arrays.asList(
+                         pu("feeder",ProcessingUnitType.STATELESS),
+                         pu("processor",ProcessingUnitType.STATEFUL),
+                         pu("mirror",ProcessingUnitType.MIRROR)),
+                       dependencies));
+    }
+
+
+  @Test
+  public void cyclesAreBrokenInTheLowestTier()
+    {
+    assertEquals("[[a, b], [space]]",
+                 waves(pu("a",ProcessingUnitType.STATELESS,"b"),
+                       pu("b",ProcessingUnitType.STATELESS,"a"),
+                       pu("space",ProcessingUnitType.STATEFUL,"a")));
+    }
+}  // end UndeployScheduleTest
@@ -0,0 +1,129 @@
+/**
+ * ZoneGSCMonitorTest drives a ZoneGSCMonitor with stubbed GSCs, checking
+ * when zones become ready and when they stop being ready.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 GigaSpaces Technologies Inc.  All rights reserved.
+ * @version 1
+ */
+
+package com.gigaspaces.utils.admin;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.openspaces.admin.gsc.GridServiceContainer;
+import org.openspaces.admin.zone.Zone;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class ZoneGSCMonitorTest
+{
+  /**
+   * Return a stub answering only the passed method, with the passed
+   * value.
+   */
+  private static <T> T stub(Class<T> type,
+                            final String method,
+                            final Object value)
+    {
+    return type.cast(Proxy.newProxyInstance(
+      type.getClassLoader(),
+      new Class<?>[] { type },
+      new InvocationHandler()
+        {
+        public Object invoke(Object proxy,Method called,Object[] args)
+          {
+          return called.getName().equals(method) ? value : null;
+          }
+        }));
+    }
+
+
+  /**
+   * Return a stub GSC in a single zone.
+   */
+  private static GridServiceContainer gsc(final String uid,
+                                          String zoneName)
+    {
+    final Map<String,Zone> zones = Collections.singletonMap(
+      zoneName,stub(Zone.class,"getName",zoneName));
+
+    return (GridServiceContainer)Proxy.newProxyInstance(
+      GridServiceContainer.class.getClassLoader(),
+      new Class<?>[] { GridServiceContainer.class },
+      new InvocationHandler()
+        {
+        public Object invoke(Object proxy,Method method,Object[] args)
+          {
+          if (method.getName().equals("getUid"))
+            return uid;
+          if (method.getName().equals("getZones"))
+            return zones;
+          return null;
+          }
+        });
+    }
+
+
+  private static Map<String,Integer> requirements(String zone1,
+                                                  int count1,
+                                                  String zone2,
+                                                  int count2)
+    {
+    Map<String,Integer> requirements
+      = new LinkedHashMap<String,Integer>();
+    requirements.put(zone1,Integer.valueOf(count1));
+    requirements.put(zone2,Integer.valueOf(count2));
+    return requirements;
+    }
+
+
+  @Test
+  public void zonesRequiringNoGSCsAreReadyAtOnce()
+    {
+    ZoneGSCMonitor monitor
+      = new ZoneGSCMonitor(null,requirements("a",0,"b",1));
+    assertTrue(monitor.isReady("a"));
+    assertFalse(monitor.isReady("b"));
+    assertFalse(monitor.isDone());
+
+    monitor.gridServiceContainerAdded(gsc("1","b"));
+    assertTrue(monitor.isReady());
+    assertTrue(monitor.isDone());
+
+    assertTrue(new ZoneGSCMonitor(null,"a",0).isDone());
+    }
+
+
+  @Test
+  public void removedGSCsMakeAZoneUnready()
+    {
+    ZoneGSCMonitor monitor
+      = new ZoneGSCMonitor(null,requirements("a",2,"b",1));
+    monitor.gridServiceContainerAdded(gsc("1","a"));
+    monitor.gridServiceContainerAdded(gsc("2","a"));
+    monitor.gridServiceContainerAdded(gsc("3","other"));
+    assertTrue(monitor.isReady("a"));
+
+    monitor.gridServiceContainerRemoved(gsc("2","a"));
+    assertFalse(monitor.isReady("a"));
+    assertEquals(Integer.valueOf(1),monitor.gscCounts().get("a"));
+
+    monitor.gridServiceContainerAdded(gsc("4","b"));
+    assertFalse(monitor.isDone());
+
+    monitor.gridServiceContainerAdded(gsc("5","a"));
+    assertTrue(monitor.isReady());
+    assertTrue(monitor.isDone());
+    }
+}  // end ZoneGSCMonitorTest
@@ -0,0 +1,65 @@
+/**
+ * SpaceMetricBenchmark measures the cost of constructing the SpaceMetric
+ * entities written by SpaceStatisticsSpaceLogger, both directly from
+ * typed values and by parsing CSV rows.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor.bench;
+
+import com.gigaspaces.examples.monitor.SpaceMetric;
+import com.gigaspaces.examples.monitor.SpaceStatisticsParser;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpaceMetricBenchmark
+{
+  @Param({ "0", "10", "100" })
+  public int classCount;
+
+  private String[] rows_ = null;
+  private Date timestamp_ = new Date();
+  private int next_ = 0;
+
+  @Setup
+  public void setUp()
+    {
+    rows_ = new SpaceStatisticsParser(
+      SyntheticSpaces.space("space-0",classCount),
+      SyntheticSpaces.statistics(System.currentTimeMillis()))
+      .parsedStatistics();
+    }
+
+
+  @Benchmark
+  public SpaceMetric constructTyped()
+    {
+    return new SpaceMetric(timestamp_,"space-0","read-per-second",null,
+                           123.456);
+    }
+
+
+  @Benchmark
+  public SpaceMetric constructFromCsv()
+    {
+    SpaceMetric metric = new SpaceMetric(rows_[next_]);
+    next_ = (next_ + 1) % rows_.length;
+    return metric;
+    }
+}  // end SpaceMetricBenchmark
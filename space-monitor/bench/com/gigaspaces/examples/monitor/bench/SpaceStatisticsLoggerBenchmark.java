@@ -0,0 +1,111 @@
+/**
+ * SpaceStatisticsLoggerBenchmark measures the cost of logging a single
+ * statistics sample through each SpaceStatisticsLogger implementation.
+ * The file logger writes to a temporary file and the space logger writes
+ * to a proxy that discards everything, so the numbers reflect the
+ * monitor's own overhead rather than the disk or the network.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor.bench;
+
+import com.gigaspaces.examples.monitor.SpaceStatisticsFileLogger;
+import com.gigaspaces.examples.monitor.SpaceStatisticsLogger;
+import com.gigaspaces.examples.monitor.SpaceStatisticsSpaceLogger;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceStatistics;
+import org.openspaces.core.GigaSpace;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpaceStatisticsLoggerBenchmark
+{
+  @Param({ "file", "space" })
+  public String logger;
+
+  @Param({ "0", "10", "100" })
+  public int classCount;
+
+  @Param({ "1", "40", "200" })
+  public int spaceCount;
+
+  private Space[] spaces_ = null;
+  private SpaceStatistics statistics_ = null;
+  private SpaceStatisticsLogger statisticsLogger_ = null;
+  private File file_ = null;
+  private int next_ = 0;
+
+  /**
+   * Create a GigaSpace proxy that accepts and discards all writes.
+   */
+  private static GigaSpace discardingSpace()
+    {
+    return (GigaSpace)Proxy.newProxyInstance(
+      SpaceStatisticsLoggerBenchmark.class.getClassLoader(),
+      new Class<?>[] { GigaSpace.class },
+      new InvocationHandler()
+        {
+        public Object invoke(Object proxy,Method method,Object[] args)
+          {
+          return null;
+          }
+        });
+    }
+
+
+  @Setup
+  public void setUp() throws IOException
+    {
+    spaces_ = SyntheticSpaces.spaces(spaceCount,classCount);
+    statistics_ = SyntheticSpaces.statistics(System.currentTimeMillis());
+
+    if (logger.equals("file"))
+      {
+      file_ = File.createTempFile("space-monitor-bench",".log");
+      statisticsLogger_ = new SpaceStatisticsFileLogger(file_.getPath());
+      }
+    else
+      statisticsLogger_ = new SpaceStatisticsSpaceLogger(discardingSpace());
+    }
+
+
+  @TearDown
+  public void tearDown()
+    {
+    statisticsLogger_.close();
+    if (file_ != null)
+      file_.delete();
+    }
+
+
+  @Benchmark
+  public void log()
+    {
+    statisticsLogger_.log(spaces_[next_],statistics_);
+    next_ = (next_ + 1) % spaces_.length;
+    }
+}  // end SpaceStatisticsLoggerBenchmark
@@ -0,0 +1,92 @@
+/**
+ * SpaceStatisticsParserBenchmark measures the cost of parsing a single
+ * statistics sample, through both the buffer based path and the
+ * compatibility String[] path, and of parsing only the rate metrics.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor.bench;
+
+import com.gigaspaces.examples.monitor.MetricSelection;
+import com.gigaspaces.examples.monitor.SpaceMetricCsvEncoder;
+import com.gigaspaces.examples.monitor.SpaceStatisticsParser;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceStatistics;
+
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SpaceStatisticsParserBenchmark
+{
+  @Param({ "0", "10", "100", "1000" })
+  public int classCount;
+
+  @Param({ "1", "40", "200" })
+  public int spaceCount;
+
+  private Space[] spaces_ = null;
+  private SpaceStatistics statistics_ = null;
+  private SpaceStatisticsParser parser_ = new SpaceStatisticsParser();
+  private SpaceStatisticsParser ratesParser_
+    = new SpaceStatisticsParser(MetricSelection.RATES,0.0,0);
+  private SpaceMetricCsvEncoder encoder_ = null;
+  private int next_ = 0;
+
+  @Setup
+  public void setUp()
+    {
+    spaces_ = SyntheticSpaces.spaces(spaceCount,classCount);
+    statistics_ = SyntheticSpaces.statistics(System.currentTimeMillis());
+    encoder_ = new SpaceMetricCsvEncoder(ByteBuffer.allocate(64 * 1024));
+    }
+
+
+  private Space nextSpace()
+    {
+    Space space = spaces_[next_];
+    next_ = (next_ + 1) % spaces_.length;
+    return space;
+    }
+
+
+  @Benchmark
+  public int parseIntoBuffer()
+    {
+    encoder_.buffer().clear();
+    parser_.parse(nextSpace(),statistics_,encoder_);
+    return encoder_.buffer().position();
+    }
+
+
+  @Benchmark
+  public int parseRatesIntoBuffer()
+    {
+    encoder_.buffer().clear();
+    ratesParser_.parse(nextSpace(),statistics_,encoder_);
+    return encoder_.buffer().position();
+    }
+
+
+  @Benchmark
+  public String[] parseIntoStrings()
+    {
+    return new SpaceStatisticsParser(nextSpace(),statistics_)
+      .parsedStatistics();
+    }
+}  // end SpaceStatisticsParserBenchmark
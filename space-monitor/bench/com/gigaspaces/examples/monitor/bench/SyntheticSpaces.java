@@ -0,0 +1,143 @@
+/**
+ * SyntheticSpaces creates stand-in Space and SpaceStatistics instances
+ * for benchmarking the monitor without a running grid.  The stand-ins
+ * are dynamic proxies that return preallocated values, so they add no
+ * allocation of their own to the measurements.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceRuntimeDetails;
+import org.openspaces.admin.space.SpaceStatistics;
+
+public class SyntheticSpaces
+{
+  /**
+   * StandIn answers every interface method from a map of preallocated
+   * return values, falling back to a default for the return type.
+   */
+  private static class StandIn implements InvocationHandler
+  {
+    private static final Long LONG_VALUE = Long.valueOf(1234567L);
+    private static final Integer INT_VALUE = Integer.valueOf(42);
+    private static final Double DOUBLE_VALUE = Double.valueOf(123.456);
+
+    private String name_ = null;
+    private Map<String,Object> values_ = null;
+
+    public StandIn(String name,Map<String,Object> values)
+      {
+      name_ = name;
+      values_ = values;
+      }
+
+
+    public Object invoke(Object proxy,Method method,Object[] args)
+      {
+      Object value = values_.get(method.getName());
+      if (value != null)
+        return value;
+
+      Class<?> type = method.getReturnType();
+      if (method.getName().equals("toString"))
+        return name_;
+      else if (method.getName().equals("equals"))
+        return Boolean.valueOf(proxy == args[0]);
+      else if (method.getName().equals("hashCode"))
+        return Integer.valueOf(System.identityHashCode(proxy));
+      else if (type == long.class)
+        return LONG_VALUE;
+      else if (type == int.class)
+        return INT_VALUE;
+      else if (type == double.class)
+        return DOUBLE_VALUE;
+      else if (type == boolean.class)
+        return Boolean.FALSE;
+      else
+        return null;
+      }
+  }  // end StandIn
+
+
+  private static <T> T standIn(Class<T> type,
+                               String name,
+                               Map<String,Object> values)
+    {
+    return type.cast(Proxy.newProxyInstance(SyntheticSpaces.class
+                                            .getClassLoader(),
+                                            new Class<?>[] { type },
+                                            new StandIn(name,values)));
+    }
+
+
+  /**
+   * Create a stand-in space with the specified number of entry classes.
+   *
+   * @param name The space name
+   * @param classCount The number of entries in getCountPerClassName()
+   */
+  public static Space space(String name,int classCount)
+    {
+    Map<String,Integer> countPerClassName
+      = new LinkedHashMap<String,Integer>();
+    for (int i = 0;i < classCount;i++)
+      countPerClassName.put("com.example.model.EntryType" + i,
+                            Integer.valueOf(i * 100));
+
+    Map<String,Object> runtimeValues = new HashMap<String,Object>();
+    runtimeValues.put("getCountPerClassName",countPerClassName);
+    runtimeValues.put("getClassNames",
+                      countPerClassName.keySet().toArray(new String[0]));
+
+    Map<String,Object> spaceValues = new HashMap<String,Object>();
+    spaceValues.put("getName",name);
+    spaceValues.put("getUid",name + "-uid");
+    spaceValues.put("getNumberOfInstances",Integer.valueOf(4));
+    spaceValues.put("getNumberOfBackups",Integer.valueOf(1));
+    spaceValues.put("getRuntimeDetails",
+                    standIn(SpaceRuntimeDetails.class,
+                            name + "-runtime",
+                            runtimeValues));
+
+    return standIn(Space.class,name,spaceValues);
+    }
+
+
+  /**
+   * Create stand-in statistics with the specified timestamp.
+   */
+  public static SpaceStatistics statistics(long timestamp)
+    {
+    Map<String,Object> values = new HashMap<String,Object>();
+    values.put("getTimestamp",Long.valueOf(timestamp));
+    values.put("isNA",Boolean.FALSE);
+
+    return standIn(SpaceStatistics.class,"statistics",values);
+    }
+
+
+  /**
+   * Create the stand-in spaces used by a benchmark.
+   */
+  public static Space[] spaces(int spaceCount,int classCount)
+    {
+    Space[] spaces = new Space[spaceCount];
+    for (int i = 0;i < spaceCount;i++)
+      spaces[i] = space("space-" + i,classCount);
+
+    return spaces;
+    }
+}  // end SyntheticSpaces
@@ -0,0 +1,10 @@
+#!/bin/bash
+
+# Export a binary metrics journal as CSV.  Usage:
+#   export-journal.sh <journal-name> [<csv-file>]
+
+. `dirname $0`/gs-setup.sh
+
+java -cp ${REQUIRED_DIR}/*:`dirname $0`/../lib/monitor.jar \
+     com.gigaspaces.examples.monitor.SpaceStatisticsJournalReader \
+     $1 $2
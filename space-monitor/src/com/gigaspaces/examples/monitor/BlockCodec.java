@@ -0,0 +1,43 @@
+/**
+ * BlockCodec is an interface that must be implemented by all compression
+ * formats used by SpaceStatisticsFileLogger.  Each block of complete CSV
+ * lines is encoded independently, and the encoded blocks are appended to
+ * the file one after another, so the format must accept concatenated
+ * blocks as a single stream.  Gzip members and LZ4 or Zstandard frames
+ * all have this property.  A codec is only used by one thread at a time,
+ * so it may reuse its internal buffers, and it is closed once it is no
+ * longer used, so it may hold native resources.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface BlockCodec
+{
+  /**
+   * Return the suffix of files written with this codec, such as .gz.
+   */
+  public String suffix();
+
+  /**
+   * Encode a block and write it to the passed stream.
+   *
+   * @param block The bytes to encode
+   * @param length The number of bytes of the block to encode
+   * @param out The stream the encoded block is written to
+   */
+  public void encode(byte[] block,int length,OutputStream out)
+    throws IOException;
+
+  /**
+   * Release any resources held by the codec.  The codec is not used
+   * again.
+   */
+  public void close();
+}  // end BlockCodec
@@ -0,0 +1,246 @@
+/**
+ * CompressedFileWriter compresses blocks of metrics and appends them to a
+ * file on a worker thread, so that the thread logging the statistics only
+ * copies its buffer into a free block.  Blocks are taken from a fixed
+ * pool, so no memory is allocated per block, and the caller waits for a
+ * free block if the worker falls behind.  Since the file is only rotated
+ * between blocks, every file holds a sequence of complete blocks and can
+ * be decompressed on its own.  The worker closes the codec when it
+ * finishes.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+final class CompressedFileWriter
+{
+  static final int DEFAULT_BLOCK_COUNT = 4;
+
+  private static Logger logger_
+    = Logger.getLogger(CompressedFileWriter.class.getName());
+
+  private static final Block CLOSE = new Block(0);
+
+  private String fileName_ = null;  // without the codec suffix
+  private File file_ = null;
+  private BlockCodec codec_ = null;
+  private long rotateSize_ = 0;  // compressed bytes, 0 to disable
+  private long rotateInterval_ = 0;  // milliseconds, 0 to disable
+  private BlockingQueue<Block> free_ = null;
+  private BlockingQueue<Block> full_ = null;
+  private FileOutputStream stream_ = null;
+  private BufferedOutputStream out_ = null;
+  private long opened_ = 0;
+  private boolean closed_ = false;
+  private Thread worker_ = null;
+
+  /**
+   * Block holds the bytes of complete CSV lines waiting to be compressed.
+   */
+  private static class Block
+  {
+    private byte[] bytes_ = null;
+    private int length_ = 0;
+
+    public Block(int capacity) { bytes_ = new byte[capacity]; }
+  }  // end Block
+
+
+  /**
+   * Worker compresses and writes full blocks.
+   */
+  private class Worker implements Runnable
+  {
+    /**
+     * Run until the close marker is taken.  This method is inherited from
+     * Runnable.
+     */
+    public void run()
+      {
+      while (true)
+        {
+        Block block = null;
+        try { block = full_.take(); }
+        catch (InterruptedException e) { continue; }
+
+        if (block == CLOSE)
+          break;
+
+        try
+          {
+          write(block);
+          }
+        catch (IOException ioe)
+          {
+          logger_.severe("Unable to write to file:  " + file_ + " " + ioe);
+          abandon();
+          }
+        finally
+          {
+          block.length_ = 0;
+          free_.offer(block);
+          }
+        }
+
+      try { if (out_ != null) out_.close(); }
+      catch (IOException ioe)
+        {
+        logger_.severe("Unable to close file:  " + file_ + " " + ioe);
+        }
+      out_ = null;
+      stream_ = null;
+      codec_.close();
+      }
+  }  // end Worker
+
+
+  /**
+   * The full constructor for the CompressedFileWriter class.  The worker
+   * is started immediately.
+   *
+   * @param fileName The file to append to, without the codec suffix
+   * @param codec The codec used to compress each block
+   * @param blockSize The initial capacity of each block, in bytes
+   * @param blockCount The number of blocks in the pool
+   * @param rotateSize The compressed file size, in bytes, at which the
+   *                   file is rotated or 0 to disable size based rotation
+   * @param rotateInterval The file age, in milliseconds, at which the file
+   *                       is rotated or 0 to disable time based rotation
+   */
+  CompressedFileWriter(String fileName,
+                       BlockCodec codec,
+                       int blockSize,
+                       int blockCount,
+                       long rotateSize,
+                       long rotateInterval)
+    {
+    fileName_ = fileName;
+    file_ = new File(fileName + codec.suffix());
+    codec_ = codec;
+    rotateSize_ = rotateSize;
+    rotateInterval_ = rotateInterval;
+
+    free_ = new ArrayBlockingQueue<Block>(blockCount);
+    full_ = new ArrayBlockingQueue<Block>(blockCount + 1);
+    for (int i = 0;i < blockCount;i++)
+      free_.add(new Block(blockSize));
+
+    worker_ = new Thread(new Worker(),"space-statistics-compressor");
+    worker_.setDaemon(true);
+    worker_.start();
+    }
+
+
+  /**
+   * Copy the remaining bytes of the buffer into a free block and queue it
+   * for the worker, waiting if no block is free.  The buffer must hold
+   * complete lines.  An empty buffer only has the worker check whether
+   * the file is due to be rotated.
+   */
+  void write(ByteBuffer buffer)
+    {
+    if (closed_)
+      {
+      logger_.warning("Writer closed, dropping metrics.");
+      return;
+      }
+
+    Block block = null;
+    try { block = free_.take(); }
+    catch (InterruptedException e)
+      {
+      Thread.currentThread().interrupt();
+      logger_.warning("Interrupted, dropping metrics.");
+      return;
+      }
+
+    block.length_ = buffer.remaining();
+    if (block.bytes_.length < block.length_)
+      block.bytes_ = new byte[block.length_];
+    buffer.get(block.bytes_,0,block.length_);
+    full_.add(block);
+    }
+
+
+  /**
+   * Compress a block, append it to the file and rotate the file if
+   * necessary.  Only the worker calls this.
+   */
+  private void write(Block block) throws IOException
+    {
+    if (block.length_ > 0)
+      {
+      if (out_ == null)
+        {
+        stream_ = new FileOutputStream(file_,true);
+        out_ = new BufferedOutputStream(stream_,64 * 1024);
+        opened_ = System.currentTimeMillis();
+        }
+
+      codec_.encode(block.bytes_,block.length_,out_);
+      out_.flush();
+      }
+
+    if (out_ == null)
+      return;
+
+    long now = System.currentTimeMillis();
+    if (((rotateSize_ > 0) && (stream_.getChannel().size() >= rotateSize_))
+        || ((rotateInterval_ > 0) && (now - opened_ >= rotateInterval_)))
+      {
+      out_.close();
+      out_ = null;
+      stream_ = null;
+
+      File rotated
+        = SpaceStatisticsFileLogger.rotationTarget(fileName_,codec_.suffix());
+      if (!file_.renameTo(rotated))
+        logger_.warning("Unable to rotate " + file_ + " to " + rotated);
+      }
+    }
+
+
+  /**
+   * Discard the current stream after an error.  The file will be reopened
+   * for the next block.
+   */
+  private void abandon()
+    {
+    try { if (stream_ != null) stream_.close(); }
+    catch (IOException ignore) { }
+    out_ = null;
+    stream_ = null;
+    }
+
+
+  /**
+   * Write any queued blocks, close the file and stop the worker.
+   */
+  void close()
+    {
+    if (closed_)
+      return;
+
+    closed_ = true;
+    full_.add(CLOSE);
+
+    try { worker_.join(TimeUnit.SECONDS.toMillis(30)); }
+    catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+    }
+}  // end CompressedFileWriter
@@ -0,0 +1,42 @@
+/**
+ * DaemonThreadFactory creates named daemon threads for the background
+ * work of the loggers and caches, so that a timer or fetch never keeps
+ * the monitor from exiting.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class DaemonThreadFactory implements ThreadFactory
+{
+  private String name_ = null;
+  private AtomicInteger count_ = new AtomicInteger();
+
+  /**
+   * The full constructor for the DaemonThreadFactory class.
+   *
+   * @param name The prefix of the thread names
+   */
+  DaemonThreadFactory(String name)
+    {
+    name_ = name;
+    }
+
+
+  /**
+   * Create a daemon thread.  This method is inherited from ThreadFactory.
+   */
+  public Thread newThread(Runnable runnable)
+    {
+    Thread thread
+      = new Thread(runnable,name_ + "-" + count_.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+    }
+}  // end DaemonThreadFactory
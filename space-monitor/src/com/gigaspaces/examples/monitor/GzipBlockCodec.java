@@ -0,0 +1,105 @@
+/**
+ * GzipBlockCodec encodes each block as a separate gzip member.  A file of
+ * concatenated members is a valid gzip file, so it can be read with
+ * gunzip, zcat or zgrep, and a file cut short by a crash loses at most
+ * the last block.  The Deflater and output buffer are reused for every
+ * block, rather than creating a GZIPOutputStream per block, and the
+ * Deflater's native memory is released by close().
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+public class GzipBlockCodec implements BlockCodec
+{
+  // magic number, deflate, no flags, no modification time, no extra
+  // flags, unknown operating system
+  private static final byte[] HEADER =
+    { 0x1f, (byte)0x8b, 8, 0, 0, 0, 0, 0, 0, (byte)0xff };
+
+  private Deflater deflater_ = null;
+  private CRC32 crc_ = new CRC32();
+  private byte[] output_ = new byte[16 * 1024];
+  private byte[] trailer_ = new byte[8];
+
+  /**
+   * The full constructor for the GzipBlockCodec class.
+   *
+   * @param level The compression level, from 1 (fastest) to 9 (smallest)
+   */
+  public GzipBlockCodec(int level)
+    {
+    deflater_ = new Deflater(level,true);
+    }
+
+
+  /**
+   * A constructor for the GzipBlockCodec class that uses the default
+   * compression level.
+   */
+  public GzipBlockCodec()
+    {
+    this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+
+  /**
+   * Return the gzip file suffix.  This method is inherited from
+   * BlockCodec.
+   */
+  public String suffix() { return ".gz"; }
+
+
+  /**
+   * Store an int in the trailer in little endian order.
+   */
+  private void putInt(int offset,int value)
+    {
+    for (int i = 0;i < 4;i++)
+      trailer_[offset + i] = (byte)(value >>> (8 * i));
+    }
+
+
+  /**
+   * Write the block as a complete gzip member.  This method is inherited
+   * from BlockCodec.
+   */
+  public void encode(byte[] block,int length,OutputStream out)
+    throws IOException
+    {
+    out.write(HEADER);
+
+    deflater_.reset();
+    deflater_.setInput(block,0,length);
+    deflater_.finish();
+    while (!deflater_.finished())
+      {
+      int count = deflater_.deflate(output_);
+      out.write(output_,0,count);
+      }
+
+    crc_.reset();
+    crc_.update(block,0,length);
+    putInt(0,(int)crc_.getValue());
+    putInt(4,length);
+    out.write(trailer_);
+    }
+
+
+  /**
+   * Release the Deflater.  This method is inherited from BlockCodec.
+   */
+  public void close()
+    {
+    deflater_.end();
+    }
+}  // end GzipBlockCodec
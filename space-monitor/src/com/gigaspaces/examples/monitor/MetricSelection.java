@@ -0,0 +1,461 @@
+/**
+ * MetricSelection is the set of metrics that SpaceStatisticsParser
+ * captures.  A selection is described by a comma separated list of
+ * metric names, in which * matches any characters and a leading -
+ * excludes the matching metrics, for example "*-per-second,object-count"
+ * or "*,-class-count".  Entries are applied in order, and an empty
+ * description selects every metric.
+ *
+ * The description is compiled once into an array of extractors, one for
+ * each selected metric, so parsing a sample only calls the getters of
+ * the selected metrics.  In particular, the class counts are only
+ * fetched, through the expensive Space.getRuntimeDetails() call, when
+ * class-count is selected.  They are then served from the shared
+ * SpaceRuntimeDetailsCache, followed by a class-count-age metric giving
+ * their age in milliseconds, so parsing never waits for a fetch.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceStatistics;
+
+import static com.gigaspaces.examples.monitor.MetricType.*;
+
+public class MetricSelection
+{
+  private static Logger logger_
+    = Logger.getLogger(MetricSelection.class.getName());
+
+  /**
+   * Extractor passes one metric of a sample to a sink.
+   */
+  private abstract static class Extractor
+  {
+    private MetricType metricType_ = null;
+
+    public Extractor(MetricType metricType)
+      {
+      metricType_ = metricType;
+      }
+
+
+    public MetricType metricType() { return metricType_; }
+
+
+    public abstract void extract(Space space,
+                                 SpaceStatistics statistics,
+                                 SpaceMetricSink sink);
+  }  // end Extractor
+
+
+  /**
+   * LongStatistic extracts an integral value from the statistics.
+   */
+  private abstract static class LongStatistic extends Extractor
+  {
+    public LongStatistic(MetricType metricType) { super(metricType); }
+
+
+    public abstract long value(SpaceStatistics statistics);
+
+
+    public void extract(Space space,
+                        SpaceStatistics statistics,
+                        SpaceMetricSink sink)
+      {
+      sink.metric(metricType(),value(statistics));
+      }
+  }  // end LongStatistic
+
+
+  /**
+   * DoubleStatistic extracts a floating point value from the statistics.
+   */
+  private abstract static class DoubleStatistic extends Extractor
+  {
+    public DoubleStatistic(MetricType metricType) { super(metricType); }
+
+
+    public abstract double value(SpaceStatistics statistics);
+
+
+    public void extract(Space space,
+                        SpaceStatistics statistics,
+                        SpaceMetricSink sink)
+      {
+      sink.metric(metricType(),value(statistics));
+      }
+  }  // end DoubleStatistic
+
+
+  // every metric, in the order they are emitted
+  private static final Extractor[] EXTRACTORS =
+    {
+    // space metrics
+    new Extractor(INSTANCE_COUNT)
+      {
+      public void extract(Space space,
+                          SpaceStatistics statistics,
+                          SpaceMetricSink sink)
+        {
+        sink.metric(metricType(),space.getNumberOfInstances());
+        }
+      },
+    new Extractor(BACKUP_COUNT)
+      {
+      public void extract(Space space,
+                          SpaceStatistics statistics,
+                          SpaceMetricSink sink)
+        {
+        sink.metric(metricType(),space.getNumberOfBackups());
+        }
+      },
+
+    // object type counts, omitted until first fetched
+    new Extractor(CLASS_COUNT)
+      {
+      public void extract(Space space,
+                          SpaceStatistics statistics,
+                          SpaceMetricSink sink)
+        {
+        SpaceRuntimeDetailsCache.Details details
+          = SpaceRuntimeDetailsCache.shared().get(space);
+        if (details == null)
+          return;
+
+        for (Map.Entry<String,Integer> entry
+               : details.countPerClassName().entrySet())
+          sink.metric(metricType(),
+                      entry.getKey(),
+                      entry.getValue().intValue());
+        sink.metric(CLASS_COUNT_AGE,
+                    details.age(System.currentTimeMillis()));
+        }
+      },
+
+    // space statistics metrics
+    new LongStatistic(OBJECT_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getObjectCount();
+        }
+      },
+    new LongStatistic(ACTIVE_CONNECTION_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getActiveConnectionCount();
+        }
+      },
+    new LongStatistic(ACTIVE_TRANSACTION_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getActiveTransactionCount();
+        }
+      },
+    new LongStatistic(CHANGE_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getChangeCount();
+        }
+      },
+    new DoubleStatistic(CHANGE_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getChangePerSecond();
+        }
+      },
+    new LongStatistic(EXECUTE_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getExecuteCount();
+        }
+      },
+    new DoubleStatistic(EXECUTE_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getExecutePerSecond();
+        }
+      },
+    new LongStatistic(NOTIFY_ACK_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getNotifyAckCount();
+        }
+      },
+    new DoubleStatistic(NOTIFY_ACK_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getNotifyAckPerSecond();
+        }
+      },
+    new LongStatistic(NOTIFY_REGISTRATION_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getNotifyRegistrationCount();
+        }
+      },
+    new DoubleStatistic(NOTIFY_REGISTRATION_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getNotifyRegistrationPerSecond();
+        }
+      },
+    new LongStatistic(NOTIFY_TRIGGER_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getNotifyTriggerCount();
+        }
+      },
+    new DoubleStatistic(NOTIFY_TRIGGER_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getNotifyTriggerPerSecond();
+        }
+      },
+    new LongStatistic(READ_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getReadCount();
+        }
+      },
+    new DoubleStatistic(READ_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getReadPerSecond();
+        }
+      },
+    new LongStatistic(REMOVE_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getRemoveCount();
+        }
+      },
+    new DoubleStatistic(REMOVE_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getRemovePerSecond();
+        }
+      },
+    new LongStatistic(TAKE_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getTakeCount();
+        }
+      },
+    new DoubleStatistic(TAKE_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getTakePerSecond();
+        }
+      },
+    new LongStatistic(UPDATE_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getUpdateCount();
+        }
+      },
+    new DoubleStatistic(UPDATE_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getUpdatePerSecond();
+        }
+      },
+    new LongStatistic(WRITE_COUNT)
+      {
+      public long value(SpaceStatistics statistics)
+        {
+        return statistics.getWriteCount();
+        }
+      },
+    new DoubleStatistic(WRITE_PER_SECOND)
+      {
+      public double value(SpaceStatistics statistics)
+        {
+        return statistics.getWritePerSecond();
+        }
+      }
+    };
+
+  public static final MetricSelection ALL = new MetricSelection("*");
+  public static final MetricSelection RATES
+    = new MetricSelection("*-per-second");
+
+  private String description_ = null;
+  private Extractor[] extractors_ = null;
+
+  /**
+   * The full constructor for the MetricSelection class.
+   *
+   * @param description The comma separated list of metric names and
+   *                    patterns to select, or null to select every metric
+   */
+  public MetricSelection(String description)
+    {
+    description_ = ((description == null)
+                    || (description.trim().length() == 0))
+      ? "*" : description.trim();
+
+    boolean[] selected = new boolean[EXTRACTORS.length];
+    for (String entry : description_.split(","))
+      {
+      entry = entry.trim();
+      if (entry.length() == 0)
+        continue;
+
+      boolean exclude = entry.startsWith("-");
+      if (exclude)
+        entry = entry.substring(1).trim();
+
+      Pattern pattern = compile(entry);
+      boolean matched = false;
+      for (int i = 0;i < EXTRACTORS.length;i++)
+        if (pattern.matcher(EXTRACTORS[i].metricType().name()).matches())
+          {
+          selected[i] = !exclude;
+          matched = true;
+          }
+
+      if (!matched)
+        logger_.warning("No metric matches " + entry + ".");
+      }
+
+    ArrayList<Extractor> extractors = new ArrayList<Extractor>();
+    for (int i = 0;i < EXTRACTORS.length;i++)
+      if (selected[i])
+        extractors.add(EXTRACTORS[i]);
+    extractors_ = extractors.toArray(new Extractor[extractors.size()]);
+    }
+
+
+  /**
+   * Compile a metric name pattern, in which * matches any characters,
+   * to a regular expression.
+   */
+  private static Pattern compile(String entry)
+    {
+    StringBuilder regex = new StringBuilder();
+    int start = 0;
+    for (int star = entry.indexOf('*');
+         star >= 0;
+         star = entry.indexOf('*',start))
+      {
+      if (star > start)
+        regex.append(Pattern.quote(entry.substring(start,star)));
+      regex.append(".*");
+      start = star + 1;
+      }
+    if (start < entry.length())
+      regex.append(Pattern.quote(entry.substring(start)));
+
+    return Pattern.compile(regex.toString());
+    }
+
+
+  /**
+   * Return the selection described by the monitor.metrics system
+   * property.  A value starting with @ names a file holding the
+   * description, one or more entries per line, with # starting a
+   * comment.  Every metric is selected if the property is not set.
+   *
+   * @throws IllegalArgumentException if the file cannot be read
+   */
+  public static MetricSelection configured()
+    {
+    String description = System.getProperty("monitor.metrics");
+    if ((description == null) || !description.startsWith("@"))
+      return new MetricSelection(description);
+
+    String fileName = description.substring(1);
+    StringBuilder entries = new StringBuilder();
+    BufferedReader reader = null;
+    try
+      {
+      reader = new BufferedReader(new FileReader(fileName));
+      for (String line = reader.readLine();
+           line != null;
+           line = reader.readLine())
+        {
+        int comment = line.indexOf('#');
+        if (comment >= 0)
+          line = line.substring(0,comment);
+        entries.append(line).append(',');
+        }
+      }
+    catch (IOException ioe)
+      {
+      throw new IllegalArgumentException("Unable to read metric selection "
+                                         + fileName + ":  " + ioe);
+      }
+    finally
+      {
+      if (reader != null)
+        try { reader.close(); }
+        catch (IOException ignore) { }
+      }
+
+    return new MetricSelection(entries.toString());
+    }
+
+
+  /**
+   * Return true if the passed metric type is selected.
+   */
+  public boolean selects(MetricType metricType)
+    {
+    for (Extractor extractor : extractors_)
+      if (extractor.metricType() == metricType)
+        return true;
+
+    return false;
+    }
+
+
+  /**
+   * Pass the selected metrics of a sample to the sink, between the sink's
+   * begin() and end() calls.
+   */
+  void extract(Space space,SpaceStatistics statistics,SpaceMetricSink sink)
+    {
+    for (Extractor extractor : extractors_)
+      extractor.extract(space,statistics,sink);
+    }
+
+
+  public String toString() { return description_; }
+}  // end MetricSelection
@@ -0,0 +1,159 @@
+/**
+ * MetricType is the registry of metric types.  Each type is created once,
+ * given a compact integer id in order of registration and shared by every
+ * metric of that type, so samples carry a reference or an id rather than
+ * a copy of the name.  The types produced by SpaceStatisticsParser are
+ * registered as constants; other types, such as the names of aggregates
+ * or types read back from a journal, are registered by named().
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class MetricType
+{
+  private static final String RATE_SUFFIX = "-per-second";
+
+  private static Charset utf8_ = Charset.forName("UTF-8");
+  private static ConcurrentHashMap<String,MetricType> byName_
+    = new ConcurrentHashMap<String,MetricType>();
+  private static ArrayList<MetricType> byId_ = new ArrayList<MetricType>();
+
+  public static final MetricType INSTANCE_COUNT = named("instance-count");
+  public static final MetricType BACKUP_COUNT = named("backup-count");
+  public static final MetricType CLASS_COUNT = named("class-count");
+  public static final MetricType CLASS_COUNT_AGE = named("class-count-age");
+  public static final MetricType OBJECT_COUNT = named("object-count");
+  public static final MetricType ACTIVE_CONNECTION_COUNT
+    = named("active-connection-count");
+  public static final MetricType ACTIVE_TRANSACTION_COUNT
+    = named("active-transaction-count");
+  public static final MetricType CHANGE_COUNT = named("change-count");
+  public static final MetricType CHANGE_PER_SECOND
+    = named("change-per-second");
+  public static final MetricType EXECUTE_COUNT = named("execute-count");
+  public static final MetricType EXECUTE_PER_SECOND
+    = named("execute-per-second");
+  public static final MetricType NOTIFY_ACK_COUNT = named("notify-ack-count");
+  public static final MetricType NOTIFY_ACK_PER_SECOND
+    = named("notify-ack-per-second");
+  public static final MetricType NOTIFY_REGISTRATION_COUNT
+    = named("notify-registration-count");
+  public static final MetricType NOTIFY_REGISTRATION_PER_SECOND
+    = named("notify-registration-per-second");
+  public static final MetricType NOTIFY_TRIGGER_COUNT
+    = named("notify-trigger-count");
+  public static final MetricType NOTIFY_TRIGGER_PER_SECOND
+    = named("notify-trigger-per-second");
+  public static final MetricType READ_COUNT = named("read-count");
+  public static final MetricType READ_PER_SECOND = named("read-per-second");
+  public static final MetricType REMOVE_COUNT = named("remove-count");
+  public static final MetricType REMOVE_PER_SECOND
+    = named("remove-per-second");
+  public static final MetricType TAKE_COUNT = named("take-count");
+  public static final MetricType TAKE_PER_SECOND = named("take-per-second");
+  public static final MetricType UPDATE_COUNT = named("update-count");
+  public static final MetricType UPDATE_PER_SECOND
+    = named("update-per-second");
+  public static final MetricType WRITE_COUNT = named("write-count");
+  public static final MetricType WRITE_PER_SECOND = named("write-per-second");
+
+  // per space instance metrics, keyed by instance
+  public static final MetricType INSTANCE_PRIMARY = named("instance-primary");
+  public static final MetricType INSTANCE_OBJECT_COUNT
+    = named("instance-object-count");
+  public static final MetricType INSTANCE_READ_PER_SECOND
+    = named("instance-read-per-second");
+  public static final MetricType INSTANCE_WRITE_PER_SECOND
+    = named("instance-write-per-second");
+  public static final MetricType INSTANCE_TAKE_PER_SECOND
+    = named("instance-take-per-second");
+  public static final MetricType INSTANCE_REDO_LOG_SIZE
+    = named("instance-redo-log-size");
+
+  private int id_ = 0;
+  private String name_ = null;
+  private byte[] utf8Name_ = null;
+  private boolean rate_ = false;
+
+  private MetricType(int id,String name)
+    {
+    id_ = id;
+    name_ = name;
+    utf8Name_ = name.getBytes(utf8_);
+    rate_ = name.endsWith(RATE_SUFFIX);
+    }
+
+
+  /**
+   * Return the metric type with the passed name, registering it if
+   * necessary.
+   */
+  public static MetricType named(String name)
+    {
+    MetricType type = byName_.get(name);
+    if (type == null)
+      {
+      synchronized(byId_)
+        {
+        type = byName_.get(name);
+        if (type == null)
+          {
+          type = new MetricType(byId_.size(),name);
+          byId_.add(type);
+          byName_.put(name,type);
+          }
+        }
+      }
+
+    return type;
+    }
+
+
+  /**
+   * Return the metric type with the passed id.
+   *
+   * @throws IndexOutOfBoundsException if no type has the id
+   */
+  public static MetricType forId(int id)
+    {
+    synchronized(byId_) { return byId_.get(id); }
+    }
+
+
+  /**
+   * Return the number of registered metric types.  Every id is less than
+   * this.
+   */
+  public static int count()
+    {
+    synchronized(byId_) { return byId_.size(); }
+    }
+
+
+  public int id() { return id_; }
+  public String name() { return name_; }
+
+  /**
+   * Return true for rates, such as read-per-second.
+   */
+  public boolean isRate() { return rate_; }
+
+  /**
+   * Return the name encoded as UTF-8.  The array is shared and must not
+   * be modified.
+   */
+  byte[] utf8Name() { return utf8Name_; }
+
+  public int hashCode() { return id_; }
+  public String toString() { return name_; }
+}  // end MetricType
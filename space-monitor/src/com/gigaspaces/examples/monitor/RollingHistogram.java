@@ -0,0 +1,277 @@
+/**
+ * RollingHistogram summarizes the values recorded over a sliding window
+ * of time in a fixed amount of memory.  The window is divided into
+ * slots, each holding a log-linear histogram in the manner of an HDR
+ * histogram, and a slot is recycled as soon as it falls out of the
+ * window.  Values below 16 are recorded exactly; larger values fall in
+ * buckets no wider than 1/8 of their magnitude, so the percentiles,
+ * which report the middle of a bucket, are within 1/16.
+ *
+ * Recording and summarizing never lock.  Counters are updated
+ * atomically, and the first writer to see that a slot belongs to an old
+ * time period claims it with a compare-and-set and clears it, so one
+ * thread can record samples while another summarizes the window.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.Arrays;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class RollingHistogram
+{
+  public static final int DEFAULT_SLOTS = 6;
+  public static final long MAX_VALUE = (1L << 40) - 1;
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int EXACT_LIMIT = 2 * SUB_BUCKETS;
+  private static final int BUCKETS
+    = EXACT_LIMIT + (40 - 1 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private static final long EMPTY = -1;
+  private static final long RESETTING = -2;
+
+  private long slotLength_ = 0;
+  private Slot[] slots_ = null;
+
+  /**
+   * Slot holds the values recorded in one period of the window.
+   */
+  private static class Slot
+  {
+    private AtomicLong period_ = new AtomicLong(EMPTY);
+    private AtomicIntegerArray counts_ = new AtomicIntegerArray(BUCKETS);
+    private AtomicLong count_ = new AtomicLong();
+    private AtomicLong total_ = new AtomicLong();
+    private AtomicLong min_ = new AtomicLong(Long.MAX_VALUE);
+    private AtomicLong max_ = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Clear the slot.  Only the writer that claimed the slot calls this.
+     */
+    private void clear()
+      {
+      for (int i = 0;i < BUCKETS;i++)
+        counts_.set(i,0);
+      count_.set(0);
+      total_.set(0);
+      min_.set(Long.MAX_VALUE);
+      max_.set(Long.MIN_VALUE);
+      }
+
+
+    private void record(long value)
+      {
+      counts_.incrementAndGet(index(value));
+      count_.incrementAndGet();
+      total_.addAndGet(value);
+
+      long min = min_.get();
+      while ((value < min) && !min_.compareAndSet(min,value))
+        min = min_.get();
+
+      long max = max_.get();
+      while ((value > max) && !max_.compareAndSet(max,value))
+        max = max_.get();
+      }
+  }  // end Slot
+
+
+  /**
+   * Summary holds the statistics of a window at one point in time.  A
+   * summary may be reused for any number of windows.
+   */
+  public static class Summary
+  {
+    private long[] counts_ = new long[BUCKETS];
+    private long count_ = 0;
+    private long total_ = 0;
+    private long min_ = 0;
+    private long max_ = 0;
+
+    public long count() { return count_; }
+    public long min() { return min_; }
+    public long max() { return max_; }
+
+
+    /**
+     * Return the mean of the values in the window.
+     */
+    public double mean()
+      {
+      return (count_ == 0) ? 0.0 : (double)total_ / count_;
+      }
+
+
+    /**
+     * Return the value at or below which the passed percentage of values
+     * in the window fall.  The middle of the bucket holding that value is
+     * returned, so it is accurate to within 1/16 of its magnitude.
+     */
+    public long percentile(double percent)
+      {
+      if (count_ == 0)
+        return 0;
+
+      long rank = Math.max(1,(long)Math.ceil(count_ * percent / 100.0));
+      long seen = 0;
+      for (int i = 0;i < BUCKETS;i++)
+        {
+        seen += counts_[i];
+        if (seen >= rank)
+          return Math.max(min_,Math.min(max_,middleValue(i)));
+        }
+
+      return max_;
+      }
+
+
+    private void clear()
+      {
+      Arrays.fill(counts_,0);
+      count_ = 0;
+      total_ = 0;
+      min_ = Long.MAX_VALUE;
+      max_ = Long.MIN_VALUE;
+      }
+
+
+    private void add(Slot slot)
+      {
+      long count = slot.count_.get();
+      if (count == 0)
+        return;
+
+      for (int i = 0;i < BUCKETS;i++)
+        counts_[i] += slot.counts_.get(i);
+      count_ += count;
+      total_ += slot.total_.get();
+      min_ = Math.min(min_,slot.min_.get());
+      max_ = Math.max(max_,slot.max_.get());
+      }
+
+
+    private void finish()
+      {
+      if (count_ == 0)
+        {
+        min_ = 0;
+        max_ = 0;
+        }
+      }
+  }  // end Summary
+
+
+  /**
+   * The full constructor for the RollingHistogram class.
+   *
+   * @param window The length of the window, in milliseconds
+   * @param slots The number of slots the window is divided into
+   */
+  public RollingHistogram(long window,int slots)
+    {
+    if ((slots < 1) || (window < slots))
+      throw new IllegalArgumentException("Invalid window or slot count.");
+
+    slotLength_ = window / slots;
+    slots_ = new Slot[slots];
+    for (int i = 0;i < slots;i++)
+      slots_[i] = new Slot();
+    }
+
+
+  /**
+   * A constructor for the RollingHistogram class that uses the default
+   * number of slots.
+   */
+  public RollingHistogram(long window)
+    {
+    this(window,DEFAULT_SLOTS);
+    }
+
+
+  /**
+   * Return the bucket index of a value between 0 and MAX_VALUE.
+   */
+  private static int index(long value)
+    {
+    if (value < EXACT_LIMIT)
+      return (int)value;
+
+    int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    int top = (int)(value >>> shift);  // between SUB_BUCKETS and 2x
+    return EXACT_LIMIT + (shift - 1) * SUB_BUCKETS + (top - SUB_BUCKETS);
+    }
+
+
+  /**
+   * Return the value in the middle of the range recorded in a bucket.
+   */
+  private static long middleValue(int index)
+    {
+    if (index < EXACT_LIMIT)
+      return index;
+
+    int shift = (index - EXACT_LIMIT) / SUB_BUCKETS + 1;
+    long top = (index - EXACT_LIMIT) % SUB_BUCKETS + SUB_BUCKETS;
+    return (top << shift) + (1L << (shift - 1));
+    }
+
+
+  /**
+   * Record a value at the passed time, in milliseconds.  Values outside
+   * the range 0 to MAX_VALUE are clamped.  Values older than the oldest
+   * period still held are dropped.
+   */
+  public void record(long timestamp,long value)
+    {
+    value = Math.max(0,Math.min(MAX_VALUE,value));
+    long period = timestamp / slotLength_;
+    Slot slot = slots_[(int)(period % slots_.length)];
+
+    long current = slot.period_.get();
+    while (current != period)
+      {
+      if (current > period)
+        return;  // the slot already holds a later period
+
+      if ((current != RESETTING)
+          && slot.period_.compareAndSet(current,RESETTING))
+        {
+        slot.clear();
+        slot.period_.set(period);
+        break;
+        }
+
+      Thread.yield();  // another writer is clearing the slot
+      current = slot.period_.get();
+      }
+
+    slot.record(value);
+    }
+
+
+  /**
+   * Summarize the values recorded in the window ending at the passed
+   * time, in milliseconds.
+   */
+  public void summarize(long now,Summary summary)
+    {
+    long period = now / slotLength_;
+    summary.clear();
+    for (Slot slot : slots_)
+      {
+      long slotPeriod = slot.period_.get();
+      if ((slotPeriod > period - slots_.length) && (slotPeriod <= period))
+        summary.add(slot);
+      }
+    summary.finish();
+    }
+}  // end RollingHistogram
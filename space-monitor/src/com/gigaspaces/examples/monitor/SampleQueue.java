@@ -0,0 +1,326 @@
+/**
+ * SampleQueue is a preallocated, bounded ring buffer of samples drained
+ * by a single worker thread.  Each slot holds a pair of objects, such as
+ * a Space and its SpaceStatistics, which the worker passes to deliver().
+ * When the buffer is full, the OverflowPolicy decides whether the oldest
+ * sample is overwritten, the new sample is dropped or the caller blocks
+ * until space is available.  If the worker is still delivering when
+ * close() gives up waiting for it, the remaining samples are dropped and
+ * the worker is interrupted, and stopped() tells the caller whether it
+ * is safe to close whatever the worker delivers to.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import java.util.logging.Logger;
+
+import com.gigaspaces.examples.monitor.SpaceStatisticsAsyncLogger.OverflowPolicy;
+
+abstract class SampleQueue
+{
+  private static final long CLOSE_TIMEOUT = 30 * 1000;  // milliseconds
+  private static final long INTERRUPT_TIMEOUT = 5 * 1000;  // milliseconds
+
+  private static Logger logger_
+    = Logger.getLogger(SampleQueue.class.getName());
+
+  private OverflowPolicy policy_ = OverflowPolicy.DROP_OLDEST;
+  private long lagThreshold_ = 0;
+
+  // The ring buffer.  head_ and tail_ increase monotonically and are
+  // masked to find the slot.
+  private Object[] sources_ = null;
+  private Object[] statistics_ = null;
+  private long[] enqueueTimes_ = null;
+  private int mask_ = 0;
+  private long head_ = 0;
+  private long tail_ = 0;
+
+  private ReentrantLock lock_ = new ReentrantLock();
+  private Condition notEmpty_ = lock_.newCondition();
+  private Condition notFull_ = lock_.newCondition();
+  private volatile boolean closed_ = false;
+  private Thread worker_ = null;
+
+  private AtomicLong enqueued_ = new AtomicLong();
+  private AtomicLong dropped_ = new AtomicLong();
+  private AtomicLong lagging_ = new AtomicLong();
+
+  /**
+   * Worker delivers queued samples.
+   */
+  private class Worker implements Runnable
+  {
+    /**
+     * Run until closed and drained.  This method is inherited from
+     * Runnable.
+     */
+    public void run()
+      {
+      while (true)
+        {
+        Object source = null;
+        Object statistics = null;
+        long enqueueTime = 0;
+
+        lock_.lock();
+        try
+          {
+          while ((head_ == tail_) && !closed_)
+            notEmpty_.awaitUninterruptibly();
+
+          if (head_ == tail_)
+            break;
+
+          int slot = (int)(head_ & mask_);
+          source = sources_[slot];
+          statistics = statistics_[slot];
+          enqueueTime = enqueueTimes_[slot];
+          sources_[slot] = null;
+          statistics_[slot] = null;
+          ++head_;
+          notFull_.signal();
+          }
+        finally
+          {
+          lock_.unlock();
+          }
+
+        if (System.currentTimeMillis() - enqueueTime > lagThreshold_)
+          lagging_.incrementAndGet();
+
+        try
+          {
+          deliver(source,statistics);
+          }
+        catch (RuntimeException e)
+          {
+          logger_.severe("Unable to log statistics:  " + e);
+          }
+        }
+      }
+  }  // end Worker
+
+
+  /**
+   * The full constructor for the SampleQueue class.  The worker is
+   * started immediately.
+   *
+   * @param name The name of the worker thread
+   * @param capacity The maximum number of queued samples, rounded up to
+   *                 a power of two
+   * @param policy What to do when the queue is full
+   * @param lagThreshold The time, in milliseconds, after which a queued
+   *                     sample is counted as lagging
+   */
+  SampleQueue(String name,
+              int capacity,
+              OverflowPolicy policy,
+              long lagThreshold)
+    {
+    if (capacity < 1)
+      throw new IllegalArgumentException("Capacity must be positive.");
+
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity)
+      size <<= 1;
+
+    policy_ = policy;
+    lagThreshold_ = lagThreshold;
+    sources_ = new Object[size];
+    statistics_ = new Object[size];
+    enqueueTimes_ = new long[size];
+    mask_ = size - 1;
+
+    worker_ = new Thread(new Worker(),name);
+    worker_.setDaemon(true);
+    worker_.start();
+    }
+
+
+  /**
+   * Deliver a sample.  Only the worker thread calls this.
+   */
+  protected abstract void deliver(Object source,Object statistics);
+
+
+  long enqueuedCount() { return enqueued_.get(); }
+  long droppedCount() { return dropped_.get(); }
+  long laggingCount() { return lagging_.get(); }
+
+
+  /**
+   * Count a sample that was dropped before reaching the queue.
+   */
+  void drop() { dropped_.incrementAndGet(); }
+
+
+  /**
+   * Return the number of samples waiting to be delivered.
+   */
+  int size()
+    {
+    lock_.lock();
+    try { return (int)(tail_ - head_); }
+    finally { lock_.unlock(); }
+    }
+
+
+  /**
+   * Queue a sample for delivery, applying the overflow policy if the
+   * queue is full.
+   */
+  void offer(Object source,Object statistics)
+    {
+    if (closed_)
+      {
+      dropped_.incrementAndGet();
+      return;
+      }
+
+    lock_.lock();
+    try
+      {
+      while (tail_ - head_ > mask_)
+        {
+        if (policy_ == OverflowPolicy.DROP_NEWEST)
+          {
+          dropped_.incrementAndGet();
+          return;
+          }
+        else if (policy_ == OverflowPolicy.DROP_OLDEST)
+          {
+          int oldest = (int)(head_ & mask_);
+          sources_[oldest] = null;
+          statistics_[oldest] = null;
+          ++head_;
+          dropped_.incrementAndGet();
+          }
+        else
+          {
+          try { notFull_.await(); }
+          catch (InterruptedException e)
+            {
+            Thread.currentThread().interrupt();
+            dropped_.incrementAndGet();
+            return;
+            }
+
+          if (closed_)
+            {
+            dropped_.incrementAndGet();
+            return;
+            }
+          }
+        }
+
+      int slot = (int)(tail_ & mask_);
+      sources_[slot] = source;
+      statistics_[slot] = statistics;
+      enqueueTimes_[slot] = System.currentTimeMillis();
+      ++tail_;
+      enqueued_.incrementAndGet();
+      notEmpty_.signal();
+      }
+    finally
+      {
+      lock_.unlock();
+      }
+    }
+
+
+  /**
+   * Deliver any queued samples and stop the worker, waiting at most
+   * CLOSE_TIMEOUT for the queue to drain.
+   *
+   * @return false if the queue was already closed
+   */
+  boolean close()
+    {
+    lock_.lock();
+    try
+      {
+      if (closed_)
+        return false;
+
+      closed_ = true;
+      notEmpty_.signalAll();
+      notFull_.signalAll();
+      }
+    finally
+      {
+      lock_.unlock();
+      }
+
+    if (!join(CLOSE_TIMEOUT))
+      {
+      int discarded = discard();
+      logger_.warning("Worker " + worker_.getName() + " still delivering "
+                      + "after " + CLOSE_TIMEOUT + " ms, interrupting it "
+                      + "and dropping " + discarded + " queued samples.");
+      worker_.interrupt();
+      if (!join(INTERRUPT_TIMEOUT))
+        logger_.severe("Worker " + worker_.getName() + " did not stop.");
+      }
+
+    return true;
+    }
+
+
+  /**
+   * Wait for the worker to finish.
+   *
+   * @return true if the worker has stopped
+   */
+  private boolean join(long timeout)
+    {
+    try { worker_.join(timeout); }
+    catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+
+    return !worker_.isAlive();
+    }
+
+
+  /**
+   * Drop every queued sample, so the worker stops after its current
+   * delivery.
+   *
+   * @return The number of samples dropped
+   */
+  private int discard()
+    {
+    lock_.lock();
+    try
+      {
+      int discarded = (int)(tail_ - head_);
+      for (;head_ < tail_;head_++)
+        {
+        int slot = (int)(head_ & mask_);
+        sources_[slot] = null;
+        statistics_[slot] = null;
+        }
+      dropped_.addAndGet(discarded);
+      return discarded;
+      }
+    finally
+      {
+      lock_.unlock();
+      }
+    }
+
+
+  /**
+   * Return true if the worker has stopped, so nothing more will be
+   * delivered.  A closed queue whose worker has not stopped must not
+   * have its target closed under it.
+   */
+  boolean stopped() { return !worker_.isAlive(); }
+}  // end SampleQueue
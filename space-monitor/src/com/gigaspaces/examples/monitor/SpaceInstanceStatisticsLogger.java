@@ -0,0 +1,20 @@
+/**
+ * SpaceInstanceStatisticsLogger is an interface that must be implemented
+ * by statistics loggers that can also log the statistics of individual
+ * space instances, when SpaceMonitor runs in per-instance mode.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+
+public interface SpaceInstanceStatisticsLogger extends SpaceStatisticsLogger
+{
+  public void log(SpaceInstance spaceInstance,
+                  SpaceInstanceStatistics statistics);
+}  // end SpaceInstanceStatisticsLogger
@@ -0,0 +1,155 @@
+/**
+ * SpaceInstanceStatisticsParser parses the statistics of a single space
+ * instance into a SpaceMetricSink, so that load on individual partitions
+ * can be seen.  The metrics are keyed by an instance tag of the form
+ * <partition-id>:<backup-id>@<host>, for example 3:0@host1, and include
+ * the current role of the instance, its object count, its read, write
+ * and take rates and, when it replicates, the size of its redo log.
+ *
+ * Tags are built once for each instance and kept in arrays indexed by
+ * space name id, partition id and backup id, so memory use is bounded
+ * by the number of instances and no objects are created per sample.  A
+ * tag is rebuilt only when its instance moves to another host.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.util.Arrays;
+
+import com.gigaspaces.cluster.activeelection.SpaceMode;
+
+import com.j_spaces.core.filters.ReplicationStatistics;
+
+import org.openspaces.admin.machine.Machine;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+import org.openspaces.admin.space.SpacePartition;
+
+import static com.gigaspaces.examples.monitor.MetricType.*;
+
+public class SpaceInstanceStatisticsParser
+{
+  private static final String UNKNOWN_HOST = "unknown";
+
+  private static Logger logger_
+    = Logger.getLogger(SpaceInstanceStatisticsParser.class.getName());
+
+  private SpaceTags[] spaces_ = new SpaceTags[0];  // by space name id
+
+  /**
+   * SpaceTags holds the tags of the instances of one space, and the host
+   * each tag was built for, indexed by partition id and backup id.
+   */
+  private static class SpaceTags
+  {
+    private String[][] tags_ = new String[0][];
+    private String[][] hosts_ = new String[0][];
+  }  // end SpaceTags
+
+
+  /**
+   * Return the tag of an instance, building it if the instance is new or
+   * has moved to another host.
+   */
+  private String tag(SpaceName spaceName,
+                     int partitionId,
+                     int backupId,
+                     String host)
+    {
+    if (spaceName.id() >= spaces_.length)
+      spaces_ = Arrays.copyOf(spaces_,
+                              Math.max(spaceName.id() + 1,
+                                       SpaceName.count()));
+
+    SpaceTags space = spaces_[spaceName.id()];
+    if (space == null)
+      {
+      space = new SpaceTags();
+      spaces_[spaceName.id()] = space;
+      }
+
+    if (partitionId >= space.tags_.length)
+      {
+      space.tags_ = Arrays.copyOf(space.tags_,partitionId + 1);
+      space.hosts_ = Arrays.copyOf(space.hosts_,partitionId + 1);
+      }
+
+    String[] tags = space.tags_[partitionId];
+    String[] hosts = space.hosts_[partitionId];
+    if ((tags == null) || (backupId >= tags.length))
+      {
+      tags = (tags == null)
+        ? new String[backupId + 1] : Arrays.copyOf(tags,backupId + 1);
+      hosts = (hosts == null)
+        ? new String[backupId + 1] : Arrays.copyOf(hosts,backupId + 1);
+      space.tags_[partitionId] = tags;
+      space.hosts_[partitionId] = hosts;
+      }
+
+    if (!host.equals(hosts[backupId]))
+      {
+      hosts[backupId] = host;
+      tags[backupId] = partitionId + ":" + backupId + "@" + host;
+      }
+
+    return tags[backupId];
+    }
+
+
+  /**
+   * Parse the statistics of a space instance into the passed sink.  The
+   * metrics are reported under the name of the instance's space.
+   *
+   * @param spaceInstance The instance the statistics were collected from
+   * @param statistics The statistics to parse
+   * @param sink The sink that receives each metric
+   */
+  public void parse(SpaceInstance spaceInstance,
+                    SpaceInstanceStatistics statistics,
+                    SpaceMetricSink sink)
+    {
+    if (statistics.isNA())
+      {
+      logger_.warning("Space instance statistics unavailable.");
+      return;
+      }
+
+    SpaceName spaceName = SpaceName.of(spaceInstance.getSpace().getName());
+    SpacePartition partition = spaceInstance.getPartition();
+    int partitionId = (partition != null)
+      ? partition.getPartitionId() : spaceInstance.getInstanceId() - 1;
+    Machine machine = spaceInstance.getMachine();
+    String host = (machine != null) ? machine.getHostName() : UNKNOWN_HOST;
+    String tag = tag(spaceName,
+                     Math.max(0,partitionId),
+                     Math.max(0,spaceInstance.getBackupId()),
+                     host);
+
+    sink.begin(statistics.getTimestamp(),spaceName);
+
+    sink.metric(INSTANCE_PRIMARY,
+                tag,
+                (spaceInstance.getMode() == SpaceMode.PRIMARY) ? 1L : 0L);
+    sink.metric(INSTANCE_OBJECT_COUNT,tag,statistics.getObjectCount());
+    sink.metric(INSTANCE_READ_PER_SECOND,tag,statistics.getReadPerSecond());
+    sink.metric(INSTANCE_WRITE_PER_SECOND,
+                tag,
+                statistics.getWritePerSecond());
+    sink.metric(INSTANCE_TAKE_PER_SECOND,tag,statistics.getTakePerSecond());
+
+    ReplicationStatistics replication = statistics.getReplicationStatistics();
+    if ((replication != null)
+        && (replication.getOutgoingReplication() != null))
+      sink.metric(INSTANCE_REDO_LOG_SIZE,
+                  tag,
+                  replication.getOutgoingReplication().getRedoLogSize());
+
+    sink.end();
+    }
+}  // end SpaceInstanceStatisticsParser
@@ -1,6 +1,8 @@
 /**
- * SpaceMetric is a wrapper around the metrics returned SpaceMonitor to
- * allow them to be written to a space.
+ * SpaceMetric is a typed representation of a single metric produced by
+ * SpaceMonitor, suitable for writing to a space.  The value is held as a
+ * number so that metrics can be queried by range, and the id is
+ * generated by the space rather than built from the metric itself.
  *
  * @author Patrick May (patrick.may@gigaspaces.com)
  * @author &copy; 2014 Patrick May
@@ -20,10 +22,14 @@ import java.util.Date;
 @SpaceClass
 public class SpaceMetric
 {
-  private String rawMetric_ = null;
+  private String id_ = null;
   private Date timestamp_ = null;
   private String spaceName_ = null;
   private String metricType_ = null;
+  private String key_ = null;
+  private Double value_ = null;
+  private Long longValue_ = null;
+  private double[] values_ = null;
 
   /**
    * The default constructor for the SpaceMetric class.
@@ -32,36 +38,176 @@ public class SpaceMetric
     {
     }
 
-  
+
   /**
-   * The full constructor for the SpaceMetric class.
+   * A constructor for the SpaceMetric class for metrics with a floating
+   * point value.
+   *
+   * @param timestamp The time the metric was sampled
+   * @param spaceName The name of the monitored space
+   * @param metricType The type of the metric
+   * @param key The qualifier of the metric, such as a class name, or null
+   * @param value The value of the metric
+   */
+  public SpaceMetric(Date timestamp,
+                     String spaceName,
+                     String metricType,
+                     String key,
+                     double value)
+    {
+    timestamp_ = timestamp;
+    spaceName_ = spaceName;
+    metricType_ = metricType;
+    key_ = key;
+    value_ = Double.valueOf(value);
+    }
+
+
+  /**
+   * A constructor for the SpaceMetric class for metrics with an integral
+   * value.  The value is available exactly from getLongValue() and, for
+   * range queries, from getValue().
+   */
+  public SpaceMetric(Date timestamp,
+                     String spaceName,
+                     String metricType,
+                     String key,
+                     long value)
+    {
+    this(timestamp,spaceName,metricType,key,(double)value);
+    longValue_ = Long.valueOf(value);
+    }
+
+
+  /**
+   * A constructor for the SpaceMetric class for metrics with several
+   * values.
+   */
+  public SpaceMetric(Date timestamp,
+                     String spaceName,
+                     String metricType,
+                     double[] values)
+    {
+    timestamp_ = timestamp;
+    spaceName_ = spaceName;
+    metricType_ = metricType;
+    values_ = values;
+    }
+
+
+  /**
+   * A constructor for the SpaceMetric class that parses a CSV formatted
+   * metric from SpaceMonitor.  A single trailing value is stored as the
+   * value, a key and a value as a keyed metric and anything else as an
+   * array of values.  The space name and metric type are interned, so
+   * metrics parsed from a large file share their strings.
    *
    * @param rawMetric The CSV formatted metric from SpaceMonitor
    */
   public SpaceMetric(String rawMetric)
     {
-    rawMetric_ = new String(rawMetric);
-
     String[] components = rawMetric.split(",");
     timestamp_ = new Date(Long.parseLong(components[0]));
-    spaceName_ = new String(components[1]);
-    metricType_ = new String(components[2]);
+    spaceName_ = SpaceName.of(components[1]).name();
+    metricType_ = MetricType.named(components[2]).name();
+
+    int valueCount = components.length - 3;
+    if (valueCount == 1)
+      setParsedValue(components[3]);
+    else if ((valueCount == 2) && !isNumber(components[3]))
+      {
+      key_ = components[3];
+      setParsedValue(components[4]);
+      }
+    else
+      {
+      values_ = new double[valueCount];
+      for (int i = 0;i < valueCount;i++)
+        values_[i] = Double.parseDouble(components[i + 3]);
+      }
+    }
+
+
+  private static boolean isNumber(String value)
+    {
+    try
+      {
+      Double.parseDouble(value);
+      return true;
+      }
+    catch (NumberFormatException e)
+      {
+      return false;
+      }
+    }
+
+
+  private void setParsedValue(String value)
+    {
+    try
+      {
+      longValue_ = Long.valueOf(value);
+      value_ = Double.valueOf(longValue_.doubleValue());
+      }
+    catch (NumberFormatException e)
+      {
+      value_ = Double.valueOf(value);
+      }
     }
 
 
   // Accessors / mutators required by GigaSpaces
-  @SpaceId(autoGenerate = false)
-  public String getRawMetric() { return rawMetric_; }
-  public void setRawMetric(String rawMetric) { rawMetric_ = rawMetric; }
+  @SpaceId(autoGenerate = true)
+  public String getId() { return id_; }
+  public void setId(String id) { id_ = id; }
 
   @SpaceIndex(type = SpaceIndexType.EXTENDED)
   public Date getTimestamp() { return timestamp_; }
   public void setTimestamp(Date timestamp) { timestamp_ = timestamp; }
 
+  @SpaceIndex
   public String getSpaceName() { return spaceName_; }
   public void setSpaceName(String spaceName) { spaceName_ = spaceName; }
 
   @SpaceIndex
   public String getMetricType() { return metricType_; }
   public void setMetricType(String metricType) { metricType_ = metricType; }
+
+  public String getKey() { return key_; }
+  public void setKey(String key) { key_ = key; }
+
+  @SpaceIndex(type = SpaceIndexType.EXTENDED)
+  public Double getValue() { return value_; }
+  public void setValue(Double value) { value_ = value; }
+
+  public Long getLongValue() { return longValue_; }
+  public void setLongValue(Long longValue) { longValue_ = longValue; }
+
+  public double[] getValues() { return values_; }
+  public void setValues(double[] values) { values_ = values; }
+
+
+  /**
+   * Return the metric in the CSV format produced by SpaceMonitor.
+   */
+  public String toString()
+    {
+    StringBuilder csv = new StringBuilder();
+    csv.append(timestamp_ == null ? 0 : timestamp_.getTime())
+      .append(',').append(spaceName_)
+      .append(',').append(metricType_);
+
+    if (key_ != null)
+      csv.append(',').append(key_);
+
+    if (longValue_ != null)
+      csv.append(',').append(longValue_);
+    else if (value_ != null)
+      csv.append(',').append(value_);
+    else if (values_ != null)
+      for (double value : values_)
+        csv.append(',').append(value);
+
+    return csv.toString();
+    }
 }  // end SpaceMetric
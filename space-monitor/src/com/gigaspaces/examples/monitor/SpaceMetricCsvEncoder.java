@@ -0,0 +1,296 @@
+/**
+ * SpaceMetricCsvEncoder encodes metrics as UTF-8 comma-separated value
+ * rows directly into a ByteBuffer, without creating any intermediate
+ * strings or boxed values.  If a row does not fit, the buffer is replaced
+ * with one twice the size, so callers must always use buffer() to obtain
+ * the current buffer.  Space names and metric types are copied from
+ * their cached UTF-8 encodings.
+ *
+ * Doubles are written with at most six fractional digits.  Values too
+ * large or too small for that representation fall back to
+ * Double.toString().
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+public class SpaceMetricCsvEncoder implements SpaceMetricSink
+{
+  private static final int FRACTION_DIGITS = 6;
+  private static final long FRACTION_SCALE = 1000000L;
+  private static final double MAX_FIXED = 1e15;
+  private static final double MIN_FIXED = 1e-6;
+
+  private ByteBuffer buffer_ = null;
+  private byte[] digits_ = new byte[20];
+  private long timestamp_ = 0;
+  private SpaceName spaceName_ = null;
+
+  /**
+   * The full constructor for the SpaceMetricCsvEncoder class.
+   *
+   * @param buffer The buffer to encode rows into
+   */
+  public SpaceMetricCsvEncoder(ByteBuffer buffer)
+    {
+    buffer_ = buffer;
+    }
+
+
+  /**
+   * Return the buffer currently being encoded into.
+   */
+  public ByteBuffer buffer() { return buffer_; }
+
+
+  /**
+   * Replace the buffer with one twice the size, preserving its contents.
+   */
+  private void grow()
+    {
+    ByteBuffer larger = buffer_.isDirect()
+      ? ByteBuffer.allocateDirect(buffer_.capacity() * 2)
+      : ByteBuffer.allocate(buffer_.capacity() * 2);
+
+    buffer_.flip();
+    larger.put(buffer_);
+    buffer_ = larger;
+    }
+
+
+  private void putString(String value)
+    {
+    int length = value.length();
+    for (int i = 0;i < length;i++)
+      {
+      char c = value.charAt(i);
+      if (c < 0x80)
+        buffer_.put((byte)c);
+      else if (c < 0x800)
+        {
+        buffer_.put((byte)(0xc0 | (c >> 6)));
+        buffer_.put((byte)(0x80 | (c & 0x3f)));
+        }
+      else if (Character.isHighSurrogate(c)
+               && (i + 1 < length)
+               && Character.isLowSurrogate(value.charAt(i + 1)))
+        {
+        int codePoint = Character.toCodePoint(c,value.charAt(++i));
+        buffer_.put((byte)(0xf0 | (codePoint >> 18)));
+        buffer_.put((byte)(0x80 | ((codePoint >> 12) & 0x3f)));
+        buffer_.put((byte)(0x80 | ((codePoint >> 6) & 0x3f)));
+        buffer_.put((byte)(0x80 | (codePoint & 0x3f)));
+        }
+      else
+        {
+        buffer_.put((byte)(0xe0 | (c >> 12)));
+        buffer_.put((byte)(0x80 | ((c >> 6) & 0x3f)));
+        buffer_.put((byte)(0x80 | (c & 0x3f)));
+        }
+      }
+    }
+
+
+  private void putLong(long value)
+    {
+    if (value == Long.MIN_VALUE)
+      {
+      putString(Long.toString(value));
+      return;
+      }
+
+    if (value < 0)
+      {
+      buffer_.put((byte)'-');
+      value = -value;
+      }
+
+    int count = 0;
+    do
+      {
+      digits_[count++] = (byte)('0' + (value % 10));
+      value /= 10;
+      }
+    while (value != 0);
+
+    while (count > 0)
+      buffer_.put(digits_[--count]);
+    }
+
+
+  private void putDouble(double value)
+    {
+    double magnitude = Math.abs(value);
+    if (Double.isNaN(value)
+        || (magnitude >= MAX_FIXED)
+        || ((magnitude < MIN_FIXED) && (magnitude != 0.0)))
+      {
+      putString(Double.toString(value));
+      return;
+      }
+
+    long whole = (long)magnitude;
+    long fraction = Math.round((magnitude - whole) * FRACTION_SCALE);
+    if (fraction == FRACTION_SCALE)
+      {
+      ++whole;
+      fraction = 0;
+      }
+
+    if ((value < 0) && ((whole != 0) || (fraction != 0)))
+      buffer_.put((byte)'-');
+    putLong(whole);
+    buffer_.put((byte)'.');
+
+    if (fraction == 0)
+      buffer_.put((byte)'0');
+    else
+      {
+      int digits = FRACTION_DIGITS;
+      while (fraction % 10 == 0)
+        {
+        fraction /= 10;
+        --digits;
+        }
+
+      for (int i = digits - 1;i >= 0;i--)
+        {
+        digits_[i] = (byte)('0' + (fraction % 10));
+        fraction /= 10;
+        }
+      buffer_.put(digits_,0,digits);
+      }
+    }
+
+
+  private void putPrefix(MetricType metricType)
+    {
+    putLong(timestamp_);
+    buffer_.put((byte)',');
+    buffer_.put(spaceName_.utf8Name());
+    buffer_.put((byte)',');
+    buffer_.put(metricType.utf8Name());
+    }
+
+
+  /**
+   * Start a sample.  This method is inherited from SpaceMetricSink.
+   */
+  public void begin(long timestamp,SpaceName spaceName)
+    {
+    timestamp_ = timestamp;
+    spaceName_ = spaceName;
+    }
+
+
+  /**
+   * Encode a row with a long value.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,long value)
+    {
+    int start = buffer_.position();
+    try
+      {
+      putPrefix(metricType);
+      buffer_.put((byte)',');
+      putLong(value);
+      buffer_.put((byte)'\n');
+      }
+    catch (BufferOverflowException e)
+      {
+      buffer_.position(start);
+      grow();
+      metric(metricType,value);
+      }
+    }
+
+
+  /**
+   * Encode a row with a double value.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,double value)
+    {
+    int start = buffer_.position();
+    try
+      {
+      putPrefix(metricType);
+      buffer_.put((byte)',');
+      putDouble(value);
+      buffer_.put((byte)'\n');
+      }
+    catch (BufferOverflowException e)
+      {
+      buffer_.position(start);
+      grow();
+      metric(metricType,value);
+      }
+    }
+
+
+  /**
+   * Encode a row with a key and a long value.  This method is inherited
+   * from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,String key,long value)
+    {
+    int start = buffer_.position();
+    try
+      {
+      putPrefix(metricType);
+      buffer_.put((byte)',');
+      putString(key);
+      buffer_.put((byte)',');
+      putLong(value);
+      buffer_.put((byte)'\n');
+      }
+    catch (BufferOverflowException e)
+      {
+      buffer_.position(start);
+      grow();
+      metric(metricType,key,value);
+      }
+    }
+
+
+  /**
+   * Encode a row with a key and a double value.  This method is
+   * inherited from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,String key,double value)
+    {
+    int start = buffer_.position();
+    try
+      {
+      putPrefix(metricType);
+      buffer_.put((byte)',');
+      putString(key);
+      buffer_.put((byte)',');
+      putDouble(value);
+      buffer_.put((byte)'\n');
+      }
+    catch (BufferOverflowException e)
+      {
+      buffer_.position(start);
+      grow();
+      metric(metricType,key,value);
+      }
+    }
+
+
+  /**
+   * Finish the current sample.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void end()
+    {
+    spaceName_ = null;
+    }
+}  // end SpaceMetricCsvEncoder
@@ -0,0 +1,319 @@
+/**
+ * SpaceMetricDeltaFilter passes on only those metrics whose value has
+ * changed by more than a configured epsilon since it was last passed on
+ * for the same space.  Every metric is passed on at least once in every
+ * snapshotInterval samples carrying it, so that readers can
+ * resynchronize.  Metrics without a key count the samples of the space
+ * that carry them, and keyed metrics, such as those of each space
+ * instance, count the samples carrying their key, so that instance
+ * samples interleaved with the samples of a space never shift its
+ * snapshots.  State is kept in arrays indexed by space name and metric
+ * type ids.
+ *
+ * State does not outlive what it describes.  A key that was not carried
+ * by any sample of its space for a whole snapshot interval is passed on
+ * one last time, with a value of zero, when the next snapshot of the
+ * space ends, and then forgotten.  A space with no samples for
+ * EVICTION_INTERVALS of the longest gap seen between samples of a space
+ * is forgotten entirely.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+public class SpaceMetricDeltaFilter implements SpaceMetricSink
+{
+  public static final int EVICTION_INTERVALS = 3;
+
+  private double epsilon_ = 0.0;
+  private int snapshotInterval_ = 1;
+  private SpaceState[] states_ = new SpaceState[0];  // by space name id
+  private SpaceMetricSink target_ = null;
+  private SpaceState current_ = null;
+  private boolean counted_ = false;  // current sample counted by the space
+  private boolean snapshot_ = false;  // for metrics without a key
+  private long interval_ = 0;  // longest gap between samples of a space
+  private long nextEviction_ = 0;
+
+  /**
+   * SpaceState holds the last value passed on for each metric of a
+   * space, indexed by metric type id, NaN if none has been, the number
+   * of samples of the space carrying metrics without a key and the
+   * number of those that were snapshots, which ages the keyed values.
+   */
+  private static class SpaceState
+  {
+    private int samples_ = 0;
+    private int snapshots_ = 0;
+    private long lastTimestamp_ = 0;
+    private double[] values_ = new double[0];
+    private HashMap<MetricType,HashMap<String,KeyedValue>> keyedValues_
+      = new HashMap<MetricType,HashMap<String,KeyedValue>>();
+
+    /**
+     * Return the values, grown to hold the passed metric type.
+     */
+    private double[] values(MetricType metricType)
+      {
+      if (metricType.id() >= values_.length)
+        {
+        int length = values_.length;
+        values_ = Arrays.copyOf(values_,
+                                Math.max(metricType.id() + 1,
+                                         MetricType.count()));
+        Arrays.fill(values_,length,values_.length,Double.NaN);
+        }
+
+      return values_;
+      }
+  }  // end SpaceState
+
+
+  /**
+   * KeyedValue holds the last value passed on for one key of a keyed
+   * metric, in a single element array so that it can be updated in
+   * place, the number of samples that carried the key and the snapshot
+   * of the space it was last carried in.
+   */
+  private static class KeyedValue
+  {
+    private double[] value_ = new double[] { Double.NaN };
+    private int samples_ = 0;
+    private int snapshot_ = 0;
+    private boolean double_ = false;
+  }  // end KeyedValue
+
+
+  /**
+   * The full constructor for the SpaceMetricDeltaFilter class.
+   *
+   * @param epsilon The change in value below which a metric is suppressed
+   * @param snapshotInterval Pass on every metric once in this many samples
+   */
+  public SpaceMetricDeltaFilter(double epsilon,int snapshotInterval)
+    {
+    epsilon_ = epsilon;
+    snapshotInterval_ = Math.max(1,snapshotInterval);
+    }
+
+
+  /**
+   * Set the sink that receives the filtered metrics.
+   */
+  public void setTarget(SpaceMetricSink target) { target_ = target; }
+
+
+  /**
+   * Determine whether a value should be passed on and, if so, remember
+   * it.  Comparisons are made against the last value passed on, so slow
+   * drift is eventually reported.  A NaN previous value, meaning none,
+   * always compares as changed.
+   */
+  private boolean changed(double[] values,
+                          int index,
+                          double value,
+                          boolean snapshot)
+    {
+    if (snapshot || !(Math.abs(value - values[index]) <= epsilon_))
+      {
+      values[index] = value;
+      return true;
+      }
+
+    return false;
+    }
+
+
+  /**
+   * Forget the spaces that have had no samples for EVICTION_INTERVALS of
+   * the longest gap between samples, checking at most once per gap.
+   */
+  private void evictIdleSpaces(long timestamp)
+    {
+    if ((interval_ == 0) || (timestamp < nextEviction_))
+      return;
+
+    nextEviction_ = timestamp + interval_;
+    for (int i = 0;i < states_.length;i++)
+      if ((states_[i] != null)
+          && (timestamp - states_[i].lastTimestamp_
+              > EVICTION_INTERVALS * interval_))
+        states_[i] = null;
+    }
+
+
+  /**
+   * Start a sample.  This method is inherited from SpaceMetricSink.
+   */
+  public void begin(long timestamp,SpaceName spaceName)
+    {
+    if (spaceName.id() >= states_.length)
+      states_ = Arrays.copyOf(states_,
+                              Math.max(spaceName.id() + 1,
+                                       SpaceName.count()));
+
+    current_ = states_[spaceName.id()];
+    if (current_ == null)
+      {
+      current_ = new SpaceState();
+      states_[spaceName.id()] = current_;
+      }
+    else if (timestamp > current_.lastTimestamp_)
+      interval_ = Math.max(interval_,timestamp - current_.lastTimestamp_);
+
+    current_.lastTimestamp_ = Math.max(current_.lastTimestamp_,timestamp);
+    evictIdleSpaces(timestamp);
+    counted_ = false;
+
+    target_.begin(timestamp,spaceName);
+    }
+
+
+  /**
+   * Count the current sample as one of the space, the first time it
+   * carries a metric without a key, and decide whether it is a snapshot.
+   * Instance samples carry only keyed metrics, so they are not counted.
+   */
+  private void count()
+    {
+    if (!counted_)
+      {
+      snapshot_ = (current_.samples_ % snapshotInterval_ == 0);
+      ++current_.samples_;
+      if (snapshot_)
+        ++current_.snapshots_;
+      counted_ = true;
+      }
+    }
+
+
+  /**
+   * Pass on a long metric if it has changed.  This method is inherited
+   * from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,long value)
+    {
+    count();
+    if (changed(current_.values(metricType),metricType.id(),value,snapshot_))
+      target_.metric(metricType,value);
+    }
+
+
+  /**
+   * Pass on a double metric if it has changed.  This method is inherited
+   * from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,double value)
+    {
+    count();
+    if (changed(current_.values(metricType),metricType.id(),value,snapshot_))
+      target_.metric(metricType,value);
+    }
+
+
+  /**
+   * Determine whether a keyed value should be passed on, counting the
+   * sample against its key.
+   */
+  private boolean changed(MetricType metricType,
+                          String key,
+                          double value,
+                          boolean isDouble)
+    {
+    HashMap<String,KeyedValue> values
+      = current_.keyedValues_.get(metricType);
+    if (values == null)
+      {
+      values = new HashMap<String,KeyedValue>();
+      current_.keyedValues_.put(metricType,values);
+      }
+
+    KeyedValue previous = values.get(key);
+    if (previous == null)
+      {
+      previous = new KeyedValue();
+      values.put(key,previous);
+      }
+
+    boolean snapshot = (previous.samples_ % snapshotInterval_ == 0);
+    ++previous.samples_;
+    previous.snapshot_ = current_.snapshots_;
+    previous.double_ = isDouble;
+
+    return changed(previous.value_,0,value,snapshot);
+    }
+
+
+  /**
+   * Pass on a keyed long metric if it has changed.  This method is
+   * inherited from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,String key,long value)
+    {
+    if (changed(metricType,key,value,false))
+      target_.metric(metricType,key,value);
+    }
+
+
+  /**
+   * Pass on a keyed double metric if it has changed.  This method is
+   * inherited from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,String key,double value)
+    {
+    if (changed(metricType,key,value,true))
+      target_.metric(metricType,key,value);
+    }
+
+
+  /**
+   * Pass on a final zero for, and forget, every key not carried since
+   * before the previous snapshot of the current space.
+   */
+  private void expireKeys()
+    {
+    for (Map.Entry<MetricType,HashMap<String,KeyedValue>> values
+           : current_.keyedValues_.entrySet())
+      {
+      MetricType metricType = values.getKey();
+      Iterator<Map.Entry<String,KeyedValue>> entries
+        = values.getValue().entrySet().iterator();
+      while (entries.hasNext())
+        {
+        Map.Entry<String,KeyedValue> entry = entries.next();
+        KeyedValue keyedValue = entry.getValue();
+        if (keyedValue.snapshot_ >= current_.snapshots_ - 1)
+          continue;
+
+        entries.remove();
+        if (keyedValue.double_)
+          target_.metric(metricType,entry.getKey(),0.0);
+        else
+          target_.metric(metricType,entry.getKey(),0L);
+        }
+      }
+    }
+
+
+  /**
+   * Finish the current sample, expiring missing keys if it was a
+   * snapshot of the space.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void end()
+    {
+    if (counted_ && snapshot_)
+      expireKeys();
+
+    target_.end();
+    current_ = null;
+    }
+}  // end SpaceMetricDeltaFilter
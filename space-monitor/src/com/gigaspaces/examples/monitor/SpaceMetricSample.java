@@ -0,0 +1,158 @@
+/**
+ * SpaceMetricSample records one parsed sample, as passed to its
+ * SpaceMetricSink methods, so that it can be replayed into any number of
+ * other sinks without parsing the statistics again.  Metrics are held in
+ * parallel arrays, with doubles stored as raw long bits.  Once end() has
+ * been called the sample is not changed, so it may be replayed by
+ * several threads at once.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.Arrays;
+
+final class SpaceMetricSample implements SpaceMetricSink
+{
+  private static final byte KIND_LONG = 0;
+  private static final byte KIND_DOUBLE = 1;
+
+  private long timestamp_ = 0;
+  private SpaceName spaceName_ = null;
+  private int size_ = 0;
+  private MetricType[] metricTypes_ = null;
+  private String[] keys_ = null;
+  private byte[] kinds_ = null;
+  private long[] values_ = null;
+
+  /**
+   * The full constructor for the SpaceMetricSample class.
+   *
+   * @param capacity The number of metrics the sample is expected to hold
+   */
+  SpaceMetricSample(int capacity)
+    {
+    capacity = Math.max(1,capacity);
+    metricTypes_ = new MetricType[capacity];
+    keys_ = new String[capacity];
+    kinds_ = new byte[capacity];
+    values_ = new long[capacity];
+    }
+
+
+  int size() { return size_; }
+
+
+  /**
+   * Return true once begin() has been called.  Unavailable statistics
+   * are never begun.
+   */
+  boolean isRecorded() { return spaceName_ != null; }
+
+
+  private void add(MetricType metricType,String key,byte kind,long value)
+    {
+    if (size_ == values_.length)
+      {
+      int capacity = size_ * 2;
+      metricTypes_ = Arrays.copyOf(metricTypes_,capacity);
+      keys_ = Arrays.copyOf(keys_,capacity);
+      kinds_ = Arrays.copyOf(kinds_,capacity);
+      values_ = Arrays.copyOf(values_,capacity);
+      }
+
+    metricTypes_[size_] = metricType;
+    keys_[size_] = key;
+    kinds_[size_] = kind;
+    values_[size_] = value;
+    ++size_;
+    }
+
+
+  /**
+   * Start recording the sample.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void begin(long timestamp,SpaceName spaceName)
+    {
+    timestamp_ = timestamp;
+    spaceName_ = spaceName;
+    size_ = 0;
+    }
+
+
+  /**
+   * Record a long metric.  This method is inherited from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,long value)
+    {
+    add(metricType,null,KIND_LONG,value);
+    }
+
+
+  /**
+   * Record a double metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,double value)
+    {
+    add(metricType,null,KIND_DOUBLE,Double.doubleToRawLongBits(value));
+    }
+
+
+  /**
+   * Record a keyed long metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,String key,long value)
+    {
+    add(metricType,key,KIND_LONG,value);
+    }
+
+
+  /**
+   * Record a keyed double metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,String key,double value)
+    {
+    add(metricType,key,KIND_DOUBLE,Double.doubleToRawLongBits(value));
+    }
+
+
+  /**
+   * Finish recording the sample.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void end()
+    {
+    }
+
+
+  /**
+   * Pass the recorded sample to another sink.
+   */
+  void replay(SpaceMetricSink sink)
+    {
+    sink.begin(timestamp_,spaceName_);
+    for (int i = 0;i < size_;i++)
+      {
+      if (kinds_[i] == KIND_DOUBLE)
+        {
+        double value = Double.longBitsToDouble(values_[i]);
+        if (keys_[i] == null)
+          sink.metric(metricTypes_[i],value);
+        else
+          sink.metric(metricTypes_[i],keys_[i],value);
+        }
+      else if (keys_[i] == null)
+        sink.metric(metricTypes_[i],values_[i]);
+      else
+        sink.metric(metricTypes_[i],keys_[i],values_[i]);
+      }
+    sink.end();
+    }
+}  // end SpaceMetricSample
@@ -0,0 +1,39 @@
+/**
+ * SpaceMetricSink is an interface that must be implemented by all
+ * consumers of the metrics produced by SpaceStatisticsParser.  Values are
+ * passed as primitives, and space names and metric types as shared
+ * symbols with compact ids, so that implementations can encode them
+ * without intermediate objects.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+public interface SpaceMetricSink
+{
+  /**
+   * Start a sample.  All metrics up to the matching call to end() share
+   * the timestamp and space name.
+   */
+  public void begin(long timestamp,SpaceName spaceName);
+
+  public void metric(MetricType metricType,long value);
+
+  public void metric(MetricType metricType,double value);
+
+  /**
+   * Record a metric that is qualified by a key, such as the class name
+   * for class counts.
+   */
+  public void metric(MetricType metricType,String key,long value);
+
+  public void metric(MetricType metricType,String key,double value);
+
+  /**
+   * Finish the current sample.
+   */
+  public void end();
+}  // end SpaceMetricSink
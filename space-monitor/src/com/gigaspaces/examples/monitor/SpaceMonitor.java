@@ -1,6 +1,8 @@
 /**
  * SpaceMonitor monitors a running GigaSpaces XAP space, periodically
- * emitting metrics in CSV format.
+ * emitting metrics in CSV format.  In per-instance mode it also emits
+ * the metrics of each space instance, so that uneven load across
+ * partitions can be seen.
  *
  * @author Patrick May (patrick.may@gigaspaces.com)
  * @author &copy; 2014 Patrick May
@@ -11,13 +13,19 @@ package com.gigaspaces.examples.monitor;
 
 import java.util.logging.Logger;
 
+import java.io.IOException;
+
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 
 import org.openspaces.admin.AdminFactory;
 import org.openspaces.admin.Admin;
 import org.openspaces.admin.space.Space;
 import org.openspaces.admin.space.Spaces;
 import org.openspaces.admin.space.SpaceStatistics;
+import org.openspaces.admin.space.events.SpaceInstanceStatisticsChangedEvent;
+import org.openspaces.admin.space.events.SpaceInstanceStatisticsChangedEventListener;
 import org.openspaces.admin.space.events.SpaceStatisticsChangedEventListener;
 import org.openspaces.admin.space.events.SpaceStatisticsChangedEvent;
 
@@ -27,21 +35,21 @@ public class SpaceMonitor implements Runnable
 
   private static Logger logger_
     = Logger.getLogger(SpaceMonitor.class.getName());
-  private static Object threadMonitor = new Object();
 
+  private CountDownLatch stopped_ = new CountDownLatch(1);
   SpaceStatisticsLogger statisticsLogger_ = null;
   long interval_ = DEFAULT_STATISTICS_INTERVAL;
   String lookupGroups_ = null;
   String lookupLocators_ = null;
+  Admin admin_ = null;
+  boolean monitorInstances_ = false;
 
   /**
    * SpaceStatisticsListener listens for space statistics updates.
    */
   private class SpaceStatisticsListener
-    implements Runnable, SpaceStatisticsChangedEventListener
+    implements SpaceStatisticsChangedEventListener
   {
-    private boolean done_ = false;
-
     /**
      * The full constructor for the SpaceStatisticsListener class.
      */
@@ -61,50 +69,72 @@ public class SpaceMonitor implements Runnable
       else
         logger_.warning("Statistics are not available.");
       }
+  }  // end SpaceStatisticsListener
 
 
-    public boolean isDone() { return done_; }
-
+  /**
+   * SpaceInstanceStatisticsListener listens for space instance statistics
+   * updates in per-instance mode.
+   */
+  private class SpaceInstanceStatisticsListener
+    implements SpaceInstanceStatisticsChangedEventListener
+  {
+    private SpaceInstanceStatisticsLogger instanceLogger_ = null;
 
     /**
-     * Run until done.
+     * The full constructor for the SpaceInstanceStatisticsListener class.
      */
-    public void run()
+    public SpaceInstanceStatisticsListener(
+      SpaceInstanceStatisticsLogger instanceLogger)
       {
-      while (!isDone())
-        {
-        synchronized(threadMonitor)
-          {
-          try { threadMonitor.wait(); }
-          catch(InterruptedException e) { }
-          }
-        }
+      instanceLogger_ = instanceLogger;
       }
 
 
     /**
-     * Stop listening.
+     * Method called when space instance statistics have changed.  This
+     * method is inherited from the
+     * SpaceInstanceStatisticsChangedEventListener interface.
      */
-    public void done()
+    public void spaceInstanceStatisticsChanged(
+      SpaceInstanceStatisticsChangedEvent event)
       {
-      done_ = true;
-      threadMonitor.notifyAll();
+      if (!event.getStatistics().isNA())
+        instanceLogger_.log(event.getSpaceInstance(),event.getStatistics());
       }
-  }  // end SpaceStatisticsListener
+  }  // end SpaceInstanceStatisticsListener
 
 
   /**
    * The full constructor for the SpaceMonitor class.
+   *
+   * @param interval The statistics interval, in seconds, or 0 to leave
+   *                 the interval and the statistics monitor of a shared
+   *                 Admin to its owner
+   * @param admin The Admin instance to monitor, owned by the caller, or
+   *              null to create one from LOOKUPGROUPS and LOOKUPLOCATORS
    */
-  public SpaceMonitor(SpaceStatisticsLogger statisticsLogger,long interval)
+  public SpaceMonitor(SpaceStatisticsLogger statisticsLogger,
+                      long interval,
+                      Admin admin)
     {
     statisticsLogger_ = statisticsLogger;
     interval_ = interval;
+    admin_ = admin;
     lookupGroups_ = System.getenv("LOOKUPGROUPS");
     lookupLocators_ = System.getenv("LOOKUPLOCATORS");
     }
 
 
+  /**
+   * A constructor for the SpaceMonitor class that creates its own Admin.
+   */
+  public SpaceMonitor(SpaceStatisticsLogger statisticsLogger,long interval)
+    {
+    this(statisticsLogger,interval,null);
+    }
+
+
   /**
    * The full constructor for the SpaceMonitor class.
    */
@@ -114,50 +144,279 @@ public class SpaceMonitor implements Runnable
     }
 
 
-  private void waitForListener(SpaceStatisticsListener listener,
-                               Thread listenerThread)
+  public boolean isStopped() { return stopped_.getCount() == 0; }
+
+
+  /**
+   * Set whether the statistics of each space instance are logged as well
+   * as those of each space.  This takes effect when run() is called, and
+   * requires a SpaceInstanceStatisticsLogger.
+   */
+  public void setMonitorInstances(boolean monitorInstances)
+    {
+    monitorInstances_ = monitorInstances;
+    }
+
+
+  /**
+   * Stop monitoring.  run() returns as soon as it has cleaned up.
+   */
+  public void stop()
     {
-    while (!listener.isDone())
+    stopped_.countDown();
+    }
+
+
+  /**
+   * Wait until stopped, deferring any interrupt until then.
+   */
+  private void awaitStop()
+    {
+    boolean interrupted = false;
+    while (!isStopped())
       {
-      try
-        {
-        listenerThread.join();
-        }
-      catch (InterruptedException ignore)
+      try { stopped_.await(); }
+      catch (InterruptedException e)
         {
-        logger_.info("Listener interrupted.");
+        logger_.info("Monitor interrupted.");
+        interrupted = true;
         }
       }
+
+    if (interrupted)
+      Thread.currentThread().interrupt();
     }
 
 
   /**
-   * Run the SpaceMonitor.
+   * Run the SpaceMonitor until stopped.  Statistics are logged on the
+   * Admin API event thread; the calling thread only waits.  An Admin
+   * passed to the constructor is left open and monitoring statistics,
+   * and with an interval of 0 its statistics monitor is not touched.
    */
   public void run()
     {
-    AdminFactory factory = new AdminFactory();
-    if (lookupGroups_ != null)
-      factory.addGroups(lookupGroups_);
-    if (lookupLocators_ != null)
-      factory.addLocators(lookupLocators_);
+    Admin admin = admin_;
+    if (admin == null)
+      {
+      AdminFactory factory = new AdminFactory();
+      if (lookupGroups_ != null)
+        factory.addGroups(lookupGroups_);
+      if (lookupLocators_ != null)
+        factory.addLocators(lookupLocators_);
 
-    Admin admin = factory.createAdmin();
+      admin = factory.createAdmin();
+      }
 
     Spaces spaces = admin.getSpaces();
-    spaces.setStatisticsInterval(interval_,TimeUnit.SECONDS);
-    if (!spaces.isMonitoring())
-      spaces.startStatisticsMonitor();
+    if ((interval_ > 0) || (admin_ == null))
+      {
+      spaces.setStatisticsInterval(interval_,TimeUnit.SECONDS);
+      if (!spaces.isMonitoring())
+        spaces.startStatisticsMonitor();
+      }
 
     SpaceStatisticsListener listener = new SpaceStatisticsListener();
-    Thread listenerThread = new Thread(listener);
-    listenerThread.start();
     spaces.getSpaceStatisticsChanged().add(listener);
 
-    waitForListener(listener,listenerThread);
+    SpaceInstanceStatisticsListener instanceListener = null;
+    if (monitorInstances_)
+      {
+      if (statisticsLogger_ instanceof SpaceInstanceStatisticsLogger)
+        {
+        instanceListener = new SpaceInstanceStatisticsListener(
+          (SpaceInstanceStatisticsLogger)statisticsLogger_);
+        spaces.getSpaceInstanceStatisticsChanged().add(instanceListener);
+        }
+      else
+        logger_.warning("Logger cannot log space instance statistics.");
+      }
+
+    awaitStop();
+
+    if (instanceListener != null)
+      spaces.getSpaceInstanceStatisticsChanged().remove(instanceListener);
+    spaces.getSpaceStatisticsChanged().remove(listener);
+    // a shared Admin may have other statistics listeners
+    if (admin_ == null)
+      {
+      spaces.stopStatisticsMonitor();
+      admin.close();
+      }
+    statisticsLogger_.close();
+    }
+
+
+  /**
+   * Return the codec described by the monitor.file.compression system
+   * property:  none, the default, gzip, or the class name of a BlockCodec
+   * implementation with a public no argument constructor, such as an LZ4
+   * or Zstandard codec.  The gzip level is set by
+   * monitor.file.compressionLevel.
+   */
+  private static BlockCodec codec()
+    {
+    String compression = System.getProperty("monitor.file.compression",
+                                            "none");
+    if ("none".equals(compression))
+      return null;
+    if ("gzip".equals(compression))
+      return new GzipBlockCodec(
+        Integer.getInteger("monitor.file.compressionLevel",
+                           Deflater.DEFAULT_COMPRESSION));
+
+    try
+      {
+      return (BlockCodec)Class.forName(compression)
+        .getDeclaredConstructor().newInstance();
+      }
+    catch (Exception e)
+      {
+      throw new IllegalArgumentException("Unable to create codec "
+                                         + compression + ":  " + e);
+      }
+    }
+
+
+  /**
+   * Create the logger described by the monitor.* system properties.
+   * monitor.format selects CSV output, the default, or a binary journal.
+   * Intervals are specified in seconds.
+   */
+  private static SpaceStatisticsLogger fileLogger(String fileName)
+    throws IOException
+    {
+    if ("journal".equals(System.getProperty("monitor.format")))
+      return new SpaceStatisticsJournalLogger(
+        fileName,
+        Integer.getInteger("monitor.journal.segmentSize",
+                           SpaceStatisticsJournalLogger.DEFAULT_SEGMENT_SIZE));
+
+    return new SpaceStatisticsFileLogger(
+      fileName,
+      Integer.getInteger("monitor.file.bufferSize",
+                         SpaceStatisticsFileLogger.DEFAULT_BUFFER_SIZE),
+      TimeUnit.SECONDS.toMillis(Long.getLong("monitor.file.flushInterval",
+                                             5)),
+      Long.getLong("monitor.file.rotateSize",0),
+      TimeUnit.SECONDS.toMillis(Long.getLong("monitor.file.rotateInterval",
+                                             0)),
+      codec());
+    }
+
+
+  /**
+   * Place an aggregation stage in front of the passed logger, as
+   * described by the monitor.aggregate.* system properties, so that only
+   * rolling aggregates of the rate metrics are logged.  An interval of 0,
+   * the default, disables aggregation.  Intervals and windows are
+   * specified in seconds.
+   */
+  private static SpaceStatisticsLogger aggregated(
+    SpaceStatisticsLogger target)
+    {
+    long interval = Long.getLong("monitor.aggregate.interval",0);
+    if (interval == 0)
+      return target;
+
+    String[] windowSeconds
+      = System.getProperty("monitor.aggregate.windows","60,300,3600")
+      .split(",");
+    long[] windows = new long[windowSeconds.length];
+    for (int i = 0;i < windows.length;i++)
+      windows[i]
+        = TimeUnit.SECONDS.toMillis(Long.parseLong(windowSeconds[i].trim()));
+
+    return new SpaceStatisticsAggregator((SpaceMetricSink)target,
+                                         TimeUnit.SECONDS.toMillis(interval),
+                                         windows);
+    }
 
-    spaces.stopStatisticsMonitor();
-    admin.close();
+
+  private static int queueCapacity()
+    {
+    return Integer.getInteger("monitor.queue.capacity",
+                              SpaceStatisticsAsyncLogger.DEFAULT_CAPACITY);
+    }
+
+
+  private static SpaceStatisticsAsyncLogger.OverflowPolicy queuePolicy()
+    {
+    return SpaceStatisticsAsyncLogger.OverflowPolicy.valueOf(
+      System.getProperty("monitor.queue.policy","DROP_OLDEST"));
+    }
+
+
+  private static long queueLagThreshold()
+    {
+    return TimeUnit.SECONDS.toMillis(
+      Long.getLong("monitor.queue.lagThreshold",1));
+    }
+
+
+  /**
+   * Place the passed logger behind a bounded queue, as described by the
+   * monitor.queue.* system properties, so that slow output never blocks
+   * the Admin API event thread.  A capacity of 0 disables the queue.
+   */
+  private static SpaceStatisticsLogger queued(SpaceStatisticsLogger target)
+    {
+    int capacity = queueCapacity();
+    if (capacity == 0)
+      return target;
+
+    return new SpaceStatisticsAsyncLogger(target,capacity,queuePolicy(),
+                                          queueLagThreshold());
+    }
+
+
+  /**
+   * Create the logger for the outputs described by the monitor.* system
+   * properties.  Metrics are always logged to the passed file.  If
+   * monitor.space.url is set, they are also written to that metrics
+   * space, through a fan-out logger that parses each sample once and
+   * gives each output its own queue, as described by the monitor.queue.*
+   * properties, and its own delta filter.
+   */
+  private static SpaceStatisticsLogger outputs(String fileName)
+    throws IOException
+    {
+    String spaceURL = System.getProperty("monitor.space.url");
+    if (spaceURL == null)
+      return queued(aggregated(fileLogger(fileName)));
+
+    int capacity = queueCapacity();
+    if (capacity == 0)
+      capacity = SpaceStatisticsAsyncLogger.DEFAULT_CAPACITY;
+    double epsilon
+      = Double.parseDouble(System.getProperty("monitor.delta.epsilon","0"));
+    int snapshotInterval
+      = Integer.getInteger("monitor.delta.snapshotInterval",0);
+
+    SpaceStatisticsLogger fileLogger = aggregated(fileLogger(fileName));
+    // delta mode would hide unchanged rates from an aggregator
+    boolean filterFile = (snapshotInterval > 0)
+      && !(fileLogger instanceof SpaceStatisticsAggregator);
+
+    SpaceStatisticsFanOutLogger fanOut = new SpaceStatisticsFanOutLogger();
+    fanOut.addOutput(
+      (SpaceMetricSink)fileLogger,
+      capacity,
+      queuePolicy(),
+      queueLagThreshold(),
+      filterFile
+        ? new SpaceMetricDeltaFilter(epsilon,snapshotInterval) : null,
+      SpaceStatisticsFanOutLogger.DEFAULT_FAILURE_LIMIT);
+    fanOut.addOutput(
+      new SpaceStatisticsSpaceLogger(spaceURL),
+      capacity,
+      queuePolicy(),
+      queueLagThreshold(),
+      (snapshotInterval > 0)
+        ? new SpaceMetricDeltaFilter(epsilon,snapshotInterval) : null,
+      SpaceStatisticsFanOutLogger.DEFAULT_FAILURE_LIMIT);
+
+    return fanOut;
     }
 
 
@@ -166,17 +425,23 @@ public class SpaceMonitor implements Runnable
    *
    * @param args The command line arguments passed in.
    */
-  public static void main(String args[])
+  public static void main(String args[]) throws IOException
     {
     if ((args.length == 1) || (args.length == 2))
       {
+      final SpaceStatisticsLogger statisticsLogger = outputs(args[0]);
+      Runtime.getRuntime().addShutdownHook(new Thread()
+        {
+        public void run() { statisticsLogger.close(); }
+        });
+
       SpaceMonitor monitor = null;
       if (args.length == 1)
-        monitor = new SpaceMonitor(new SpaceStatisticsFileLogger(args[0]));
+        monitor = new SpaceMonitor(statisticsLogger);
       else
-        monitor = new SpaceMonitor(new SpaceStatisticsFileLogger(args[0]),
-                                   Long.parseLong(args[1]));
+        monitor = new SpaceMonitor(statisticsLogger,Long.parseLong(args[1]));
 
+      monitor.setMonitorInstances(Boolean.getBoolean("monitor.instances"));
       monitor.run();
       }
     else
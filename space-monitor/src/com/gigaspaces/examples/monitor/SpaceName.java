@@ -0,0 +1,95 @@
+/**
+ * SpaceName is the symbol table of monitored space names.  Each name is
+ * created once, given a compact integer id in order of first use and
+ * shared by every sample of that space, so samples carry a reference or
+ * an id rather than a copy of the name.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.nio.charset.Charset;
+
+import java.util.ArrayList;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class SpaceName
+{
+  private static Charset utf8_ = Charset.forName("UTF-8");
+  private static ConcurrentHashMap<String,SpaceName> byName_
+    = new ConcurrentHashMap<String,SpaceName>();
+  private static ArrayList<SpaceName> byId_ = new ArrayList<SpaceName>();
+
+  private int id_ = 0;
+  private String name_ = null;
+  private byte[] utf8Name_ = null;
+
+  private SpaceName(int id,String name)
+    {
+    id_ = id;
+    name_ = name;
+    utf8Name_ = name.getBytes(utf8_);
+    }
+
+
+  /**
+   * Return the symbol for the passed space name, adding it if necessary.
+   */
+  public static SpaceName of(String name)
+    {
+    SpaceName spaceName = byName_.get(name);
+    if (spaceName == null)
+      {
+      synchronized(byId_)
+        {
+        spaceName = byName_.get(name);
+        if (spaceName == null)
+          {
+          spaceName = new SpaceName(byId_.size(),name);
+          byId_.add(spaceName);
+          byName_.put(name,spaceName);
+          }
+        }
+      }
+
+    return spaceName;
+    }
+
+
+  /**
+   * Return the symbol with the passed id.
+   *
+   * @throws IndexOutOfBoundsException if no symbol has the id
+   */
+  public static SpaceName forId(int id)
+    {
+    synchronized(byId_) { return byId_.get(id); }
+    }
+
+
+  /**
+   * Return the number of space names in the table.  Every id is less
+   * than this.
+   */
+  public static int count()
+    {
+    synchronized(byId_) { return byId_.size(); }
+    }
+
+
+  public int id() { return id_; }
+  public String name() { return name_; }
+
+  /**
+   * Return the name encoded as UTF-8.  The array is shared and must not
+   * be modified.
+   */
+  byte[] utf8Name() { return utf8Name_; }
+
+  public int hashCode() { return id_; }
+  public String toString() { return name_; }
+}  // end SpaceName
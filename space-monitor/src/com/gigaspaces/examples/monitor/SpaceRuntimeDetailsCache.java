@@ -0,0 +1,207 @@
+/**
+ * SpaceRuntimeDetailsCache holds the most recently fetched object counts
+ * per class name of each space.  Fetching them, through
+ * Space.getRuntimeDetails(), is a remote call whose cost grows with the
+ * number of classes in the space, so it is done on a background thread
+ * no more than once per refresh interval for each space.  Callers never
+ * wait for a fetch:  get() returns the latest counts, along with the
+ * time they were fetched, and starts a refresh if they are stale.
+ *
+ * Each space has at most one fetch outstanding, so a fetch that hangs
+ * delays only the counts of its own space and never queues more work.
+ * A fetch still running well past the refresh interval is logged.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openspaces.admin.space.Space;
+
+public class SpaceRuntimeDetailsCache
+{
+  public static final long DEFAULT_REFRESH_INTERVAL = 60000;  // 1 minute
+
+  // how many refresh intervals a fetch may run before it is logged
+  private static final int OVERDUE_INTERVALS = 2;
+
+  private static Logger logger_
+    = Logger.getLogger(SpaceRuntimeDetailsCache.class.getName());
+
+  private static SpaceRuntimeDetailsCache shared_ = null;
+
+  private long refreshInterval_ = DEFAULT_REFRESH_INTERVAL;
+  private ConcurrentHashMap<SpaceName,Entry> entries_
+    = new ConcurrentHashMap<SpaceName,Entry>();
+  private ExecutorService fetcher_ = null;
+
+  /**
+   * Details holds the object counts of a space as of one fetch.
+   */
+  public static class Details
+  {
+    private Map<String,Integer> countPerClassName_ = null;
+    private long fetched_ = 0;
+
+    private Details(Map<String,Integer> countPerClassName,long fetched)
+      {
+      countPerClassName_ = countPerClassName;
+      fetched_ = fetched;
+      }
+
+
+    public Map<String,Integer> countPerClassName()
+      {
+      return countPerClassName_;
+      }
+
+
+    public long fetched() { return fetched_; }
+
+
+    /**
+     * Return the age, in milliseconds, of the counts at the passed time.
+     */
+    public long age(long now) { return Math.max(0,now - fetched_); }
+  }  // end Details
+
+
+  /**
+   * Entry holds the latest details of one space, the time a refresh was
+   * last started and whether it is still running.
+   */
+  private static class Entry
+  {
+    private volatile Details details_ = null;
+    private AtomicLong attempted_ = new AtomicLong(Long.MIN_VALUE / 2);
+    private AtomicBoolean inFlight_ = new AtomicBoolean(false);
+    private AtomicBoolean overdue_ = new AtomicBoolean(false);
+  }  // end Entry
+
+
+  /**
+   * The full constructor for the SpaceRuntimeDetailsCache class.
+   *
+   * @param refreshInterval The minimum time, in milliseconds, between
+   *                        fetches for a space
+   */
+  public SpaceRuntimeDetailsCache(long refreshInterval)
+    {
+    refreshInterval_ = refreshInterval;
+    // at most one thread per space, since each has one fetch outstanding
+    fetcher_ = Executors.newCachedThreadPool(
+      new DaemonThreadFactory("space-runtime-details"));
+    }
+
+
+  /**
+   * Return the cache shared by the parsers in this JVM, creating it if
+   * necessary.  Its refresh interval, in seconds, is set by the
+   * monitor.classCount.refreshInterval system property.
+   */
+  public static synchronized SpaceRuntimeDetailsCache shared()
+    {
+    if (shared_ == null)
+      shared_ = new SpaceRuntimeDetailsCache(
+        TimeUnit.SECONDS.toMillis(
+          Long.getLong("monitor.classCount.refreshInterval",
+                       TimeUnit.MILLISECONDS.toSeconds(
+                         DEFAULT_REFRESH_INTERVAL))));
+
+    return shared_;
+    }
+
+
+  /**
+   * Return the latest details of the passed space, or null if they have
+   * not been fetched yet.  If no refresh has been started within the
+   * refresh interval and none is running, a refresh is started in the
+   * background.
+   */
+  public Details get(final Space space)
+    {
+    SpaceName spaceName = SpaceName.of(space.getName());
+    Entry entry = entries_.get(spaceName);
+    if (entry == null)
+      {
+      Entry created = new Entry();
+      entry = entries_.putIfAbsent(spaceName,created);
+      if (entry == null)
+        entry = created;
+      }
+
+    long now = System.currentTimeMillis();
+    long attempted = entry.attempted_.get();
+    if (now - attempted < refreshInterval_)
+      return entry.details_;
+
+    if (entry.inFlight_.compareAndSet(false,true))
+      {
+      entry.attempted_.set(now);
+      entry.overdue_.set(false);
+      final Entry refreshed = entry;
+      try
+        {
+        fetcher_.execute(new Runnable()
+          {
+          public void run() { refresh(space,refreshed); }
+          });
+        }
+      catch (RuntimeException e)
+        {
+        entry.inFlight_.set(false);
+        logger_.warning("Unable to start a refresh of space "
+                        + space.getName() + ":  " + e);
+        }
+      }
+    else
+      {
+      // another caller may have just started the refresh
+      long running = now - entry.attempted_.get();
+      if ((running >= OVERDUE_INTERVALS * refreshInterval_)
+          && entry.overdue_.compareAndSet(false,true))
+        logger_.warning("Runtime details of space " + space.getName()
+                        + " still being fetched after " + running + " ms.");
+      }
+
+    return entry.details_;
+    }
+
+
+  /**
+   * Fetch the details of a space.  A failed fetch keeps the previous
+   * details and is retried after the refresh interval.
+   */
+  private void refresh(Space space,Entry entry)
+    {
+    try
+      {
+      Map<String,Integer> countPerClassName
+        = space.getRuntimeDetails().getCountPerClassName();
+      entry.details_
+        = new Details(countPerClassName,System.currentTimeMillis());
+      }
+    catch (RuntimeException e)
+      {
+      logger_.warning("Unable to fetch runtime details of space "
+                      + space.getName() + ":  " + e);
+      }
+    finally
+      {
+      entry.inFlight_.set(false);
+      }
+    }
+}  // end SpaceRuntimeDetailsCache
@@ -0,0 +1,343 @@
+/**
+ * SpaceStatisticsAggregator keeps rolling windows of the rate metrics of
+ * each space, such as read-per-second and write-per-second, and
+ * periodically emits only their aggregates to a SpaceMetricSink.  Raw
+ * samples are not passed on, so far less is stored downstream and
+ * readers need not aggregate the raw rows themselves.
+ *
+ * For each space, rate metric and window, the aggregates are emitted as
+ * double metrics named <metric>.<window>.<statistic>, where the
+ * statistics are count, min, max, mean, p50, p90 and p99, for example
+ * read-per-second.5m.p99.  Windows with no samples are skipped.  Each
+ * window is a RollingHistogram, so memory use is fixed however many
+ * samples arrive, and samples are recorded without locking while the
+ * aggregates are emitted on a separate thread.  A space with no samples
+ * for the longest window is forgotten.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.util.Map;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceStatistics;
+
+public class SpaceStatisticsAggregator
+  implements SpaceStatisticsLogger, SpaceMetricSink
+{
+  public static final long DEFAULT_EMIT_INTERVAL = 60000;  // 1 minute
+  public static final long[] DEFAULT_WINDOWS
+    = { 60000, 300000, 3600000 };  // 1 minute, 5 minutes, 1 hour
+
+  private static final double SCALE = 1000.0;  // rates kept in thousandths
+  private static final String[] STATISTICS
+    = { "count", "min", "max", "mean", "p50", "p90", "p99" };
+
+  private static Logger logger_
+    = Logger.getLogger(SpaceStatisticsAggregator.class.getName());
+
+  private SpaceMetricSink target_ = null;
+  private long[] windows_ = DEFAULT_WINDOWS;
+  private String[] windowNames_ = null;
+  // delta mode would hide unchanged rates from the windows
+  private SpaceStatisticsParser parser_
+    = new SpaceStatisticsParser(MetricSelection.RATES,0.0,0);
+  private long horizon_ = 0;  // the longest window
+  private ConcurrentHashMap<SpaceName,SpaceMetrics> spaces_
+    = new ConcurrentHashMap<SpaceName,SpaceMetrics>();
+  private RollingHistogram.Summary summary_ = new RollingHistogram.Summary();
+  private ScheduledExecutorService emitter_ = null;
+  private boolean closed_ = false;
+
+  // the sample being recorded, only used by the logging thread
+  private long timestamp_ = 0;
+  private ConcurrentHashMap<MetricType,Metric> metrics_ = null;
+
+  /**
+   * SpaceMetrics holds the metrics of one space and the local time of
+   * its latest sample.
+   */
+  private static class SpaceMetrics
+  {
+    private ConcurrentHashMap<MetricType,Metric> metrics_
+      = new ConcurrentHashMap<MetricType,Metric>();
+    private volatile long lastSample_ = 0;
+  }  // end SpaceMetrics
+
+  /**
+   * Metric holds the windows of one metric of one space, along with the
+   * names its aggregates are emitted under.
+   */
+  private class Metric
+  {
+    private RollingHistogram[] histograms_ = null;
+    private MetricType[][] names_ = null;
+
+    /**
+     * The full constructor for the Metric class.
+     */
+    public Metric(MetricType metricType)
+      {
+      histograms_ = new RollingHistogram[windows_.length];
+      names_ = new MetricType[windows_.length][STATISTICS.length];
+      for (int i = 0;i < windows_.length;i++)
+        {
+        histograms_[i] = new RollingHistogram(windows_[i]);
+        for (int j = 0;j < STATISTICS.length;j++)
+          names_[i][j] = MetricType.named(metricType.name() + "."
+                                          + windowNames_[i] + "."
+                                          + STATISTICS[j]);
+        }
+      }
+  }  // end Metric
+
+
+  /**
+   * The full constructor for the SpaceStatisticsAggregator class.
+   *
+   * @param target The sink that receives the aggregates.  If it is also
+   *               a SpaceStatisticsLogger, it is closed by close().
+   * @param emitInterval The time, in milliseconds, between emissions
+   * @param windows The lengths, in milliseconds, of the rolling windows
+   */
+  public SpaceStatisticsAggregator(SpaceMetricSink target,
+                                   long emitInterval,
+                                   long[] windows)
+    {
+    target_ = target;
+    windows_ = windows.clone();
+    windowNames_ = new String[windows_.length];
+    for (int i = 0;i < windows_.length;i++)
+      {
+      windowNames_[i] = windowName(windows_[i]);
+      horizon_ = Math.max(horizon_,windows_[i]);
+      }
+
+    emitter_ = Executors.newSingleThreadScheduledExecutor(
+      new DaemonThreadFactory("space-statistics-aggregator"));
+    emitter_.scheduleAtFixedRate(new Runnable()
+      {
+      public void run() { emit(); }
+      },emitInterval,emitInterval,TimeUnit.MILLISECONDS);
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsAggregator class that uses the
+   * default emit interval and windows.
+   */
+  public SpaceStatisticsAggregator(SpaceMetricSink target)
+    {
+    this(target,DEFAULT_EMIT_INTERVAL,DEFAULT_WINDOWS);
+    }
+
+
+  /**
+   * Return a short name for a window length, such as 5m or 1h.
+   */
+  private static String windowName(long window)
+    {
+    if (window % 3600000 == 0)
+      return (window / 3600000) + "h";
+    if (window % 60000 == 0)
+      return (window / 60000) + "m";
+    if (window % 1000 == 0)
+      return (window / 1000) + "s";
+
+    return window + "ms";
+    }
+
+
+  /**
+   * Start a sample.  Samples are placed in the windows by local time,
+   * since the windows are summarized by local time.  This method is
+   * inherited from SpaceMetricSink.
+   */
+  public void begin(long timestamp,SpaceName spaceName)
+    {
+    timestamp_ = System.currentTimeMillis();
+    SpaceMetrics space = spaces_.get(spaceName);
+    if (space == null)
+      {
+      SpaceMetrics created = new SpaceMetrics();
+      space = spaces_.putIfAbsent(spaceName,created);
+      if (space == null)
+        space = created;
+      }
+
+    // if the emitter evicted the space meanwhile, put it back
+    space.lastSample_ = timestamp_;
+    if (spaces_.get(spaceName) != space)
+      spaces_.putIfAbsent(spaceName,space);
+
+    metrics_ = space.metrics_;
+    }
+
+
+  /**
+   * Long metrics are counts and sizes, not rates, and are not
+   * aggregated.  This method is inherited from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,long value)
+    {
+    }
+
+
+  /**
+   * Record a rate metric in each of its windows.  This method is
+   * inherited from SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,double value)
+    {
+    if (!metricType.isRate())
+      return;
+
+    Metric metric = metrics_.get(metricType);
+    if (metric == null)
+      {
+      Metric created = new Metric(metricType);
+      metric = metrics_.putIfAbsent(metricType,created);
+      if (metric == null)
+        metric = created;
+      }
+
+    long scaled = Math.round(value * SCALE);
+    for (RollingHistogram histogram : metric.histograms_)
+      histogram.record(timestamp_,scaled);
+    }
+
+
+  /**
+   * Keyed metrics are not aggregated.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,String key,long value)
+    {
+    }
+
+
+  /**
+   * Keyed metrics are not aggregated.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void metric(MetricType metricType,String key,double value)
+    {
+    }
+
+
+  /**
+   * Finish the current sample.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public void end()
+    {
+    metrics_ = null;
+    }
+
+
+  /**
+   * Forget a space that has had no samples for the longest window.  A
+   * sample started meanwhile has already set lastSample_, and either
+   * sees the space missing and puts it back, or is seen here.
+   */
+  private void evict(SpaceName spaceName,SpaceMetrics space)
+    {
+    spaces_.remove(spaceName,space);
+    if (System.currentTimeMillis() - space.lastSample_ <= horizon_)
+      spaces_.putIfAbsent(spaceName,space);
+    else
+      logger_.info("Space " + spaceName + " has no samples, forgotten.");
+    }
+
+
+  /**
+   * Emit the aggregates of every space to the target.  Only the emitter
+   * thread, or close() once the emitter has stopped, calls this.
+   */
+  private void emit()
+    {
+    long now = System.currentTimeMillis();
+    try
+      {
+      for (Map.Entry<SpaceName,SpaceMetrics> space : spaces_.entrySet())
+        {
+        if (now - space.getValue().lastSample_ > horizon_)
+          {
+          evict(space.getKey(),space.getValue());
+          continue;
+          }
+
+        target_.begin(now,space.getKey());
+        for (Metric metric : space.getValue().metrics_.values())
+          for (int i = 0;i < windows_.length;i++)
+            {
+            metric.histograms_[i].summarize(now,summary_);
+            if (summary_.count() == 0)
+              continue;
+
+            MetricType[] names = metric.names_[i];
+            target_.metric(names[0],summary_.count());
+            target_.metric(names[1],summary_.min() / SCALE);
+            target_.metric(names[2],summary_.max() / SCALE);
+            target_.metric(names[3],summary_.mean() / SCALE);
+            target_.metric(names[4],summary_.percentile(50.0) / SCALE);
+            target_.metric(names[5],summary_.percentile(90.0) / SCALE);
+            target_.metric(names[6],summary_.percentile(99.0) / SCALE);
+            }
+        target_.end();
+        }
+      }
+    catch (RuntimeException e)
+      {
+      // keep the emitter scheduled
+      logger_.severe("Unable to emit aggregates:  " + e);
+      }
+    }
+
+
+  /**
+   * Record the space statistics.  This method is inherited from
+   * SpaceStatisticsLogger.
+   */
+  public synchronized void log(Space space,SpaceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    parser_.parse(space,statistics,this);
+    }
+
+
+  /**
+   * Stop the emitter, emit the final aggregates and close the target.
+   * This method is inherited from SpaceStatisticsLogger.
+   */
+  public synchronized void close()
+    {
+    if (closed_)
+      return;
+
+    closed_ = true;
+    emitter_.shutdown();
+    try { emitter_.awaitTermination(1,TimeUnit.MINUTES); }
+    catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+
+    emit();
+    if (target_ instanceof SpaceStatisticsLogger)
+      ((SpaceStatisticsLogger)target_).close();
+    }
+}  // end SpaceStatisticsAggregator
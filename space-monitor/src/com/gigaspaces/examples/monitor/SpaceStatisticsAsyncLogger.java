@@ -0,0 +1,156 @@
+/**
+ * SpaceStatisticsAsyncLogger decouples the Admin API event thread from a
+ * potentially slow SpaceStatisticsLogger.  Samples are placed in a
+ * preallocated, bounded ring buffer and delivered to the target logger by
+ * a single worker thread.  When the buffer is full, the configured
+ * OverflowPolicy decides whether the oldest sample is overwritten, the
+ * new sample is dropped or the caller blocks until space is available.
+ * Space instance samples share the queue, and are dropped if the target
+ * logger cannot log them.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+import org.openspaces.admin.space.SpaceStatistics;
+
+public class SpaceStatisticsAsyncLogger
+  implements SpaceInstanceStatisticsLogger
+{
+  public static final int DEFAULT_CAPACITY = 1024;
+  public static final long DEFAULT_LAG_THRESHOLD = 1000;  // 1 second
+
+  /**
+   * OverflowPolicy determines what happens when a sample is logged while
+   * the ring buffer is full.
+   */
+  public enum OverflowPolicy
+  {
+    DROP_OLDEST,
+    DROP_NEWEST,
+    BLOCK
+  }  // end OverflowPolicy
+
+  private static Logger logger_
+    = Logger.getLogger(SpaceStatisticsAsyncLogger.class.getName());
+
+  private SpaceStatisticsLogger target_ = null;
+  private SpaceInstanceStatisticsLogger instanceTarget_ = null;
+  private SampleQueue queue_ = null;
+
+  /**
+   * The full constructor for the SpaceStatisticsAsyncLogger class.
+   *
+   * @param target The logger that samples are delivered to
+   * @param capacity The maximum number of queued samples, rounded up to
+   *                 a power of two
+   * @param policy What to do when the queue is full
+   * @param lagThreshold The time, in milliseconds, after which a queued
+   *                     sample is counted as lagging
+   */
+  public SpaceStatisticsAsyncLogger(SpaceStatisticsLogger target,
+                                    int capacity,
+                                    OverflowPolicy policy,
+                                    long lagThreshold)
+    {
+    target_ = target;
+    if (target instanceof SpaceInstanceStatisticsLogger)
+      instanceTarget_ = (SpaceInstanceStatisticsLogger)target;
+
+    // a slot holds either a Space and its SpaceStatistics or a
+    // SpaceInstance and its SpaceInstanceStatistics
+    queue_ = new SampleQueue("space-statistics-logger",
+                             capacity,
+                             policy,
+                             lagThreshold)
+      {
+      protected void deliver(Object source,Object statistics)
+        {
+        if (source instanceof SpaceInstance)
+          instanceTarget_.log((SpaceInstance)source,
+                              (SpaceInstanceStatistics)statistics);
+        else
+          target_.log((Space)source,(SpaceStatistics)statistics);
+        }
+      };
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsAsyncLogger class that uses the
+   * default capacity, drops the oldest sample on overflow and uses the
+   * default lag threshold.
+   */
+  public SpaceStatisticsAsyncLogger(SpaceStatisticsLogger target)
+    {
+    this(target,DEFAULT_CAPACITY,OverflowPolicy.DROP_OLDEST,
+         DEFAULT_LAG_THRESHOLD);
+    }
+
+
+  public long enqueuedCount() { return queue_.enqueuedCount(); }
+  public long droppedCount() { return queue_.droppedCount(); }
+  public long laggingCount() { return queue_.laggingCount(); }
+
+
+  /**
+   * Return the number of samples waiting to be delivered.
+   */
+  public int size() { return queue_.size(); }
+
+
+  /**
+   * Queue the space statistics for delivery to the target logger.  This
+   * method is inherited from SpaceStatisticsLogger.
+   */
+  public void log(Space space,SpaceStatistics statistics)
+    {
+    queue_.offer(space,statistics);
+    }
+
+
+  /**
+   * Queue the space instance statistics for delivery to the target
+   * logger, or drop them if it cannot log them.  This method is inherited
+   * from SpaceInstanceStatisticsLogger.
+   */
+  public void log(SpaceInstance spaceInstance,
+                  SpaceInstanceStatistics statistics)
+    {
+    if (instanceTarget_ == null)
+      queue_.drop();
+    else
+      queue_.offer(spaceInstance,statistics);
+    }
+
+
+  /**
+   * Deliver any queued samples, stop the worker and close the target
+   * logger.  The target is left open if the worker could not be
+   * stopped.  This method is inherited from SpaceStatisticsLogger.
+   */
+  public void close()
+    {
+    if (!queue_.close())
+      return;
+
+    logger_.info("Statistics queue closed:  "
+                 + enqueuedCount() + " enqueued, "
+                 + droppedCount() + " dropped, "
+                 + laggingCount() + " lagging.");
+
+    if (queue_.stopped())
+      target_.close();
+    else
+      logger_.severe("Statistics worker still running, not closing "
+                     + target_ + ".");
+    }
+}  // end SpaceStatisticsAsyncLogger
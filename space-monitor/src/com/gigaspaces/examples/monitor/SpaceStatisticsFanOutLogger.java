@@ -0,0 +1,267 @@
+/**
+ * SpaceStatisticsFanOutLogger logs each sample to several outputs, such
+ * as a file, a metrics space and an aggregator, from a single monitor.
+ * Each sample is parsed once, into a SpaceMetricSample, and the sample
+ * is shared by every output.  Each output has its own queue, worker
+ * thread and overflow policy, so a slow or stalled output never delays
+ * the others, and may have its own delta filter.  An output that fails
+ * too many times in a row is disabled, and its samples are dropped.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.util.ArrayList;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+import org.openspaces.admin.space.SpaceStatistics;
+
+import com.gigaspaces.examples.monitor.SpaceStatisticsAsyncLogger.OverflowPolicy;
+
+public class SpaceStatisticsFanOutLogger
+  implements SpaceInstanceStatisticsLogger
+{
+  public static final int DEFAULT_FAILURE_LIMIT = 10;
+
+  private static Logger logger_
+    = Logger.getLogger(SpaceStatisticsFanOutLogger.class.getName());
+
+  private SpaceStatisticsParser parser_ = null;
+  private SpaceInstanceStatisticsParser instanceParser_
+    = new SpaceInstanceStatisticsParser();
+  private ArrayList<Output> outputs_ = new ArrayList<Output>();
+  private int sampleSize_ = 64;  // metrics in the last sample
+  private boolean closed_ = false;
+
+  /**
+   * Output delivers samples to one sink, through its own queue.
+   */
+  private static class Output extends SampleQueue
+  {
+    private String name_ = null;
+    private SpaceMetricSink sink_ = null;
+    private SpaceMetricDeltaFilter deltaFilter_ = null;
+    private int failureLimit_ = DEFAULT_FAILURE_LIMIT;
+    private int failures_ = 0;  // consecutive, only used by the worker
+    private volatile boolean disabled_ = false;
+
+    /**
+     * The full constructor for the Output class.
+     */
+    public Output(String name,
+                  SpaceMetricSink sink,
+                  int capacity,
+                  OverflowPolicy policy,
+                  long lagThreshold,
+                  SpaceMetricDeltaFilter deltaFilter,
+                  int failureLimit)
+      {
+      super(name,capacity,policy,lagThreshold);
+      name_ = name + " (" + sink.getClass().getSimpleName() + ")";
+      sink_ = sink;
+      deltaFilter_ = deltaFilter;
+      failureLimit_ = failureLimit;
+      if (deltaFilter_ != null)
+        deltaFilter_.setTarget(sink_);
+      }
+
+
+    /**
+     * Replay a sample into the sink, disabling the output once the
+     * failure limit is reached.  This method is inherited from
+     * SampleQueue.
+     */
+    protected void deliver(Object sample,Object unused)
+      {
+      if (disabled_)
+        {
+        drop();
+        return;
+        }
+
+      try
+        {
+        ((SpaceMetricSample)sample).replay(
+          (deltaFilter_ != null) ? deltaFilter_ : sink_);
+        failures_ = 0;
+        }
+      catch (RuntimeException e)
+        {
+        logger_.severe("Unable to log statistics to " + name_ + ":  " + e);
+        if ((failureLimit_ > 0) && (++failures_ >= failureLimit_))
+          {
+          disabled_ = true;
+          logger_.severe("Output " + name_ + " disabled after "
+                         + failures_ + " consecutive failures.");
+          }
+        }
+      }
+
+
+    /**
+     * Drain the queue and close the sink, if it is also a logger and
+     * the worker has stopped.
+     */
+    public void shutdown()
+      {
+      close();
+      logger_.info("Output " + name_ + " closed:  "
+                   + enqueuedCount() + " enqueued, "
+                   + droppedCount() + " dropped, "
+                   + laggingCount() + " lagging.");
+
+      if (!stopped())
+        logger_.severe("Output " + name_ + " still running, not closed.");
+      else if (sink_ instanceof SpaceStatisticsLogger)
+        ((SpaceStatisticsLogger)sink_).close();
+      }
+  }  // end Output
+
+
+  /**
+   * The full constructor for the SpaceStatisticsFanOutLogger class.
+   *
+   * @param parser The parser shared by every output.  It should not be
+   *               in delta mode, since each output has its own delta
+   *               filter.
+   */
+  public SpaceStatisticsFanOutLogger(SpaceStatisticsParser parser)
+    {
+    parser_ = parser;
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsFanOutLogger class that parses
+   * the metrics selected by the monitor.metrics system property.
+   */
+  public SpaceStatisticsFanOutLogger()
+    {
+    this(new SpaceStatisticsParser(MetricSelection.configured(),0.0,0));
+    }
+
+
+  /**
+   * Add an output.  Outputs should be added before the first sample is
+   * logged.
+   *
+   * @param sink The sink that receives the samples.  If it is also a
+   *             SpaceStatisticsLogger, it is closed by close().
+   * @param capacity The maximum number of samples queued for the output
+   * @param policy What to do when the output's queue is full
+   * @param lagThreshold The time, in milliseconds, after which a queued
+   *                     sample is counted as lagging
+   * @param deltaFilter The filter applied to the output's samples, or
+   *                    null to pass on every metric
+   * @param failureLimit The number of consecutive failures after which
+   *                     the output is disabled, or 0 to never disable it
+   */
+  public synchronized void addOutput(SpaceMetricSink sink,
+                                     int capacity,
+                                     OverflowPolicy policy,
+                                     long lagThreshold,
+                                     SpaceMetricDeltaFilter deltaFilter,
+                                     int failureLimit)
+    {
+    outputs_.add(new Output("space-statistics-output-" + outputs_.size(),
+                            sink,
+                            capacity,
+                            policy,
+                            lagThreshold,
+                            deltaFilter,
+                            failureLimit));
+    }
+
+
+  /**
+   * Add an output with the default queue capacity, lag threshold and
+   * failure limit, that drops the oldest sample on overflow and passes
+   * on every metric.
+   */
+  public void addOutput(SpaceMetricSink sink)
+    {
+    addOutput(sink,
+              SpaceStatisticsAsyncLogger.DEFAULT_CAPACITY,
+              OverflowPolicy.DROP_OLDEST,
+              SpaceStatisticsAsyncLogger.DEFAULT_LAG_THRESHOLD,
+              null,
+              DEFAULT_FAILURE_LIMIT);
+    }
+
+
+  /**
+   * Queue a parsed sample for every output.  A BLOCK output that is full
+   * holds up the caller, and so every other output.
+   */
+  private void publish(SpaceMetricSample sample)
+    {
+    if (!sample.isRecorded())
+      return;
+
+    sampleSize_ = sample.size();
+    for (Output output : outputs_)
+      if (output.disabled_)
+        output.drop();
+      else
+        output.offer(sample,null);
+    }
+
+
+  /**
+   * Parse the space statistics once and queue them for every output.
+   * This method is inherited from SpaceStatisticsLogger.
+   */
+  public synchronized void log(Space space,SpaceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    SpaceMetricSample sample = new SpaceMetricSample(sampleSize_);
+    parser_.parse(space,statistics,sample);
+    publish(sample);
+    }
+
+
+  /**
+   * Parse the space instance statistics once and queue them for every
+   * output.  This method is inherited from SpaceInstanceStatisticsLogger.
+   */
+  public synchronized void log(SpaceInstance spaceInstance,
+                               SpaceInstanceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    SpaceMetricSample sample = new SpaceMetricSample(sampleSize_);
+    instanceParser_.parse(spaceInstance,statistics,sample);
+    publish(sample);
+    }
+
+
+  /**
+   * Deliver the queued samples of every output and close the outputs.
+   * This method is inherited from SpaceStatisticsLogger.
+   */
+  public synchronized void close()
+    {
+    if (closed_)
+      return;
+
+    closed_ = true;
+    for (Output output : outputs_)
+      output.shutdown();
+    }
+}  // end SpaceStatisticsFanOutLogger
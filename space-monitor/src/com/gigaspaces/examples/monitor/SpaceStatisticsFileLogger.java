@@ -1,5 +1,19 @@
 /**
- * SpaceStatisticsFileLogger logs space statistics to a file.
+ * SpaceStatisticsFileLogger logs space statistics to a file.  The file is
+ * held open for the life of the logger, metrics are accumulated in a
+ * reusable buffer and written when the buffer fills or the flush interval
+ * elapses.  The file may optionally be rotated when it reaches a given
+ * size or age.  A daemon timer writes the buffer and checks for time
+ * based rotation every flush interval, so neither waits for the next
+ * sample when samples are infrequent or stop.  Metrics produced
+ * elsewhere, such as aggregates, can be written through the
+ * SpaceMetricSink interface.
+ *
+ * When a BlockCodec is given, each flushed buffer is compressed as a
+ * separate block by a CompressedFileWriter, and the codec's suffix, such
+ * as .gz, is added to the file name.  Logging a sample then only copies
+ * the buffer into a free block; compression and disk writes happen on
+ * the writer's thread, and the file is rotated between blocks.
  *
  * @author Patrick May (patrick.may@gigaspaces.com)
  * @author &copy; 2014 Patrick May
@@ -10,27 +24,285 @@ package com.gigaspaces.examples.monitor;
 
 import java.util.logging.Logger;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
-import java.io.PrintWriter;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
 import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
 import org.openspaces.admin.space.SpaceStatistics;
 
-public class SpaceStatisticsFileLogger implements SpaceStatisticsLogger
+public class SpaceStatisticsFileLogger
+  implements SpaceInstanceStatisticsLogger, SpaceMetricSink
 {
+  public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;  // bytes
+  public static final long DEFAULT_FLUSH_INTERVAL = 5000;  // 5 seconds
+
+  private static final String ROTATION_SUFFIX_FORMAT = "yyyyMMdd-HHmmss";
+
   private static Logger logger_
     = Logger.getLogger(SpaceStatisticsFileLogger.class.getName());
 
   private String fileName_ = null;
+  private int bufferSize_ = DEFAULT_BUFFER_SIZE;
+  private long flushInterval_ = DEFAULT_FLUSH_INTERVAL;
+  private long rotateSize_ = 0;  // bytes, 0 to disable
+  private long rotateInterval_ = 0;  // milliseconds, 0 to disable
+  private BlockCodec codec_ = null;
+  private FileChannel channel_ = null;
+  private CompressedFileWriter compressor_ = null;
+  private SpaceStatisticsParser parser_ = new SpaceStatisticsParser();
+  private SpaceInstanceStatisticsParser instanceParser_
+    = new SpaceInstanceStatisticsParser();
+  private SpaceMetricCsvEncoder encoder_ = null;
+  private ScheduledExecutorService flusher_ = null;
+  private long lastFlush_ = 0;
+  private long opened_ = 0;
+  private boolean closed_ = false;
 
   /**
    * The full constructor for the SpaceStatisticsFileLogger class.
+   *
+   * @param fileName The file to append metrics to
+   * @param bufferSize The number of bytes to accumulate before writing
+   * @param flushInterval The maximum time, in milliseconds, that metrics
+   *                      are held in the buffer
+   * @param rotateSize The file size, in bytes, at which the file is
+   *                   rotated or 0 to disable size based rotation.  The
+   *                   size of a compressed file is its size on disk.
+   * @param rotateInterval The file age, in milliseconds, at which the file
+   *                       is rotated or 0 to disable time based rotation
+   * @param codec The codec used to compress each flushed buffer, or null
+   *              to write plain text
    */
-  public SpaceStatisticsFileLogger(String fileName)
+  public SpaceStatisticsFileLogger(String fileName,
+                                   int bufferSize,
+                                   long flushInterval,
+                                   long rotateSize,
+                                   long rotateInterval,
+                                   BlockCodec codec)
     {
     fileName_ = fileName;
+    bufferSize_ = bufferSize;
+    flushInterval_ = flushInterval;
+    rotateSize_ = rotateSize;
+    rotateInterval_ = rotateInterval;
+    codec_ = codec;
+
+    // leave headroom so a typical sample never forces the buffer to grow
+    encoder_
+      = new SpaceMetricCsvEncoder(ByteBuffer.allocateDirect(bufferSize * 2));
+
+    if (flushInterval_ > 0)
+      {
+      flusher_ = Executors.newSingleThreadScheduledExecutor(
+        new DaemonThreadFactory("space-statistics-flusher"));
+      flusher_.scheduleAtFixedRate(new Runnable()
+        {
+        public void run() { timedFlush(); }
+        },flushInterval_,flushInterval_,TimeUnit.MILLISECONDS);
+      }
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsFileLogger class that writes
+   * plain text.
+   */
+  public SpaceStatisticsFileLogger(String fileName,
+                                   int bufferSize,
+                                   long flushInterval,
+                                   long rotateSize,
+                                   long rotateInterval)
+    {
+    this(fileName,bufferSize,flushInterval,rotateSize,rotateInterval,null);
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsFileLogger class that does not
+   * rotate the file.
+   */
+  public SpaceStatisticsFileLogger(String fileName,
+                                   int bufferSize,
+                                   long flushInterval)
+    {
+    this(fileName,bufferSize,flushInterval,0,0);
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsFileLogger class that uses the
+   * default buffer settings and does not rotate the file.
+   */
+  public SpaceStatisticsFileLogger(String fileName)
+    {
+    this(fileName,DEFAULT_BUFFER_SIZE,DEFAULT_FLUSH_INTERVAL);
+    }
+
+
+  /**
+   * Open the file for appending if it is not already open.  A compressed
+   * file is opened by the writer.
+   */
+  private void open() throws IOException
+    {
+    if (codec_ != null)
+      {
+      if (compressor_ == null)
+        {
+        compressor_
+          = new CompressedFileWriter(fileName_,
+                                     codec_,
+                                     encoder_.buffer().capacity(),
+                                     CompressedFileWriter.DEFAULT_BLOCK_COUNT,
+                                     rotateSize_,
+                                     rotateInterval_);
+        lastFlush_ = System.currentTimeMillis();
+        }
+      }
+    else if (channel_ == null)
+      {
+      channel_ = new FileOutputStream(fileName_,true).getChannel();
+      opened_ = System.currentTimeMillis();
+      lastFlush_ = opened_;
+      }
+    }
+
+
+  /**
+   * Write the contents of the buffer to the file, or hand them to the
+   * writer to be compressed.
+   */
+  private void writeBuffer() throws IOException
+    {
+    ByteBuffer buffer = encoder_.buffer();
+
+    buffer.flip();
+    if (compressor_ != null)
+      compressor_.write(buffer);
+    else
+      while (buffer.hasRemaining())
+        channel_.write(buffer);
+    buffer.clear();
+    }
+
+
+  /**
+   * Determine if the current file should be rotated.
+   */
+  private boolean rotationDue(long now) throws IOException
+    {
+    return (((rotateSize_ > 0) && (channel_.size() >= rotateSize_))
+            || ((rotateInterval_ > 0) && (now - opened_ >= rotateInterval_)));
+    }
+
+
+  /**
+   * Return the name a file is rotated to, adding a timestamp, and a
+   * counter if that name is taken, before the passed extension.
+   *
+   * @param fileName The name of the file, without the extension
+   * @param extension The extension kept at the end of the name, such as
+   *                  .gz, or the empty string
+   */
+  static File rotationTarget(String fileName,String extension)
+    {
+    String suffix
+      = new SimpleDateFormat(ROTATION_SUFFIX_FORMAT).format(new Date());
+    File rotated = new File(fileName + "." + suffix + extension);
+    for (int i = 1;rotated.exists();i++)
+      rotated = new File(fileName + "." + suffix + "." + i + extension);
+
+    return rotated;
+    }
+
+
+  /**
+   * Close the current file and rename it with a timestamp suffix.  The
+   * next write will open a fresh file.
+   */
+  private void rotate() throws IOException
+    {
+    channel_.close();
+    channel_ = null;
+
+    File rotated = rotationTarget(fileName_,"");
+    if (!new File(fileName_).renameTo(rotated))
+      logger_.warning("Unable to rotate " + fileName_ + " to " + rotated);
+    }
+
+
+  /**
+   * Write any buffered metrics to the file and rotate the file if
+   * necessary.  The buffer always holds complete lines, so rotated files
+   * never contain partial lines.  Compressed files are rotated by the
+   * writer.
+   */
+  private void flush(long now) throws IOException
+    {
+    writeBuffer();
+    lastFlush_ = now;
+
+    if ((channel_ != null) && rotationDue(now))
+      rotate();
+    }
+
+
+  /**
+   * Write the buffer if it is full or the flush interval has elapsed.
+   */
+  private void flushIfDue() throws IOException
+    {
+    long now = System.currentTimeMillis();
+    if ((encoder_.buffer().position() >= bufferSize_)
+        || (now - lastFlush_ >= flushInterval_))
+      flush(now);
+    }
+
+
+  /**
+   * Write whatever is buffered and rotate the file if it is due.  The
+   * flusher calls this every flush interval, so metrics are never held
+   * in the buffer for longer than the flush interval.
+   */
+  private synchronized void timedFlush()
+    {
+    if (closed_ || ((channel_ == null) && (compressor_ == null)))
+      return;
+
+    try
+      {
+      flush(System.currentTimeMillis());
+      }
+    catch (IOException ioe)
+      {
+      logger_.severe("Unable to write to file:  " + fileName_ + " " + ioe);
+      abandon();
+      }
+    }
+
+
+  /**
+   * Discard the current channel after an error.  The file will be
+   * reopened on the next sample.
+   */
+  private void abandon()
+    {
+    encoder_.buffer().clear();
+    try { if (channel_ != null) channel_.close(); }
+    catch (IOException ignore) { }
+    channel_ = null;
     }
 
 
@@ -38,26 +310,169 @@ public class SpaceStatisticsFileLogger implements SpaceStatisticsLogger
    * Log the space statistics.  This method is inherited from
    * SpaceStatisticsLogger.
    */
-  public void log(Space space,SpaceStatistics statistics)
+  public synchronized void log(Space space,SpaceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    try
+      {
+      open();
+      parser_.parse(space,statistics,encoder_);
+      flushIfDue();
+      }
+    catch (IOException ioe)
+      {
+      logger_.severe("Unable to write to file:  " + fileName_ + " " + ioe);
+      abandon();
+      }
+    }
+
+
+  /**
+   * Log the space instance statistics.  This method is inherited from
+   * SpaceInstanceStatisticsLogger.
+   */
+  public synchronized void log(SpaceInstance spaceInstance,
+                               SpaceInstanceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    try
+      {
+      open();
+      instanceParser_.parse(spaceInstance,statistics,encoder_);
+      flushIfDue();
+      }
+    catch (IOException ioe)
+      {
+      logger_.severe("Unable to write to file:  " + fileName_ + " " + ioe);
+      abandon();
+      }
+    }
+
+
+  /**
+   * Start a sample.  This method is inherited from SpaceMetricSink.
+   */
+  public synchronized void begin(long timestamp,SpaceName spaceName)
+    {
+    encoder_.begin(timestamp,spaceName);
+    }
+
+
+  /**
+   * Encode a long metric.  This method is inherited from SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,long value)
+    {
+    encoder_.metric(metricType,value);
+    }
+
+
+  /**
+   * Encode a double metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,double value)
     {
-    SpaceStatisticsParser parser = new SpaceStatisticsParser(space,statistics);
-    PrintWriter writer = null;
+    encoder_.metric(metricType,value);
+    }
+
+
+  /**
+   * Encode a keyed metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,
+                                  String key,
+                                  long value)
+    {
+    encoder_.metric(metricType,key,value);
+    }
+
+
+  /**
+   * Encode a keyed double metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,
+                                  String key,
+                                  double value)
+    {
+    encoder_.metric(metricType,key,value);
+    }
+
+
+  /**
+   * Finish the current sample, writing the buffer if it is due.  This
+   * method is inherited from SpaceMetricSink.
+   */
+  public synchronized void end()
+    {
+    encoder_.end();
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping metrics.");
+      encoder_.buffer().clear();
+      return;
+      }
 
     try
       {
-      writer = new PrintWriter(new BufferedWriter(new FileWriter(fileName_,
-                                                                 true)));
-      for (String metric : parser.parsedStatistics())
-        writer.println(metric);
+      open();
+      flushIfDue();
       }
     catch (IOException ioe)
       {
-      logger_.severe("Unable to open file:  " + fileName_);
+      logger_.severe("Unable to write to file:  " + fileName_ + " " + ioe);
+      abandon();
       }
-    finally
+    }
+
+
+  /**
+   * Write any buffered metrics and close the file.  This method is
+   * inherited from SpaceStatisticsLogger.
+   */
+  public synchronized void close()
+    {
+    if (closed_)
+      return;
+
+    closed_ = true;
+    // the flusher waits for this lock, and does nothing once closed
+    if (flusher_ != null)
+      flusher_.shutdown();
+
+    try
+      {
+      if (compressor_ != null)
+        {
+        writeBuffer();
+        compressor_.close();
+        compressor_ = null;
+        }
+      else if (channel_ != null)
+        {
+        writeBuffer();
+        channel_.close();
+        channel_ = null;
+        }
+      else if (codec_ != null)
+        codec_.close();  // never passed to a writer
+      }
+    catch (IOException ioe)
       {
-      try { writer.close(); }
-      catch (Exception ignore) { }
+      logger_.severe("Unable to close file:  " + fileName_ + " " + ioe);
+      abandon();
       }
     }
 }  // end SpaceStatisticsFileLogger
@@ -0,0 +1,139 @@
+/**
+ * SpaceStatisticsJournal defines the layout of the binary metrics
+ * journal written by SpaceStatisticsJournalLogger and read by
+ * SpaceStatisticsJournalReader.
+ *
+ * A journal named base consists of a string dictionary, base.dict, and a
+ * sequence of fixed size segment files, base.00000001.seg and so on.  The
+ * dictionary is a sequence of (int id, UTF string) entries, interning the
+ * space names, metric types and keys referenced by records.  An entry is
+ * always written before any record that refers to it.
+ *
+ * Each segment starts with a header:
+ *
+ *   offset  0  int   magic
+ *   offset  4  int   format version
+ *   offset  8  long  segment sequence number
+ *   offset 16  long  creation time
+ *   offset 24  int   record size
+ *   offset 28  int   flags, FLAG_SEALED once the segment is complete
+ *   offset 32  long  committed record count
+ *
+ * followed by fixed width records:
+ *
+ *   offset  0  long  timestamp
+ *   offset  8  int   space name id
+ *   offset 12  int   metric type id
+ *   offset 16  int   key id, or NO_KEY
+ *   offset 20  int   value kind, KIND_LONG or KIND_DOUBLE
+ *   offset 24  long  value, doubles as raw long bits
+ *
+ * The committed count is only advanced after a record is complete, so a
+ * reader never sees a partial record, even after a crash.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+import java.util.Arrays;
+
+public final class SpaceStatisticsJournal
+{
+  public static final int MAGIC = 0x534d4a31;  // "SMJ1"
+  public static final int VERSION = 1;
+
+  public static final int HEADER_SIZE = 64;
+  public static final int MAGIC_OFFSET = 0;
+  public static final int VERSION_OFFSET = 4;
+  public static final int SEQUENCE_OFFSET = 8;
+  public static final int CREATED_OFFSET = 16;
+  public static final int RECORD_SIZE_OFFSET = 24;
+  public static final int FLAGS_OFFSET = 28;
+  public static final int COUNT_OFFSET = 32;
+
+  public static final int FLAG_SEALED = 1;
+
+  public static final int RECORD_SIZE = 32;
+  public static final int TIMESTAMP_OFFSET = 0;
+  public static final int SPACE_OFFSET = 8;
+  public static final int TYPE_OFFSET = 12;
+  public static final int KEY_OFFSET = 16;
+  public static final int KIND_OFFSET = 20;
+  public static final int VALUE_OFFSET = 24;
+
+  public static final int NO_KEY = -1;
+  public static final int KIND_LONG = 0;
+  public static final int KIND_DOUBLE = 1;
+
+  private static final String DICTIONARY_SUFFIX = ".dict";
+  private static final String SEGMENT_SUFFIX = ".seg";
+
+  private SpaceStatisticsJournal() { }
+
+
+  /**
+   * Return the dictionary file of the named journal.
+   */
+  public static File dictionaryFile(String base)
+    {
+    return new File(base + DICTIONARY_SUFFIX);
+    }
+
+
+  /**
+   * Return the segment file with the specified sequence number.
+   */
+  public static File segmentFile(String base,long sequence)
+    {
+    return new File(base + "." + String.format("%08d",sequence)
+                    + SEGMENT_SUFFIX);
+    }
+
+
+  /**
+   * Return the existing segment files of the named journal, in sequence
+   * order.
+   */
+  public static File[] segmentFiles(String base)
+    {
+    File baseFile = new File(base).getAbsoluteFile();
+    final String prefix = baseFile.getName() + ".";
+
+    File[] segments = baseFile.getParentFile().listFiles(new FilenameFilter()
+      {
+      public boolean accept(File directory,String name)
+        {
+        return name.startsWith(prefix)
+          && name.endsWith(SEGMENT_SUFFIX)
+          && name.substring(prefix.length(),
+                            name.length() - SEGMENT_SUFFIX.length())
+               .matches("\\d+");
+        }
+      });
+
+    if (segments == null)
+      return new File[0];
+
+    // the sequence numbers are zero padded, so names sort numerically
+    Arrays.sort(segments);
+    return segments;
+    }
+
+
+  /**
+   * Return the sequence number of a segment file.
+   */
+  public static long segmentSequence(File segment)
+    {
+    String name = segment.getName();
+    int end = name.length() - SEGMENT_SUFFIX.length();
+    return Long.parseLong(name.substring(name.lastIndexOf('.',end - 1) + 1,
+                                         end));
+    }
+}  // end SpaceStatisticsJournal
@@ -0,0 +1,398 @@
+/**
+ * SpaceStatisticsJournalLogger logs space statistics as fixed width
+ * binary records in a memory-mapped, segmented journal.  Space names,
+ * metric types and keys are interned in a string dictionary, so each
+ * record is only a few numbers.  The dictionary ids of space names and
+ * metric types are cached by their symbol ids, so the dictionary is
+ * only searched for keys.  See SpaceStatisticsJournal for the file
+ * format and SpaceStatisticsJournalReader for converting a journal back
+ * to CSV.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+import org.openspaces.admin.space.SpaceStatistics;
+
+import static com.gigaspaces.examples.monitor.SpaceStatisticsJournal.*;
+
+public class SpaceStatisticsJournalLogger
+  implements SpaceInstanceStatisticsLogger, SpaceMetricSink
+{
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;  // bytes
+
+  private static final int UNKNOWN = -1;
+
+  private static Logger logger_
+    = Logger.getLogger(SpaceStatisticsJournalLogger.class.getName());
+
+  private String base_ = null;
+  private int segmentSize_ = DEFAULT_SEGMENT_SIZE;
+  private SpaceStatisticsParser parser_ = new SpaceStatisticsParser();
+  private SpaceInstanceStatisticsParser instanceParser_
+    = new SpaceInstanceStatisticsParser();
+
+  private HashMap<String,Integer> dictionary_
+    = new HashMap<String,Integer>();
+  private DataOutputStream dictionaryOut_ = null;
+  private int[] spaceIds_ = new int[0];  // by space name id
+  private int[] typeIds_ = new int[0];  // by metric type id
+
+  private long sequence_ = 0;
+  private MappedByteBuffer segment_ = null;
+  private long count_ = 0;
+  private long capacity_ = 0;
+
+  private long timestamp_ = 0;
+  private int spaceId_ = 0;
+  private boolean closed_ = false;
+
+  /**
+   * The full constructor for the SpaceStatisticsJournalLogger class.
+   *
+   * @param base The journal name, used as the prefix of its files
+   * @param segmentSize The size, in bytes, of each segment file
+   */
+  public SpaceStatisticsJournalLogger(String base,int segmentSize)
+    throws IOException
+    {
+    base_ = base;
+    segmentSize_ = segmentSize;
+    capacity_ = (segmentSize - HEADER_SIZE) / RECORD_SIZE;
+    if (capacity_ < 1)
+      throw new IllegalArgumentException("Segment size too small.");
+
+    openDictionary();
+
+    // never append to an existing segment, it may not have been sealed
+    File[] segments = segmentFiles(base);
+    if (segments.length > 0)
+      sequence_ = segmentSequence(segments[segments.length - 1]);
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsJournalLogger class that uses
+   * the default segment size.
+   */
+  public SpaceStatisticsJournalLogger(String base) throws IOException
+    {
+    this(base,DEFAULT_SEGMENT_SIZE);
+    }
+
+
+  /**
+   * Load any existing dictionary entries and open the dictionary for
+   * appending.  A partial entry left by a crash is truncated.
+   */
+  private void openDictionary() throws IOException
+    {
+    File file = dictionaryFile(base_);
+    long valid = SpaceStatisticsJournalReader.readDictionary(file,
+                                                             dictionary_);
+    if (file.exists() && (file.length() > valid))
+      {
+      RandomAccessFile raf = new RandomAccessFile(file,"rw");
+      try { raf.setLength(valid); }
+      finally { raf.close(); }
+      }
+
+    dictionaryOut_
+      = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file,true)));
+    }
+
+
+  /**
+   * Return the dictionary id of a string, adding it to the dictionary if
+   * necessary.  New entries are written through before they are used.
+   */
+  private int intern(String value) throws IOException
+    {
+    Integer id = dictionary_.get(value);
+    if (id == null)
+      {
+      id = Integer.valueOf(dictionary_.size());
+      dictionaryOut_.writeInt(id.intValue());
+      dictionaryOut_.writeUTF(value);
+      dictionaryOut_.flush();
+      dictionary_.put(value,id);
+      }
+
+    return id.intValue();
+    }
+
+
+  /**
+   * Return a copy of a dictionary id cache, grown to hold the passed
+   * symbol id.
+   */
+  private static int[] grow(int[] ids,int id,int count)
+    {
+    int[] grown = Arrays.copyOf(ids,Math.max(id + 1,count));
+    Arrays.fill(grown,ids.length,grown.length,UNKNOWN);
+    return grown;
+    }
+
+
+  /**
+   * Return the dictionary id of a space name.
+   */
+  private int spaceId(SpaceName spaceName) throws IOException
+    {
+    if (spaceName.id() >= spaceIds_.length)
+      spaceIds_ = grow(spaceIds_,spaceName.id(),SpaceName.count());
+
+    int id = spaceIds_[spaceName.id()];
+    if (id == UNKNOWN)
+      {
+      id = intern(spaceName.name());
+      spaceIds_[spaceName.id()] = id;
+      }
+
+    return id;
+    }
+
+
+  /**
+   * Return the dictionary id of a metric type.
+   */
+  private int typeId(MetricType metricType) throws IOException
+    {
+    if (metricType.id() >= typeIds_.length)
+      typeIds_ = grow(typeIds_,metricType.id(),MetricType.count());
+
+    int id = typeIds_[metricType.id()];
+    if (id == UNKNOWN)
+      {
+      id = intern(metricType.name());
+      typeIds_[metricType.id()] = id;
+      }
+
+    return id;
+    }
+
+
+  /**
+   * Mark the current segment as complete and force it to disk.
+   */
+  private void seal()
+    {
+    if (segment_ != null)
+      {
+      segment_.putInt(FLAGS_OFFSET,segment_.getInt(FLAGS_OFFSET)
+                      | FLAG_SEALED);
+      segment_.force();
+      segment_ = null;
+      }
+    }
+
+
+  /**
+   * Seal the current segment and map the next one.
+   */
+  private void roll() throws IOException
+    {
+    seal();
+
+    File file = segmentFile(base_,++sequence_);
+    RandomAccessFile raf = new RandomAccessFile(file,"rw");
+    try
+      {
+      raf.setLength(segmentSize_);
+      segment_ = raf.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                                      0,
+                                      segmentSize_);
+      }
+    finally
+      {
+      raf.close();
+      }
+
+    segment_.putInt(MAGIC_OFFSET,MAGIC);
+    segment_.putInt(VERSION_OFFSET,VERSION);
+    segment_.putLong(SEQUENCE_OFFSET,sequence_);
+    segment_.putLong(CREATED_OFFSET,System.currentTimeMillis());
+    segment_.putInt(RECORD_SIZE_OFFSET,RECORD_SIZE);
+    segment_.putInt(FLAGS_OFFSET,0);
+    segment_.putLong(COUNT_OFFSET,0);
+    count_ = 0;
+    }
+
+
+  /**
+   * Append a record and then commit it by advancing the record count.
+   */
+  private void append(MetricType metricType,String key,int kind,long value)
+    {
+    try
+      {
+      int typeId = typeId(metricType);
+      int keyId = (key == null) ? NO_KEY : intern(key);
+
+      if ((segment_ == null) || (count_ == capacity_))
+        roll();
+
+      int offset = HEADER_SIZE + (int)count_ * RECORD_SIZE;
+      segment_.putLong(offset + TIMESTAMP_OFFSET,timestamp_);
+      segment_.putInt(offset + SPACE_OFFSET,spaceId_);
+      segment_.putInt(offset + TYPE_OFFSET,typeId);
+      segment_.putInt(offset + KEY_OFFSET,keyId);
+      segment_.putInt(offset + KIND_OFFSET,kind);
+      segment_.putLong(offset + VALUE_OFFSET,value);
+      segment_.putLong(COUNT_OFFSET,++count_);
+      }
+    catch (IOException ioe)
+      {
+      logger_.severe("Unable to write journal " + base_ + ":  " + ioe);
+      }
+    }
+
+
+  /**
+   * Start a sample.  Samples started after close() are dropped.  This
+   * method is inherited from SpaceMetricSink.
+   */
+  public synchronized void begin(long timestamp,SpaceName spaceName)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping metrics.");
+      return;
+      }
+
+    timestamp_ = timestamp;
+    try { spaceId_ = spaceId(spaceName); }
+    catch (IOException ioe)
+      {
+      logger_.severe("Unable to write journal " + base_ + ":  " + ioe);
+      }
+    }
+
+
+  /**
+   * Record a long metric.  This method is inherited from SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,long value)
+    {
+    if (!closed_)
+      append(metricType,null,KIND_LONG,value);
+    }
+
+
+  /**
+   * Record a double metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,double value)
+    {
+    if (!closed_)
+      append(metricType,null,KIND_DOUBLE,Double.doubleToRawLongBits(value));
+    }
+
+
+  /**
+   * Record a keyed metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,String key,long value)
+    {
+    if (!closed_)
+      append(metricType,key,KIND_LONG,value);
+    }
+
+
+  /**
+   * Append a keyed double record.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,
+                                  String key,
+                                  double value)
+    {
+    if (!closed_)
+      append(metricType,key,KIND_DOUBLE,Double.doubleToRawLongBits(value));
+    }
+
+
+  /**
+   * Finish the current sample.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void end()
+    {
+    }
+
+
+  /**
+   * Log the space statistics.  This method is inherited from
+   * SpaceStatisticsLogger.
+   */
+  public synchronized void log(Space space,SpaceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    parser_.parse(space,statistics,this);
+    }
+
+
+  /**
+   * Log the space instance statistics.  This method is inherited from
+   * SpaceInstanceStatisticsLogger.
+   */
+  public synchronized void log(SpaceInstance spaceInstance,
+                               SpaceInstanceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    instanceParser_.parse(spaceInstance,statistics,this);
+    }
+
+
+  /**
+   * Seal the current segment and close the dictionary.  This method is
+   * inherited from SpaceStatisticsLogger.
+   */
+  public synchronized void close()
+    {
+    if (closed_)
+      return;
+
+    closed_ = true;
+    seal();
+    try { dictionaryOut_.close(); }
+    catch (IOException ioe)
+      {
+      logger_.severe("Unable to close journal " + base_ + ":  " + ioe);
+      }
+    }
+}  // end SpaceStatisticsJournalLogger
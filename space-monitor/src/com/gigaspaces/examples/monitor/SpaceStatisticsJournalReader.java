@@ -0,0 +1,351 @@
+/**
+ * SpaceStatisticsJournalReader reads the binary journal written by
+ * SpaceStatisticsJournalLogger and replays its records into a
+ * SpaceMetricSink.  Run from the command line, it exports a journal in
+ * the same CSV format as SpaceStatisticsFileLogger.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.gigaspaces.examples.monitor.SpaceStatisticsJournal.*;
+
+public class SpaceStatisticsJournalReader
+{
+  private static final int EXPORT_BUFFER_SIZE = 64 * 1024;  // bytes
+
+  private static Logger logger_
+    = Logger.getLogger(SpaceStatisticsJournalReader.class.getName());
+
+  private String base_ = null;
+
+  /**
+   * CsvExporter encodes replayed records as CSV and writes them to a
+   * channel after each sample, so its buffer never grows large.  The
+   * first write error is kept and reported by export().
+   */
+  private static class CsvExporter implements SpaceMetricSink
+  {
+    private WritableByteChannel channel_ = null;
+    private SpaceMetricCsvEncoder encoder_
+      = new SpaceMetricCsvEncoder(ByteBuffer.allocate(EXPORT_BUFFER_SIZE));
+    private IOException error_ = null;
+
+    public CsvExporter(WritableByteChannel channel)
+      {
+      channel_ = channel;
+      }
+
+
+    public IOException error() { return error_; }
+
+    public void begin(long timestamp,SpaceName spaceName)
+      {
+      encoder_.begin(timestamp,spaceName);
+      }
+
+
+    public void metric(MetricType metricType,long value)
+      {
+      encoder_.metric(metricType,value);
+      }
+
+
+    public void metric(MetricType metricType,double value)
+      {
+      encoder_.metric(metricType,value);
+      }
+
+
+    public void metric(MetricType metricType,String key,long value)
+      {
+      encoder_.metric(metricType,key,value);
+      }
+
+
+    public void metric(MetricType metricType,String key,double value)
+      {
+      encoder_.metric(metricType,key,value);
+      }
+
+
+    public void end()
+      {
+      encoder_.end();
+
+      ByteBuffer buffer = encoder_.buffer();
+      buffer.flip();
+      try
+        {
+        while ((error_ == null) && buffer.hasRemaining())
+          channel_.write(buffer);
+        }
+      catch (IOException ioe)
+        {
+        error_ = ioe;
+        }
+      buffer.clear();
+      }
+  }  // end CsvExporter
+
+
+  /**
+   * The full constructor for the SpaceStatisticsJournalReader class.
+   *
+   * @param base The journal name, used as the prefix of its files
+   */
+  public SpaceStatisticsJournalReader(String base)
+    {
+    base_ = base;
+    }
+
+
+  /**
+   * Read the entries of a dictionary file into the passed map.
+   *
+   * @return The length of the valid part of the file, excluding any
+   *         partial entry left by a crash
+   */
+  static long readDictionary(File file,Map<String,Integer> dictionary)
+    throws IOException
+    {
+    if (!file.exists())
+      return 0;
+
+    long valid = 0;
+    DataInputStream in
+      = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)));
+    try
+      {
+      while (true)
+        {
+        int id = in.readInt();
+        String value = in.readUTF();
+        dictionary.put(value,Integer.valueOf(id));
+        // an entry is four bytes of id, two of length and the UTF bytes
+        valid = valid + 6 + utfLength(value);
+        }
+      }
+    catch (EOFException endOfDictionary)
+      {
+      }
+    finally
+      {
+      in.close();
+      }
+
+    return valid;
+    }
+
+
+  /**
+   * Return the number of bytes writeUTF() uses for the characters of a
+   * string.
+   */
+  private static int utfLength(String value)
+    {
+    int length = 0;
+    for (int i = 0;i < value.length();i++)
+      {
+      char c = value.charAt(i);
+      if ((c >= 0x0001) && (c <= 0x007f))
+        length += 1;
+      else if (c <= 0x07ff)
+        length += 2;
+      else
+        length += 3;
+      }
+
+    return length;
+    }
+
+
+  /**
+   * Return the dictionary of the journal, indexed by id.
+   */
+  private String[] strings() throws IOException
+    {
+    HashMap<String,Integer> dictionary = new HashMap<String,Integer>();
+    readDictionary(dictionaryFile(base_),dictionary);
+
+    String[] strings = new String[dictionary.size()];
+    for (Map.Entry<String,Integer> entry : dictionary.entrySet())
+      strings[entry.getValue().intValue()] = entry.getKey();
+
+    return strings;
+    }
+
+
+  /**
+   * Replay the committed records of one segment into the sink.  Space
+   * names and metric types are looked up once per dictionary entry and
+   * kept in the passed arrays, which are indexed by dictionary id.
+   *
+   * @return The number of records replayed
+   */
+  private long replay(File file,
+                      String[] strings,
+                      SpaceName[] spaceNames,
+                      MetricType[] metricTypes,
+                      SpaceMetricSink sink)
+    throws IOException
+    {
+    RandomAccessFile raf = new RandomAccessFile(file,"r");
+    MappedByteBuffer segment = null;
+    try
+      {
+      segment = raf.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                                     0,
+                                     raf.length());
+      }
+    finally
+      {
+      raf.close();
+      }
+
+    if ((segment.capacity() < HEADER_SIZE)
+        || (segment.getInt(MAGIC_OFFSET) != MAGIC)
+        || (segment.getInt(VERSION_OFFSET) != VERSION))
+      {
+      logger_.warning("Skipping invalid journal segment " + file);
+      return 0;
+      }
+
+    int recordSize = segment.getInt(RECORD_SIZE_OFFSET);
+    long count = Math.min(segment.getLong(COUNT_OFFSET),
+                          (segment.capacity() - HEADER_SIZE) / recordSize);
+
+    long timestamp = -1;
+    int spaceId = -1;
+    for (int i = 0;i < count;i++)
+      {
+      int offset = HEADER_SIZE + i * recordSize;
+      long recordTimestamp = segment.getLong(offset + TIMESTAMP_OFFSET);
+      int recordSpaceId = segment.getInt(offset + SPACE_OFFSET);
+      int typeId = segment.getInt(offset + TYPE_OFFSET);
+      int keyId = segment.getInt(offset + KEY_OFFSET);
+      int kind = segment.getInt(offset + KIND_OFFSET);
+      long value = segment.getLong(offset + VALUE_OFFSET);
+
+      if ((recordTimestamp != timestamp) || (recordSpaceId != spaceId))
+        {
+        if (spaceId >= 0)
+          sink.end();
+        timestamp = recordTimestamp;
+        spaceId = recordSpaceId;
+        if (spaceNames[spaceId] == null)
+          spaceNames[spaceId] = SpaceName.of(strings[spaceId]);
+        sink.begin(timestamp,spaceNames[spaceId]);
+        }
+
+      if (metricTypes[typeId] == null)
+        metricTypes[typeId] = MetricType.named(strings[typeId]);
+      MetricType metricType = metricTypes[typeId];
+
+      if ((keyId != NO_KEY) && (kind == KIND_DOUBLE))
+        sink.metric(metricType,strings[keyId],Double.longBitsToDouble(value));
+      else if (keyId != NO_KEY)
+        sink.metric(metricType,strings[keyId],value);
+      else if (kind == KIND_DOUBLE)
+        sink.metric(metricType,Double.longBitsToDouble(value));
+      else
+        sink.metric(metricType,value);
+      }
+
+    if (spaceId >= 0)
+      sink.end();
+
+    return count;
+    }
+
+
+  /**
+   * Replay every committed record of the journal, in order, into the
+   * passed sink.
+   *
+   * @return The number of records replayed
+   */
+  public long replay(SpaceMetricSink sink) throws IOException
+    {
+    String[] strings = strings();
+    SpaceName[] spaceNames = new SpaceName[strings.length];
+    MetricType[] metricTypes = new MetricType[strings.length];
+    long records = 0;
+
+    for (File segment : segmentFiles(base_))
+      records += replay(segment,strings,spaceNames,metricTypes,sink);
+
+    return records;
+    }
+
+
+  /**
+   * Export the journal as CSV to the passed stream.
+   *
+   * @return The number of records exported
+   */
+  public long export(OutputStream out) throws IOException
+    {
+    CsvExporter exporter = new CsvExporter(Channels.newChannel(out));
+    long records = replay(exporter);
+
+    if (exporter.error() != null)
+      throw exporter.error();
+
+    out.flush();
+    return records;
+    }
+
+
+  /**
+   * Export a journal to CSV from the command line.
+   *
+   * @param args The command line arguments passed in.
+   */
+  public static void main(String args[]) throws IOException
+    {
+    if ((args.length == 1) || (args.length == 2))
+      {
+      SpaceStatisticsJournalReader reader
+        = new SpaceStatisticsJournalReader(args[0]);
+
+      if (args.length == 1)
+        reader.export(System.out);
+      else
+        {
+        OutputStream out = new FileOutputStream(args[1]);
+        try { reader.export(out); }
+        finally { out.close(); }
+        }
+      }
+    else
+      System.out.println("Usage:  java "
+                         + SpaceStatisticsJournalReader.class.getName()
+                         + " <journal-name> [<csv-file>]");
+    }
+}  // end SpaceStatisticsJournalReader
@@ -15,4 +15,10 @@ import org.openspaces.admin.space.SpaceStatistics;
 public interface SpaceStatisticsLogger
 {
   public void log(Space space,SpaceStatistics statistics);
+
+  /**
+   * Release any resources held by the logger, writing out any buffered
+   * statistics.  Statistics logged after close may be dropped.
+   */
+  public void close();
 }  // end SpaceStatisticsLogger
@@ -1,6 +1,7 @@
 /**
- * SpaceStatisticsParser parses space statistics into comma-separated
- * value strings.
+ * SpaceStatisticsParser parses space statistics into a SpaceMetricSink.
+ * Only the metrics in its MetricSelection are parsed.  For
+ * compatibility, it can also parse into comma-separated value strings.
  *
  * @author Patrick May (patrick.may@gigaspaces.com)
  * @author &copy; 2014 Patrick May
@@ -10,139 +11,134 @@
 package com.gigaspaces.examples.monitor;
 
 import java.util.logging.Logger;
-import java.util.ArrayList;
-import java.util.Map;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 import org.openspaces.admin.space.Space;
-import org.openspaces.admin.space.SpaceRuntimeDetails;
 import org.openspaces.admin.space.SpaceStatistics;
 
 public class SpaceStatisticsParser
 {
+  private static final int COMPATIBILITY_BUFFER_SIZE = 4096;  // bytes
+
   private static Logger logger_
     = Logger.getLogger(SpaceStatisticsParser.class.getName());
+  private static Charset utf8_ = Charset.forName("UTF-8");
 
-  private Space space_ = null;
-  private SpaceStatistics rawStatistics_ = null;
-  private ArrayList<String> parsedStatistics_ = new ArrayList<String>();
+  private String[] parsedStatistics_ = new String[0];
+  private MetricSelection selection_ = MetricSelection.ALL;
+  private SpaceMetricDeltaFilter deltaFilter_ = null;
 
 
   /**
-   * Format the passed data into a comma-separated value string.
+   * Parse the space statistics into the passed sink.  No intermediate
+   * objects are created, so a single parser may be reused for every
+   * sample.  In delta mode, only metrics that have changed since they
+   * were last emitted for the space reach the sink.
+   *
+   * @param space The space the statistics were collected from
+   * @param statistics The statistics to parse
+   * @param sink The sink that receives each metric
    */
-  private String csvFormat(String metricType,Object... metricData)
+  public void parse(Space space,
+                    SpaceStatistics statistics,
+                    SpaceMetricSink sink)
     {
-    StringBuilder csvString = new StringBuilder();
+    if (deltaFilter_ != null)
+      {
+      deltaFilter_.setTarget(sink);
+      sink = deltaFilter_;
+      }
 
-    csvString.append(rawStatistics_.getTimestamp())
-      .append(',')
-      .append(space_.getName())
-      .append(',')
-      .append(metricType);
+    if (!statistics.isNA())
+      {
+      sink.begin(statistics.getTimestamp(),SpaceName.of(space.getName()));
 
-    for (Object data : metricData)
-      csvString.append(',').append(data);
+      selection_.extract(space,statistics,sink);
 
-    return csvString.toString();
+      sink.end();
+      }
+    else
+      logger_.warning("Space statistics unavailable.");
     }
 
 
   /**
-   * Parse the space statistics into comma-separated value strings.
+   * The full constructor for the SpaceStatisticsParser class.  Use
+   * parse() to parse samples into a SpaceMetricSink.
+   *
+   * @param selection The metrics to parse
+   * @param epsilon The change in value below which a metric is suppressed
+   * @param snapshotInterval Emit every metric once in this many samples
+   *                         of each space, or 0 to emit every metric in
+   *                         every sample
    */
-  private void parse()
+  public SpaceStatisticsParser(MetricSelection selection,
+                               double epsilon,
+                               int snapshotInterval)
     {
-    if (!rawStatistics_.isNA())
-      {
-      // space metrics
-      parsedStatistics_.add(csvFormat("instance-count",
-                                      space_.getNumberOfInstances()));
-      parsedStatistics_.add(csvFormat("backup-count",
-                                      space_.getNumberOfBackups()));
-
-      // object type counts
-      Map<String,Integer> countPerClassName
-        = space_.getRuntimeDetails().getCountPerClassName();
-      for (Map.Entry<String,Integer> entry : countPerClassName.entrySet())
-        parsedStatistics_.add(csvFormat("class-count",
-                                        entry.getKey(),
-                                        entry.getValue().toString()));
-
-      // space statistics metrics
-      parsedStatistics_.add(csvFormat("object-count",
-                                      rawStatistics_.getObjectCount()));
-      parsedStatistics_
-        .add(csvFormat("active-connection-count",
-                       rawStatistics_.getActiveConnectionCount()));
-      parsedStatistics_
-        .add(csvFormat("active-transaction-count",
-                       rawStatistics_.getActiveTransactionCount()));
-      parsedStatistics_.add(csvFormat("change-count",
-                                      rawStatistics_.getChangeCount()));
-      parsedStatistics_.add(csvFormat("change-per-second",
-                                      rawStatistics_.getChangePerSecond()));
-      parsedStatistics_.add(csvFormat("execute-count",
-                                      rawStatistics_.getExecuteCount()));
-      parsedStatistics_.add(csvFormat("execute-per-second",
-                                      rawStatistics_.getExecutePerSecond()));
-      parsedStatistics_.add(csvFormat("notify-ack-count",
-                                      rawStatistics_.getNotifyAckCount()));
-      parsedStatistics_.add(csvFormat("notify-ack-per-second",
-                                      rawStatistics_.getNotifyAckPerSecond()));
-      parsedStatistics_
-        .add(csvFormat("notify-registration-count",
-                       rawStatistics_.getNotifyRegistrationCount()));
-      parsedStatistics_
-        .add(csvFormat("notify-registration-per-second",
-                       rawStatistics_.getNotifyRegistrationPerSecond()));
-      parsedStatistics_.add(csvFormat("notify-trigger-count",
-                                      rawStatistics_.getNotifyTriggerCount()));
-      parsedStatistics_
-        .add(csvFormat("notify-trigger-per-second",
-                       rawStatistics_.getNotifyTriggerPerSecond()));
-      parsedStatistics_.add(csvFormat("read-count",
-                                      rawStatistics_.getReadCount()));
-      parsedStatistics_.add(csvFormat("read-per-second",
-                                      rawStatistics_.getReadPerSecond()));
-      parsedStatistics_.add(csvFormat("remove-count",
-                                      rawStatistics_.getRemoveCount()));
-      parsedStatistics_.add(csvFormat("remove-per-second",
-                                      rawStatistics_.getRemovePerSecond()));
-      parsedStatistics_.add(csvFormat("take-count",
-                                      rawStatistics_.getTakeCount()));
-      parsedStatistics_.add(csvFormat("take-per-second",
-                                      rawStatistics_.getTakePerSecond()));
-      parsedStatistics_.add(csvFormat("update-count",
-                                      rawStatistics_.getUpdateCount()));
-      parsedStatistics_.add(csvFormat("update-per-second",
-                                      rawStatistics_.getUpdatePerSecond()));
-      parsedStatistics_.add(csvFormat("write-count",
-                                      rawStatistics_.getWriteCount()));
-      parsedStatistics_.add(csvFormat("write-per-second",
-                                      rawStatistics_.getWritePerSecond()));
-      }
-    else
-      logger_.warning("Space statistics unavailable.");
+    selection_ = selection;
+    if (snapshotInterval > 0)
+      deltaFilter_ = new SpaceMetricDeltaFilter(epsilon,snapshotInterval);
     }
 
 
   /**
-   * The full constructor for the SpaceStatisticsParser class.
+   * A constructor for the SpaceStatisticsParser class that parses every
+   * metric and emits only changed metrics.  Use parse() to parse samples
+   * into a SpaceMetricSink.
    */
-  public SpaceStatisticsParser(Space space,SpaceStatistics statistics)
+  public SpaceStatisticsParser(double epsilon,int snapshotInterval)
     {
-    space_ = space;
-    rawStatistics_ = statistics;
+    this(MetricSelection.ALL,epsilon,snapshotInterval);
+    }
 
-    parse();
+
+  /**
+   * The default constructor for the SpaceStatisticsParser class.  The
+   * metrics are selected by the monitor.metrics system property and
+   * delta mode is configured by the monitor.delta.epsilon and
+   * monitor.delta.snapshotInterval system properties.  Delta mode is
+   * disabled unless the snapshot interval is set.  Use parse() to parse
+   * samples into a SpaceMetricSink.
+   */
+  public SpaceStatisticsParser()
+    {
+    this(MetricSelection.configured(),
+         Double.parseDouble(System.getProperty("monitor.delta.epsilon","0")),
+         Integer.getInteger("monitor.delta.snapshotInterval",0));
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsParser class that parses the
+   * passed statistics into comma-separated value strings, available from
+   * parsedStatistics().
+   */
+  public SpaceStatisticsParser(Space space,SpaceStatistics statistics)
+    {
+    SpaceMetricCsvEncoder encoder
+      = new SpaceMetricCsvEncoder(
+        ByteBuffer.allocate(COMPATIBILITY_BUFFER_SIZE));
+    parse(space,statistics,encoder);
+
+    ByteBuffer buffer = encoder.buffer();
+    buffer.flip();
+    if (buffer.hasRemaining())
+      {
+      String rows = utf8_.decode(buffer).toString();
+      parsedStatistics_ = rows.substring(0,rows.length() - 1).split("\n");
+      }
     }
 
 
   /**
-   * Parse the space statistics.
+   * Return the statistics parsed by the constructor as comma-separated
+   * value strings.
    */
   public String[] parsedStatistics()
     {
-    return parsedStatistics_.toArray(new String[0]);
+    return parsedStatistics_.clone();
     }
 }  // end SpaceStatisticsParser
@@ -1,5 +1,15 @@
 /**
  * SpaceStatisticsSpaceLogger logs space statistics to a metrics space.
+ * Statistics are parsed directly into typed SpaceMetric entities, which
+ * are collected into batches and written with a single writeMultiple()
+ * call per batch.  A batch is written when it reaches the batch size or,
+ * by a daemon timer, once its oldest metric has waited for the linger
+ * time.  If some metrics of a batch are rejected, it is split in half
+ * and each half retried, so one bad metric does not cost the whole
+ * batch.  Any other failure, such as a lost connection, drops the whole
+ * batch with a single log message, and the proxy is created again for
+ * the next batch.  As a SpaceMetricSink it collects samples that have
+ * already been parsed.
  *
  * @author Patrick May (patrick.may@gigaspaces.com)
  * @author &copy; 2014 Patrick May
@@ -10,20 +20,116 @@ package com.gigaspaces.examples.monitor;
 
 import org.openspaces.core.GigaSpace;
 import org.openspaces.core.GigaSpaceConfigurer;
+import org.openspaces.core.WriteMultipleException;
 import org.openspaces.core.space.UrlSpaceConfigurer;
 
 import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
 import org.openspaces.admin.space.SpaceStatistics;
 
+import net.jini.core.lease.Lease;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import java.util.logging.Logger;
 
-public class SpaceStatisticsSpaceLogger implements SpaceStatisticsLogger
+public class SpaceStatisticsSpaceLogger
+  implements SpaceInstanceStatisticsLogger, SpaceMetricSink
 {
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+  public static final long DEFAULT_LINGER = 0;  // write every sample
+
   private static Logger logger_
     = Logger.getLogger(SpaceStatisticsSpaceLogger.class.getName());
 
   private String spaceURL_ = null;
   private GigaSpace gigaSpace_ = null;
+  private int batchSize_ = DEFAULT_BATCH_SIZE;
+  private long linger_ = DEFAULT_LINGER;
+  private long lease_ = Lease.FOREVER;
+  private ArrayList<SpaceMetric> batch_ = new ArrayList<SpaceMetric>();
+  private long batchStart_ = 0;
+  private ScheduledExecutorService flusher_ = null;
+  private ScheduledFuture<?> lingering_ = null;  // the batch's timed flush
+  private boolean closed_ = false;
+  private SpaceStatisticsParser parser_ = new SpaceStatisticsParser();
+  private SpaceInstanceStatisticsParser instanceParser_
+    = new SpaceInstanceStatisticsParser();
+  private MetricCollector collector_ = new MetricCollector();
+
+  /**
+   * MetricCollector adds a SpaceMetric to the current batch for each
+   * parsed metric.  All metrics in a sample share a single timestamp,
+   * and all metrics share the interned space name and metric type
+   * strings.
+   */
+  private class MetricCollector implements SpaceMetricSink
+  {
+    private Date timestamp_ = null;
+    private String spaceName_ = null;
+
+    public void begin(long timestamp,SpaceName spaceName)
+      {
+      timestamp_ = new Date(timestamp);
+      spaceName_ = spaceName.name();
+      }
+
+
+    public void metric(MetricType metricType,long value)
+      {
+      batch_.add(new SpaceMetric(timestamp_,
+                                 spaceName_,
+                                 metricType.name(),
+                                 null,
+                                 value));
+      }
+
+
+    public void metric(MetricType metricType,double value)
+      {
+      batch_.add(new SpaceMetric(timestamp_,
+                                 spaceName_,
+                                 metricType.name(),
+                                 null,
+                                 value));
+      }
+
+
+    public void metric(MetricType metricType,String key,long value)
+      {
+      batch_.add(new SpaceMetric(timestamp_,
+                                 spaceName_,
+                                 metricType.name(),
+                                 key,
+                                 value));
+      }
+
+
+    public void metric(MetricType metricType,String key,double value)
+      {
+      batch_.add(new SpaceMetric(timestamp_,
+                                 spaceName_,
+                                 metricType.name(),
+                                 key,
+                                 value));
+      }
+
+
+    public void end()
+      {
+      timestamp_ = null;
+      spaceName_ = null;
+      }
+  }  // end MetricCollector
+
 
   /**
    * Return a proxy to the GigaSpace, creating it if necessary.
@@ -46,29 +152,301 @@ public class SpaceStatisticsSpaceLogger implements SpaceStatisticsLogger
 
   /**
    * The full constructor for the SpaceStatisticsSpaceLogger class.
+   *
+   * @param spaceURL The URL of the metrics space
+   * @param batchSize The maximum number of metrics per writeMultiple()
+   * @param linger The maximum time, in milliseconds, that a metric waits
+   *               for its batch to fill, or 0 to write every sample
+   * @param lease The lease, in milliseconds, of the written metrics
    */
-  public SpaceStatisticsSpaceLogger(String spaceURL)
+  public SpaceStatisticsSpaceLogger(String spaceURL,
+                                    int batchSize,
+                                    long linger,
+                                    long lease)
     {
     spaceURL_ = spaceURL;
+    batchSize_ = batchSize;
+    linger_ = linger;
+    lease_ = lease;
+
+    if (linger_ > 0)
+      flusher_ = Executors.newSingleThreadScheduledExecutor(
+        new DaemonThreadFactory("space-metrics-flusher"));
     }
 
 
   /**
-   * Log the space statistics.  This method is inherited from
-   * SpaceStatisticsLogger.
+   * A constructor for the SpaceStatisticsSpaceLogger class that writes
+   * every sample as a single batch, leased forever.
+   */
+  public SpaceStatisticsSpaceLogger(String spaceURL)
+    {
+    this(spaceURL,DEFAULT_BATCH_SIZE,DEFAULT_LINGER,Lease.FOREVER);
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsSpaceLogger class that writes to
+   * an existing space proxy.
+   */
+  public SpaceStatisticsSpaceLogger(GigaSpace gigaSpace)
+    {
+    gigaSpace_ = gigaSpace;
+    }
+
+
+  /**
+   * Write a range of metrics, splitting the range in half and retrying
+   * each half if some of the metrics are rejected.  Other failures are
+   * thrown to the caller.
+   */
+  private void write(GigaSpace gigaSpace,
+                     SpaceMetric[] metrics,
+                     int from,
+                     int to)
+    {
+    try
+      {
+      SpaceMetric[] batch
+        = ((from == 0) && (to == metrics.length))
+        ? metrics
+        : Arrays.copyOfRange(metrics,from,to);
+      gigaSpace.writeMultiple(batch,lease_);
+      }
+    catch (WriteMultipleException e)
+      {
+      if (to - from > 1)
+        {
+        int middle = (from + to) >>> 1;
+        write(gigaSpace,metrics,from,middle);
+        write(gigaSpace,metrics,middle,to);
+        }
+      else
+        logger_.severe("Unable to write metric:  " + e);
+      }
+    }
+
+
+  /**
+   * Forget a proxy that failed, so that the next batch creates a new
+   * one.  A proxy passed to the constructor is kept, since it can't be
+   * created again.
+   */
+  private void disconnect()
+    {
+    if (spaceURL_ != null)
+      gigaSpace_ = null;
+    }
+
+
+  /**
+   * Note that a metric is about to be added to the batch, starting the
+   * linger time if the batch is empty.
+   */
+  private void adding(long now)
+    {
+    if (!batch_.isEmpty())
+      return;
+
+    batchStart_ = now;
+    if ((flusher_ != null) && (lingering_ == null))
+      lingering_ = flusher_.schedule(new Runnable()
+        {
+        public void run() { timedFlush(); }
+        },linger_,TimeUnit.MILLISECONDS);
+    }
+
+
+  /**
+   * Write the batch once its linger time has passed, even if no more
+   * samples arrive.  Only the flusher calls this.
+   */
+  private synchronized void timedFlush()
+    {
+    lingering_ = null;
+    if (!closed_ && !batch_.isEmpty())
+      flush();
+    }
+
+
+  /**
+   * Write the current batch, in chunks of at most the batch size.
    */
-  public void log(Space space,SpaceStatistics statistics)
+  private void flush()
     {
-    SpaceStatisticsParser parser = new SpaceStatisticsParser(space,statistics);
+    if (lingering_ != null)
+      {
+      lingering_.cancel(false);
+      lingering_ = null;
+      }
+
+    SpaceMetric[] metrics = batch_.toArray(new SpaceMetric[batch_.size()]);
+    batch_.clear();
 
+    GigaSpace gigaSpace = null;
     try
       {
-      for (String metric : parser.parsedStatistics())
-        space().write(new SpaceMetric(metric));
+      gigaSpace = space();
       }
     catch (Exception e)
       {
-      logger_.severe("Unable to write metric:  " + e);
+      logger_.severe("Unable to connect to metrics space:  " + e);
+      return;
+      }
+
+    int from = 0;
+    try
+      {
+      for (;from < metrics.length;from += batchSize_)
+        write(gigaSpace,
+              metrics,
+              from,
+              Math.min(from + batchSize_,metrics.length));
+      }
+    catch (RuntimeException e)
+      {
+      logger_.severe("Unable to write to metrics space, dropping "
+                     + (metrics.length - from) + " metrics:  " + e);
+      disconnect();
+      }
+    }
+
+
+  /**
+   * Log the space statistics.  This method is inherited from
+   * SpaceStatisticsLogger.
+   */
+  public synchronized void log(Space space,SpaceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    long now = System.currentTimeMillis();
+    adding(now);
+    parser_.parse(space,statistics,collector_);
+
+    if ((batch_.size() >= batchSize_) || (now - batchStart_ >= linger_))
+      flush();
+    }
+
+
+  /**
+   * Log the space instance statistics.  This method is inherited from
+   * SpaceInstanceStatisticsLogger.
+   */
+  public synchronized void log(SpaceInstance spaceInstance,
+                               SpaceInstanceStatistics statistics)
+    {
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping statistics.");
+      return;
+      }
+
+    long now = System.currentTimeMillis();
+    adding(now);
+    instanceParser_.parse(spaceInstance,statistics,collector_);
+
+    if ((batch_.size() >= batchSize_) || (now - batchStart_ >= linger_))
+      flush();
+    }
+
+
+  /**
+   * Start collecting a sample.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void begin(long timestamp,SpaceName spaceName)
+    {
+    adding(System.currentTimeMillis());
+    collector_.begin(timestamp,spaceName);
+    }
+
+
+  /**
+   * Collect a long metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,long value)
+    {
+    collector_.metric(metricType,value);
+    }
+
+
+  /**
+   * Collect a double metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,double value)
+    {
+    collector_.metric(metricType,value);
+    }
+
+
+  /**
+   * Collect a keyed long metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,
+                                  String key,
+                                  long value)
+    {
+    collector_.metric(metricType,key,value);
+    }
+
+
+  /**
+   * Collect a keyed double metric.  This method is inherited from
+   * SpaceMetricSink.
+   */
+  public synchronized void metric(MetricType metricType,
+                                  String key,
+                                  double value)
+    {
+    collector_.metric(metricType,key,value);
+    }
+
+
+  /**
+   * Finish the sample, writing the batch if it is due.  This method is
+   * inherited from SpaceMetricSink.
+   */
+  public synchronized void end()
+    {
+    collector_.end();
+    if (closed_)
+      {
+      logger_.warning("Logger closed, dropping metrics.");
+      batch_.clear();
+      return;
       }
+
+    if ((batch_.size() >= batchSize_)
+        || (System.currentTimeMillis() - batchStart_ >= linger_))
+      flush();
+    }
+
+
+  /**
+   * Write any batched metrics and release the space proxy, unless it was
+   * passed to the constructor.  Statistics logged after this are
+   * dropped.  This method is inherited from SpaceStatisticsLogger.
+   */
+  public synchronized void close()
+    {
+    if (closed_)
+      return;
+
+    closed_ = true;
+    // the flusher waits for this lock, and does nothing once closed
+    if (flusher_ != null)
+      flusher_.shutdown();
+
+    if (!batch_.isEmpty())
+      flush();
+    disconnect();
     }
 }  // end SpaceStatisticsSpaceLogger
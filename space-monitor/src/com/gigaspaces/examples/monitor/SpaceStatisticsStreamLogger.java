@@ -0,0 +1,176 @@
+/**
+ * SpaceStatisticsStreamLogger writes space statistics, in CSV format, to
+ * an output stream such as a socket or an HTTP response.  Each sample is
+ * written and flushed as soon as it is logged, so the stream can be used
+ * as a live feed.  Once a write fails, failed() is called and later
+ * samples are dropped.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import java.util.logging.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.ByteBuffer;
+
+import org.openspaces.admin.space.Space;
+import org.openspaces.admin.space.SpaceInstance;
+import org.openspaces.admin.space.SpaceInstanceStatistics;
+import org.openspaces.admin.space.SpaceStatistics;
+
+public class SpaceStatisticsStreamLogger
+  implements SpaceInstanceStatisticsLogger
+{
+  public static final int DEFAULT_BUFFER_SIZE = 16 * 1024;  // bytes
+
+  private static Logger logger_
+    = Logger.getLogger(SpaceStatisticsStreamLogger.class.getName());
+
+  private OutputStream out_ = null;
+  private SpaceStatisticsParser parser_ = new SpaceStatisticsParser();
+  private SpaceInstanceStatisticsParser instanceParser_
+    = new SpaceInstanceStatisticsParser();
+  private SpaceMetricCsvEncoder encoder_ = null;
+  private boolean failed_ = false;
+  private boolean closed_ = false;
+
+  /**
+   * The full constructor for the SpaceStatisticsStreamLogger class.
+   *
+   * @param out The stream to write metrics to, closed by close()
+   * @param bufferSize The initial size, in bytes, of the sample buffer
+   */
+  public SpaceStatisticsStreamLogger(OutputStream out,int bufferSize)
+    {
+    out_ = out;
+    encoder_ = new SpaceMetricCsvEncoder(ByteBuffer.allocate(bufferSize));
+    }
+
+
+  /**
+   * A constructor for the SpaceStatisticsStreamLogger class that uses the
+   * default buffer size.
+   */
+  public SpaceStatisticsStreamLogger(OutputStream out)
+    {
+    this(out,DEFAULT_BUFFER_SIZE);
+    }
+
+
+  public synchronized boolean isFailed() { return failed_; }
+
+
+  /**
+   * Called, once, when a write fails.  Subclasses may override this to
+   * stop whatever is feeding the logger.
+   */
+  protected void failed(IOException ioe)
+    {
+    logger_.warning("Unable to write to stream:  " + ioe);
+    }
+
+
+  /**
+   * Write and flush the encoded sample.  Only called with the lock held.
+   *
+   * @return The failure, if the write failed
+   */
+  private IOException write()
+    {
+    try
+      {
+      ByteBuffer buffer = encoder_.buffer();
+      out_.write(buffer.array(),buffer.arrayOffset(),buffer.position());
+      out_.flush();
+      return null;
+      }
+    catch (IOException ioe)
+      {
+      failed_ = true;
+      return ioe;
+      }
+    }
+
+
+  /**
+   * Log the space statistics.  This method is inherited from
+   * SpaceStatisticsLogger.
+   */
+  public void log(Space space,SpaceStatistics statistics)
+    {
+    IOException failure = null;
+    synchronized(this)
+      {
+      if (closed_ || failed_)
+        return;
+
+      try
+        {
+        parser_.parse(space,statistics,encoder_);
+        failure = write();
+        }
+      finally
+        {
+        encoder_.buffer().clear();
+        }
+      }
+
+    // outside the lock, so that failed() may safely stop the feed
+    if (failure != null)
+      failed(failure);
+    }
+
+
+  /**
+   * Log the space instance statistics.  This method is inherited from
+   * SpaceInstanceStatisticsLogger.
+   */
+  public void log(SpaceInstance spaceInstance,
+                  SpaceInstanceStatistics statistics)
+    {
+    IOException failure = null;
+    synchronized(this)
+      {
+      if (closed_ || failed_)
+        return;
+
+      try
+        {
+        instanceParser_.parse(spaceInstance,statistics,encoder_);
+        failure = write();
+        }
+      finally
+        {
+        encoder_.buffer().clear();
+        }
+      }
+
+    if (failure != null)
+      failed(failure);
+    }
+
+
+  /**
+   * Close the stream.  This method is inherited from
+   * SpaceStatisticsLogger.
+   */
+  public synchronized void close()
+    {
+    if (closed_)
+      return;
+
+    closed_ = true;
+    try { out_.close(); }
+    catch (IOException ioe)
+      {
+      if (!failed_)
+        logger_.warning("Unable to close stream:  " + ioe);
+      }
+    }
+}  // end SpaceStatisticsStreamLogger
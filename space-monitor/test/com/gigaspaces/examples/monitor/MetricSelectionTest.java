@@ -0,0 +1,110 @@
+/**
+ * MetricSelectionTest checks which metrics the descriptions of a
+ * MetricSelection select, including descriptions read from a file.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static com.gigaspaces.examples.monitor.MetricType.*;
+
+public class MetricSelectionTest
+{
+  @Test
+  public void emptyDescriptionsSelectEveryMetric()
+    {
+    for (String description : new String[] { null, "", "  " })
+      {
+      MetricSelection selection = new MetricSelection(description);
+      assertEquals("*",selection.toString());
+      assertTrue(selection.selects(OBJECT_COUNT));
+      assertTrue(selection.selects(CLASS_COUNT));
+      assertTrue(selection.selects(READ_PER_SECOND));
+      }
+    }
+
+
+  @Test
+  public void patternsSelectMatchingMetrics()
+    {
+    MetricSelection selection
+      = new MetricSelection("*-per-second, object-count");
+    assertTrue(selection.selects(READ_PER_SECOND));
+    assertTrue(selection.selects(WRITE_PER_SECOND));
+    assertTrue(selection.selects(OBJECT_COUNT));
+    assertFalse(selection.selects(READ_COUNT));
+    assertFalse(selection.selects(CLASS_COUNT));
+
+    assertTrue(MetricSelection.RATES.selects(TAKE_PER_SECOND));
+    assertFalse(MetricSelection.RATES.selects(TAKE_COUNT));
+    }
+
+
+  @Test
+  public void laterEntriesOverrideEarlierOnes()
+    {
+    MetricSelection selection = new MetricSelection("*,-class-count");
+    assertTrue(selection.selects(OBJECT_COUNT));
+    assertFalse(selection.selects(CLASS_COUNT));
+
+    selection = new MetricSelection("*-count,- read-*,read-count");
+    assertTrue(selection.selects(OBJECT_COUNT));
+    assertTrue(selection.selects(READ_COUNT));
+    assertFalse(selection.selects(READ_PER_SECOND));
+    assertFalse(selection.selects(WRITE_PER_SECOND));
+    }
+
+
+  @Test
+  public void onlyStarIsAWildcard()
+    {
+    MetricSelection selection = new MetricSelection("read.count,no-such");
+    assertFalse(selection.selects(READ_COUNT));
+    assertFalse(selection.selects(OBJECT_COUNT));
+    }
+
+
+  @Test
+  public void descriptionsAreReadFromFiles() throws IOException
+    {
+    File file = File.createTempFile("metrics",".txt");
+    file.deleteOnExit();
+    FileWriter out = new FileWriter(file);
+    out.write("# rates only\n"
+              + "*-per-second, -notify-*  # but no notifications\n"
+              + "\n"
+              + "object-count\n");
+    out.close();
+
+    String previous = System.setProperty("monitor.metrics",
+                                         "@" + file.getPath());
+    try
+      {
+      MetricSelection selection = MetricSelection.configured();
+      assertTrue(selection.selects(READ_PER_SECOND));
+      assertTrue(selection.selects(OBJECT_COUNT));
+      assertFalse(selection.selects(NOTIFY_ACK_PER_SECOND));
+      assertFalse(selection.selects(READ_COUNT));
+      }
+    finally
+      {
+      if (previous == null)
+        System.clearProperty("monitor.metrics");
+      else
+        System.setProperty("monitor.metrics",previous);
+      }
+    }
+}  // end MetricSelectionTest
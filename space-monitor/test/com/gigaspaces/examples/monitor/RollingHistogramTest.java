@@ -0,0 +1,119 @@
+/**
+ * RollingHistogramTest checks the summaries of a RollingHistogram against
+ * the exact statistics of the recorded values, and that values leave the
+ * summary once they fall out of the window.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class RollingHistogramTest
+{
+  private static final long WINDOW = 60000;  // milliseconds
+  private static final long NOW = 10 * WINDOW;
+
+  /**
+   * Return the exact value at or below which the passed percentage of
+   * the sorted values fall.
+   */
+  private static long percentile(long[] sorted,double percent)
+    {
+    int rank = Math.max(1,(int)Math.ceil(sorted.length * percent / 100.0));
+    return sorted[rank - 1];
+    }
+
+
+  private static RollingHistogram.Summary summarize(
+    RollingHistogram histogram,
+    long now)
+    {
+    RollingHistogram.Summary summary = new RollingHistogram.Summary();
+    histogram.summarize(now,summary);
+    return summary;
+    }
+
+
+  @Test
+  public void smallValuesAreExact()
+    {
+    RollingHistogram histogram = new RollingHistogram(WINDOW);
+    for (long value = 1;value <= 10;value++)
+      histogram.record(NOW,value);
+
+    RollingHistogram.Summary summary = summarize(histogram,NOW);
+    assertEquals(10,summary.count());
+    assertEquals(1,summary.min());
+    assertEquals(10,summary.max());
+    assertEquals(5.5,summary.mean(),0.0);
+    assertEquals(5,summary.percentile(50.0));
+    assertEquals(9,summary.percentile(90.0));
+    assertEquals(10,summary.percentile(99.0));
+    }
+
+
+  @Test
+  public void percentilesAreWithinOneSixteenth()
+    {
+    RollingHistogram histogram = new RollingHistogram(WINDOW);
+    Random random = new Random(42);
+    long[] values = new long[10000];
+    long total = 0;
+    for (int i = 0;i < values.length;i++)
+      {
+      // spread over many orders of magnitude
+      values[i] = (long)Math.pow(10.0,1.0 + 6.0 * random.nextDouble());
+      total += values[i];
+      histogram.record(NOW - random.nextInt((int)WINDOW / 2),values[i]);
+      }
+    Arrays.sort(values);
+
+    RollingHistogram.Summary summary = summarize(histogram,NOW);
+    assertEquals(values.length,summary.count());
+    assertEquals(values[0],summary.min());
+    assertEquals(values[values.length - 1],summary.max());
+    assertEquals((double)total / values.length,summary.mean(),1e-6);
+
+    for (double percent : new double[] { 1.0, 50.0, 90.0, 99.0, 99.9 })
+      {
+      long exact = percentile(values,percent);
+      long approximate = summary.percentile(percent);
+      assertTrue(percent + ":  " + approximate + " for " + exact,
+                 Math.abs(approximate - exact) <= exact / 16.0);
+      }
+    }
+
+
+  @Test
+  public void valuesLeaveTheWindow()
+    {
+    RollingHistogram histogram = new RollingHistogram(WINDOW,6);
+    histogram.record(NOW - WINDOW / 2,1000);
+    histogram.record(NOW,5);
+    assertEquals(2,summarize(histogram,NOW).count());
+
+    RollingHistogram.Summary summary
+      = summarize(histogram,NOW + WINDOW / 2);
+    assertEquals(1,summary.count());
+    assertEquals(5,summary.max());
+    assertEquals(5,summary.percentile(99.0));
+
+    // a slot holding a later period drops values for an earlier one
+    histogram.record(NOW - WINDOW,1000);
+    assertEquals(2,summarize(histogram,NOW).count());
+
+    summary = summarize(histogram,NOW + WINDOW);
+    assertEquals(0,summary.count());
+    assertEquals(0,summary.percentile(50.0));
+    }
+}  // end RollingHistogramTest
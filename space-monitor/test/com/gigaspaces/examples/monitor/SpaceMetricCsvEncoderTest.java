@@ -0,0 +1,135 @@
+/**
+ * SpaceMetricCsvEncoderTest encodes metrics with a SpaceMetricCsvEncoder,
+ * starting from a buffer too small to hold them, and parses the rows
+ * back, checking every field against what was encoded.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+public class SpaceMetricCsvEncoderTest
+{
+  private static final long TIMESTAMP = 1400000000000L;
+  private static final SpaceName SPACE = SpaceName.of("csv-test");
+
+  private SpaceMetricCsvEncoder encoder_ = null;
+
+  @Before
+  public void createEncoder()
+    {
+    encoder_ = new SpaceMetricCsvEncoder(ByteBuffer.allocate(8));
+    encoder_.begin(TIMESTAMP,SPACE);
+    }
+
+
+  /**
+   * Return the rows encoded so far, split into their fields.
+   */
+  private String[][] rows() throws Exception
+    {
+    encoder_.end();
+    ByteBuffer buffer = encoder_.buffer();
+    String text = new String(buffer.array(),0,buffer.position(),"UTF-8");
+    assertEquals('\n',text.charAt(text.length() - 1));
+
+    String[] lines = text.split("\n");
+    String[][] rows = new String[lines.length][];
+    for (int i = 0;i < lines.length;i++)
+      {
+      rows[i] = lines[i].split(",",-1);
+      assertEquals(Long.toString(TIMESTAMP),rows[i][0]);
+      assertEquals(SPACE.name(),rows[i][1]);
+      }
+
+    return rows;
+    }
+
+
+  @Test
+  public void longsRoundTrip() throws Exception
+    {
+    long[] values
+      = { 0, 7, -7, 1234567890123L, Long.MAX_VALUE, Long.MIN_VALUE };
+    for (long value : values)
+      encoder_.metric(MetricType.OBJECT_COUNT,value);
+
+    String[][] rows = rows();
+    assertEquals(values.length,rows.length);
+    for (int i = 0;i < values.length;i++)
+      {
+      assertEquals(4,rows[i].length);
+      assertEquals(MetricType.OBJECT_COUNT.name(),rows[i][2]);
+      assertEquals(values[i],Long.parseLong(rows[i][3]));
+      }
+    }
+
+
+  @Test
+  public void doublesRoundTrip() throws Exception
+    {
+    double[] values =
+      { 0.0, -0.0, 1.5, -1.5, 0.1, 2.0 / 3.0, 999999.9999996, 123456.000001,
+        -0.0000004, 1e15, 1.5e-7, 6.02e23, Double.NaN,
+        Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+    for (double value : values)
+      encoder_.metric(MetricType.READ_PER_SECOND,value);
+
+    String[][] rows = rows();
+    assertEquals(values.length,rows.length);
+    for (int i = 0;i < values.length;i++)
+      {
+      double value = Double.parseDouble(rows[i][3]);
+      if (Double.isNaN(values[i]) || Double.isInfinite(values[i])
+          || (Math.abs(values[i]) >= 1e15)
+          || ((Math.abs(values[i]) < 1e-6) && (values[i] != 0.0)))
+        assertEquals(Double.toString(values[i]),rows[i][3]);
+      else
+        assertEquals(rows[i][3],values[i],value,0.5e-6);
+      }
+
+    // fixed point values never carry a sign for zero or trailing zeros
+    assertEquals("0.0",rows[1][3]);
+    assertEquals("1.5",rows[2][3]);
+    assertEquals("1000000.0",rows[6][3]);
+    assertEquals("123456.000001",rows[7][3]);
+    }
+
+
+  @Test
+  public void keysRoundTrip() throws Exception
+    {
+    String[] keys =
+      { "com.example.Order", "caf\u00e9", "\u20ac100",
+        "smile \ud83d\ude00", "1:0@host1" };
+    for (int i = 0;i < keys.length;i++)
+      {
+      encoder_.metric(MetricType.CLASS_COUNT,keys[i],(long)i);
+      encoder_.metric(MetricType.CLASS_COUNT_AGE,keys[i],i + 0.25);
+      }
+
+    String[][] rows = rows();
+    assertEquals(2 * keys.length,rows.length);
+    for (int i = 0;i < keys.length;i++)
+      {
+      String[] longRow = rows[2 * i];
+      String[] doubleRow = rows[2 * i + 1];
+      assertEquals(5,longRow.length);
+      assertEquals(MetricType.CLASS_COUNT.name(),longRow[2]);
+      assertEquals(keys[i],longRow[3]);
+      assertEquals(i,Long.parseLong(longRow[4]));
+      assertEquals(MetricType.CLASS_COUNT_AGE.name(),doubleRow[2]);
+      assertEquals(keys[i],doubleRow[3]);
+      assertEquals(i + 0.25,Double.parseDouble(doubleRow[4]),0.0);
+      }
+    }
+}  // end SpaceMetricCsvEncoderTest
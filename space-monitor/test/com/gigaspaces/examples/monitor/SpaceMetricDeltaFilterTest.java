@@ -0,0 +1,127 @@
+/**
+ * SpaceMetricDeltaFilterTest checks which metrics a SpaceMetricDeltaFilter
+ * passes on, by encoding them as CSV rows.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+
+public class SpaceMetricDeltaFilterTest
+{
+  private static final SpaceName SPACE_A = SpaceName.of("delta-test-a");
+  private static final SpaceName SPACE_B = SpaceName.of("delta-test-b");
+  private static final long INTERVAL = 1000;  // milliseconds
+
+  private SpaceMetricDeltaFilter filter_ = null;
+  private SpaceMetricCsvEncoder encoder_ = null;
+
+  @Before
+  public void createFilter()
+    {
+    filter_ = new SpaceMetricDeltaFilter(0.0,2);
+    encoder_ = new SpaceMetricCsvEncoder(ByteBuffer.allocate(256));
+    filter_.setTarget(encoder_);
+    }
+
+
+  /**
+   * Return the rows passed on since the last call.
+   */
+  private String rows()
+    {
+    ByteBuffer buffer = encoder_.buffer();
+    String rows = new String(buffer.array(),0,buffer.position());
+    buffer.clear();
+    return rows;
+    }
+
+
+  /**
+   * Send a space sample carrying an object count and the class counts
+   * of the passed classes.
+   */
+  private void sample(long timestamp,
+                      SpaceName spaceName,
+                      long objects,
+                      String... classes)
+    {
+    filter_.begin(timestamp,spaceName);
+    filter_.metric(MetricType.OBJECT_COUNT,objects);
+    for (String className : classes)
+      filter_.metric(MetricType.CLASS_COUNT,className,1L);
+    filter_.end();
+    }
+
+
+  @Test
+  public void unchangedMetricsAreSuppressedBetweenSnapshots()
+    {
+    sample(INTERVAL,SPACE_A,5);
+    assertEquals("1000,delta-test-a,object-count,5\n",rows());
+
+    sample(2 * INTERVAL,SPACE_A,5);
+    assertEquals("",rows());
+
+    sample(3 * INTERVAL,SPACE_A,5);
+    assertEquals("3000,delta-test-a,object-count,5\n",rows());
+    }
+
+
+  @Test
+  public void missingKeysAreZeroedAndForgotten()
+    {
+    sample(INTERVAL,SPACE_A,5,"Order","Trade");
+    rows();
+
+    // Trade was carried in the previous snapshot interval, so is kept
+    sample(2 * INTERVAL,SPACE_A,5,"Order");
+    sample(3 * INTERVAL,SPACE_A,5,"Order");
+    assertEquals("3000,delta-test-a,object-count,5\n"
+                 + "3000,delta-test-a,class-count,Order,1\n",
+                 rows());
+
+    sample(4 * INTERVAL,SPACE_A,5,"Order");
+    sample(5 * INTERVAL,SPACE_A,5,"Order");
+    assertEquals("5000,delta-test-a,object-count,5\n"
+                 + "5000,delta-test-a,class-count,Order,1\n"
+                 + "5000,delta-test-a,class-count,Trade,0\n",
+                 rows());
+
+    // a forgotten key that comes back is passed on as new
+    sample(6 * INTERVAL,SPACE_A,5,"Order","Trade");
+    assertEquals("6000,delta-test-a,class-count,Trade,1\n",rows());
+    }
+
+
+  @Test
+  public void idleSpacesAreForgotten()
+    {
+    long timestamp = 0;
+    for (int i = 0;i < 3;i++)
+      {
+      timestamp += INTERVAL;
+      sample(timestamp,SPACE_A,5);
+      sample(timestamp,SPACE_B,7);
+      }
+    rows();
+
+    // space B leaves the sample while space A keeps being sampled
+    for (int i = 0;i <= SpaceMetricDeltaFilter.EVICTION_INTERVALS;i++)
+      sample(timestamp += INTERVAL,SPACE_A,5);
+    rows();
+
+    // had space B been remembered, this would not be a snapshot
+    sample(timestamp += INTERVAL,SPACE_B,7);
+    assertEquals(timestamp + ",delta-test-b,object-count,7\n",rows());
+    }
+}  // end SpaceMetricDeltaFilterTest
@@ -0,0 +1,211 @@
+/**
+ * SpaceStatisticsJournalTest writes samples through a
+ * SpaceStatisticsJournalLogger with small segments, then reads them back
+ * with a SpaceStatisticsJournalReader, comparing the replayed and
+ * exported rows with those the same samples encode to directly.
+ *
+ * @author Patrick May (patrick.may@gigaspaces.com)
+ * @author &copy; 2014 Patrick May
+ * @version 1
+ */
+
+package com.gigaspaces.examples.monitor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+
+import static com.gigaspaces.examples.monitor.SpaceStatisticsJournal.*;
+
+public class SpaceStatisticsJournalTest
+{
+  private static final int SEGMENT_RECORDS = 3;
+  private static final int SEGMENT_SIZE
+    = HEADER_SIZE + SEGMENT_RECORDS * RECORD_SIZE;
+  private static final int SAMPLE_RECORDS = 5;
+
+  private static final SpaceName SPACE_A = SpaceName.of("journal-test-a");
+  private static final SpaceName SPACE_B = SpaceName.of("journal-test-b");
+
+  private File directory_ = null;
+  private String base_ = null;
+
+  /**
+   * Create an empty directory for the journal files.
+   */
+  @Before
+  public void createDirectory() throws IOException
+    {
+    directory_ = File.createTempFile("journal",".test");
+    directory_.delete();
+    directory_.mkdir();
+    base_ = new File(directory_,"metrics").getPath();
+    }
+
+
+  @After
+  public void deleteDirectory()
+    {
+    File[] files = directory_.listFiles();
+    if (files != null)
+      for (File file : files)
+        file.delete();
+    directory_.delete();
+    }
+
+
+  /**
+   * Send one sample of every kind of metric to a sink.
+   */
+  private static void sample(SpaceMetricSink sink,
+                             long timestamp,
+                             SpaceName spaceName,
+                             long count)
+    {
+    sink.begin(timestamp,spaceName);
+    sink.metric(MetricType.OBJECT_COUNT,count);
+    sink.metric(MetricType.READ_PER_SECOND,count + 0.25);
+    sink.metric(MetricType.CLASS_COUNT,"com.example.Order",count * 2);
+    sink.metric(MetricType.CLASS_COUNT_AGE,"com.example.Order",-1.5);
+    sink.metric(MetricType.INSTANCE_COUNT,Long.MIN_VALUE);
+    sink.end();
+    }
+
+
+  /**
+   * Send the samples of both test spaces for each timestamp in a range.
+   */
+  private static void samples(SpaceMetricSink sink,long from,long to)
+    {
+    for (long timestamp = from;timestamp < to;timestamp++)
+      {
+      sample(sink,timestamp,SPACE_A,timestamp);
+      sample(sink,timestamp,SPACE_B,timestamp * 1000);
+      }
+    }
+
+
+  /**
+   * Return the CSV rows the samples in a range encode to.
+   */
+  private static String expected(long from,long to)
+    {
+    SpaceMetricCsvEncoder encoder
+      = new SpaceMetricCsvEncoder(ByteBuffer.allocate(64));
+    samples(encoder,from,to);
+    return rows(encoder);
+    }
+
+
+  private static String rows(SpaceMetricCsvEncoder encoder)
+    {
+    ByteBuffer buffer = encoder.buffer();
+    return new String(buffer.array(),0,buffer.position());
+    }
+
+
+  /**
+   * Return the CSV rows replayed from the journal.
+   */
+  private String replayed() throws IOException
+    {
+    SpaceMetricCsvEncoder encoder
+      = new SpaceMetricCsvEncoder(ByteBuffer.allocate(64));
+    new SpaceStatisticsJournalReader(base_).replay(encoder);
+    return rows(encoder);
+    }
+
+
+  private String exported() throws IOException
+    {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new SpaceStatisticsJournalReader(base_).export(out);
+    return out.toString("UTF-8");
+    }
+
+
+  private static int flags(File segment) throws IOException
+    {
+    RandomAccessFile raf = new RandomAccessFile(segment,"r");
+    try
+      {
+      raf.seek(FLAGS_OFFSET);
+      return raf.readInt();
+      }
+    finally
+      {
+      raf.close();
+      }
+    }
+
+
+  @Test
+  public void replayAndExportMatchTheWrittenSamples() throws IOException
+    {
+    SpaceStatisticsJournalLogger logger
+      = new SpaceStatisticsJournalLogger(base_,SEGMENT_SIZE);
+    samples(logger,1000,1004);
+    logger.close();
+
+    int records = 4 * 2 * SAMPLE_RECORDS;
+    File[] segments = segmentFiles(base_);
+    assertEquals((records + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS,
+                 segments.length);
+    for (File segment : segments)
+      assertEquals(FLAG_SEALED,flags(segment) & FLAG_SEALED);
+    assertTrue(dictionaryFile(base_).exists());
+
+    String expected = expected(1000,1004);
+    assertEquals(expected,replayed());
+    assertEquals(expected,exported());
+    assertEquals(records,
+                 new SpaceStatisticsJournalReader(base_)
+                   .export(new ByteArrayOutputStream()));
+    }
+
+
+  @Test
+  public void reopenedJournalAppendsNewSegments() throws IOException
+    {
+    SpaceStatisticsJournalLogger logger
+      = new SpaceStatisticsJournalLogger(base_,SEGMENT_SIZE);
+    samples(logger,1000,1002);
+    logger.close();
+
+    int segments = segmentFiles(base_).length;
+    long dictionary = dictionaryFile(base_).length();
+
+    logger = new SpaceStatisticsJournalLogger(base_,SEGMENT_SIZE);
+    samples(logger,1002,1004);
+    logger.close();
+
+    File[] reopened = segmentFiles(base_);
+    assertEquals(segments + 1,segmentSequence(reopened[segments]));
+    assertEquals(dictionary,dictionaryFile(base_).length());
+    assertEquals(expected(1000,1004),replayed());
+    }
+
+
+  @Test
+  public void samplesAfterCloseAreDropped() throws IOException
+    {
+    SpaceStatisticsJournalLogger logger
+      = new SpaceStatisticsJournalLogger(base_,SEGMENT_SIZE);
+    samples(logger,1000,1001);
+    logger.close();
+    samples(logger,1001,1002);
+    logger.metric(MetricType.OBJECT_COUNT,1);
+
+    assertEquals(expected(1000,1001),replayed());
+    }
+}  // end SpaceStatisticsJournalTest